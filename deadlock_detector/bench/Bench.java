@@ -0,0 +1,127 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Harness mínimo de microbenchmark (aquecimento + iterações medidas), no espírito do JMH,
+ * sem dependências externas. Todos os cenários usam a semente fixa SEMENTE para que os
+ * grafos e as escolhas aleatórias sejam os mesmos a cada execução.
+ */
+public class Bench {
+    public static final long SEMENTE = 42L;
+
+    public interface Operacao {
+        void executar() throws Exception;
+    }
+
+    public interface OperacaoThread {
+        // Executa uma operação da thread t; ops é o contador local de iterações
+        void executar(int t, long ops) throws Exception;
+    }
+
+    private final int aquecimento;
+    private final int medicao;
+    private final long duracaoIteracaoMs;
+    private final String filtro;
+    static volatile Object sumidouro; // impede que o JIT elimine resultados não usados
+
+    public Bench(int aquecimento, int medicao, long duracaoIteracaoMs, String filtro) {
+        this.aquecimento = aquecimento;
+        this.medicao = medicao;
+        this.duracaoIteracaoMs = duracaoIteracaoMs;
+        this.filtro = filtro;
+    }
+
+    /** Argumentos que repetem esta configuração numa JVM filha (ver BenchAgenteLocks). */
+    List<String> configuracao() {
+        List<String> args = new ArrayList<>(List.of(String.valueOf(aquecimento), String.valueOf(medicao),
+                String.valueOf(duracaoIteracaoMs)));
+        if (filtro != null)
+            args.add(filtro);
+        return args;
+    }
+
+    public boolean habilitado(String nome) {
+        return filtro == null || nome.contains(filtro);
+    }
+
+    /** Tempo médio por operação (ns/op) numa única thread. */
+    public void medir(String nome, String parametros, Operacao op) throws Exception {
+        if (!habilitado(nome))
+            return;
+        double[] amostras = new double[medicao];
+        for (int it = 0; it < aquecimento + medicao; it++) {
+            long ops = 0;
+            long inicio = System.nanoTime();
+            long limite = inicio + duracaoIteracaoMs * 1_000_000L;
+            long agora;
+            do {
+                op.executar();
+                ops++;
+                agora = System.nanoTime();
+            } while (agora < limite);
+            if (it >= aquecimento)
+                amostras[it - aquecimento] = (double) (agora - inicio) / ops;
+        }
+        relatar(nome, parametros, amostras, "ns/op");
+    }
+
+    /** Vazão agregada (ops/s) com várias threads executando a mesma operação ao mesmo tempo. */
+    public void medirVazao(String nome, String parametros, int threads, OperacaoThread op) throws Exception {
+        if (!habilitado(nome))
+            return;
+        double[] amostras = new double[medicao];
+        for (int it = 0; it < aquecimento + medicao; it++) {
+            LongAdder total = new LongAdder();
+            CyclicBarrier largada = new CyclicBarrier(threads + 1);
+            CountDownLatch fim = new CountDownLatch(threads);
+            long[] limite = new long[1];
+            Throwable[] erro = new Throwable[1];
+            for (int t = 0; t < threads; t++) {
+                final int id = t;
+                Thread th = new Thread(() -> {
+                    long ops = 0;
+                    try {
+                        largada.await();
+                        while (System.nanoTime() < limite[0]) {
+                            op.executar(id, ops);
+                            ops++;
+                        }
+                    } catch (Throwable e) {
+                        erro[0] = e;
+                    } finally {
+                        total.add(ops);
+                        fim.countDown();
+                    }
+                });
+                th.setDaemon(true);
+                th.start();
+            }
+            long inicio = System.nanoTime();
+            limite[0] = inicio + duracaoIteracaoMs * 1_000_000L;
+            largada.await();
+            fim.await();
+            long decorrido = System.nanoTime() - inicio;
+            if (erro[0] != null)
+                throw new RuntimeException("falha em " + nome, erro[0]);
+            if (it >= aquecimento)
+                amostras[it - aquecimento] = total.sum() * 1e9 / decorrido;
+        }
+        relatar(nome, parametros + " threads=" + threads, amostras, "ops/s");
+    }
+
+    /** Publica uma medida feita pelo próprio benchmark (ex.: vazão de uma simulação inteira). */
+    public void relatarValor(String nome, String parametros, double valor, String unidade) {
+        System.out.printf("%-34s %-28s %14.1f   %10s %s%n", nome, parametros, valor, "", unidade);
+    }
+
+    private void relatar(String nome, String parametros, double[] amostras, String unidade) {
+        double media = Arrays.stream(amostras).average().orElse(0);
+        double var = Arrays.stream(amostras).map(x -> (x - media) * (x - media)).sum()
+                / Math.max(1, amostras.length - 1);
+        System.out.printf("%-34s %-28s %14.1f ± %10.1f %s%n", nome, parametros, media, Math.sqrt(var), unidade);
+    }
+}
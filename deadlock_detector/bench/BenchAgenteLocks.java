@@ -0,0 +1,205 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+/**
+ * Agente de locks: o mesmo código, que não sabe do agente, medido numa JVM filha sem e com -javaagent. Custo
+ * de lock/unlock sem disputa de ReentrantLock e da leitura de ReentrantReadWriteLock e de um bloco e um
+ * método synchronized; vazão com várias threads, cada uma no próprio lock, com o consumidor drenando todos os
+ * anéis; e, com o agente, a latência de detecção de ponta a ponta, do instante em que a segunda thread pede
+ * o lock que fecha o ciclo até o relato do deadlock, com ReentrantLock e com synchronized. O jar do agente é
+ * montado com as classes compiladas de src.
+ */
+public class BenchAgenteLocks {
+    private static final int DEADLOCKS = 200;
+    private static final int DEADLOCKS_MONITOR = 50; // as threads de um deadlock de monitor nunca terminam
+    private static final String[] CLASSES_AGENTE = { "AgenteLocks", "SondasLocks", "DetectorLocks",
+            "TransformadorLocks", "ReescritorClasse" };
+
+    public static void executar(Bench bench) throws Exception {
+        if (!bench.habilitado("agente"))
+            return;
+        Path jar = montarAgente();
+        try {
+            rodar(bench, null);
+            rodar(bench, jar);
+        } finally {
+            Files.deleteIfExists(jar);
+        }
+    }
+
+    private static void rodar(Bench bench, Path agente) throws Exception {
+        List<String> comando = new ArrayList<>();
+        comando.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        if (agente != null)
+            comando.add("-javaagent:" + agente);
+        comando.addAll(List.of("-cp", System.getProperty("java.class.path"), BenchAgenteLocks.class.getName()));
+        comando.addAll(bench.configuracao());
+        System.out.flush();
+        Process filha = new ProcessBuilder(comando).inheritIO().start();
+        if (filha.waitFor() != 0)
+            throw new IllegalStateException("JVM filha do benchmark terminou com " + filha.exitValue());
+    }
+
+    // Manifesto de agente e as classes dele, tiradas do diretório de onde AgenteLocks foi carregada
+    private static Path montarAgente() throws IOException, URISyntaxException {
+        Path classes = Path.of(AgenteLocks.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        if (!Files.isDirectory(classes))
+            throw new IllegalStateException("Benchmark do agente: classes de src fora de um diretório: " + classes);
+        Manifest manifesto = new Manifest();
+        Attributes atributos = manifesto.getMainAttributes();
+        atributos.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        atributos.putValue("Premain-Class", "AgenteLocks");
+        atributos.putValue("Agent-Class", "AgenteLocks");
+        atributos.putValue("Can-Retransform-Classes", "true");
+        Path jar = Files.createTempFile("agente-locks", ".jar");
+        try (OutputStream arquivo = Files.newOutputStream(jar);
+                JarOutputStream out = new JarOutputStream(arquivo, manifesto);
+                DirectoryStream<Path> compiladas = Files.newDirectoryStream(classes, "*.class")) {
+            for (Path c : compiladas) {
+                String nome = c.getFileName().toString();
+                if (Arrays.stream(CLASSES_AGENTE).noneMatch(a -> nome.equals(a + ".class") || nome.startsWith(a + "$")))
+                    continue;
+                out.putNextEntry(new JarEntry(nome));
+                Files.copy(c, out);
+                out.closeEntry();
+            }
+        }
+        return jar;
+    }
+
+    /** JVM filha: aquecimento, medição, duração da iteração em ms e o filtro, se houver, do Bench pai. */
+    public static void main(String[] args) throws Exception {
+        Bench bench = new Bench(Integer.parseInt(args[0]), Integer.parseInt(args[1]), Long.parseLong(args[2]),
+                args.length > 3 ? args[3] : null);
+        DetectorLocks detector = SondasLocks.getDetector();
+        String agente = detector != null ? "com agente" : "sem agente";
+        ReentrantLock reentrante = new ReentrantLock();
+        ReentrantReadWriteLock leituraEscrita = new ReentrantReadWriteLock();
+        Object monitor = new Object();
+        bench.medir("agente.lock_unlock", "ReentrantLock " + agente, () -> {
+            reentrante.lock();
+            reentrante.unlock();
+        });
+        bench.medir("agente.lock_unlock", "leitura RRWL " + agente, () -> {
+            leituraEscrita.readLock().lock();
+            leituraEscrita.readLock().unlock();
+        });
+        bench.medir("agente.synchronized", "bloco " + agente, () -> {
+            synchronized (monitor) {
+                Bench.sumidouro = monitor;
+            }
+        });
+        Sincronizado sincronizado = new Sincronizado();
+        bench.medir("agente.synchronized", "método " + agente, sincronizado::tocar);
+        ReentrantLock[] travas = new ReentrantLock[4];
+        for (int t = 0; t < travas.length; t++)
+            travas[t] = new ReentrantLock();
+        bench.medirVazao("agente.lock_unlock_vazao", agente, travas.length, (t, ops) -> {
+            travas[t].lock();
+            travas[t].unlock();
+        });
+        if (detector != null && bench.habilitado("agente.latencia_deteccao")) {
+            medirLatencia(bench, detector, false, DEADLOCKS);
+            medirLatencia(bench, detector, true, DEADLOCKS_MONITOR);
+            bench.relatarValor("agente.latencia_consumidor", "média", detector.getLatenciaMediaUs(), "µs");
+        }
+    }
+
+    // Dois locks cruzados por par de threads; a que pede o segundo lock por último fecha o ciclo. O deadlock
+    // de ReentrantLock é desfeito por interrupção; o de monitor fica, com as threads daemon paradas
+    private static void medirLatencia(Bench bench, DetectorLocks detector, boolean monitor, int deadlocks)
+            throws InterruptedException {
+        long[] latencias = new long[deadlocks];
+        AtomicLong fechamento = new AtomicLong();
+        AtomicLong relato = new AtomicLong();
+        detector.setOnDeadlock(ciclo -> relato.compareAndSet(0, System.nanoTime()));
+        for (int i = 0; i < deadlocks; i++) {
+            Object a = monitor ? new Object() : new ReentrantLock();
+            Object b = monitor ? new Object() : new ReentrantLock();
+            CountDownLatch ambos = new CountDownLatch(2);
+            fechamento.set(0);
+            relato.set(0);
+            Thread t1 = iniciar("latencia-a", () -> cruzar(a, b, ambos, fechamento));
+            Thread t2 = iniciar("latencia-b", () -> cruzar(b, a, ambos, fechamento));
+            long limite = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (relato.get() == 0 && System.nanoTime() < limite)
+                Thread.sleep(0, 100_000);
+            if (!monitor) {
+                t1.interrupt();
+                t2.interrupt();
+                t1.join();
+                t2.join();
+            }
+            if (relato.get() == 0)
+                throw new IllegalStateException("Deadlock " + i + " não relatado");
+            latencias[i] = relato.get() - fechamento.get();
+        }
+        Arrays.sort(latencias);
+        String tipo = monitor ? "synchronized" : "ReentrantLock";
+        bench.relatarValor("agente.latencia_deteccao", tipo + " p50 n=" + deadlocks, latencias[deadlocks / 2] / 1e3,
+                "µs");
+        bench.relatarValor("agente.latencia_deteccao", tipo + " p99 n=" + deadlocks,
+                latencias[deadlocks * 99 / 100] / 1e3, "µs");
+    }
+
+    private static void cruzar(Object primeiro, Object segundo, CountDownLatch ambos, AtomicLong fechamento) {
+        if (primeiro instanceof ReentrantLock p && segundo instanceof ReentrantLock s) {
+            p.lock();
+            try {
+                esperarPar(ambos, fechamento);
+                s.lockInterruptibly();
+                s.unlock();
+            } catch (InterruptedException e) {
+                // deadlock relatado: desfeito pelo benchmark
+            } finally {
+                p.unlock();
+            }
+            return;
+        }
+        synchronized (primeiro) {
+            esperarPar(ambos, fechamento);
+            synchronized (segundo) {
+                Bench.sumidouro = segundo;
+            }
+        }
+    }
+
+    private static void esperarPar(CountDownLatch ambos, AtomicLong fechamento) {
+        ambos.countDown();
+        try {
+            ambos.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        fechamento.accumulateAndGet(System.nanoTime(), Math::max);
+    }
+
+    private static final class Sincronizado {
+        synchronized void tocar() {
+            Bench.sumidouro = this;
+        }
+    }
+
+    private static Thread iniciar(String nome, Runnable corpo) {
+        Thread t = new Thread(corpo, nome);
+        t.setDaemon(true);
+        t.start();
+        return t;
+    }
+}
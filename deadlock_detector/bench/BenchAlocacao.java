@@ -0,0 +1,65 @@
+import java.util.Random;
+
+/**
+ * Caminho quente de concessão/liberação: vazão de solicitarRecurso + liberarRecurso com
+ * 1..N threads disputando poucos recursos, e o custo da manutenção das matrizes em função de n x m.
+ */
+public class BenchAlocacao {
+    public static void executar(Bench bench) throws Exception {
+        int maxThreads = Math.max(4, Runtime.getRuntime().availableProcessors());
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            SistemaOperacional so = new SistemaOperacional(1);
+            so.setLogger(msg -> {
+            });
+            so.setRandom(new Random(Bench.SEMENTE));
+            for (int j = 0; j < 4; j++)
+                so.adicionarRecurso(new Recurso(j, "R" + j, 2));
+            Processo[] processos = new Processo[threads];
+            for (int t = 0; t < threads; t++) {
+                processos[t] = new Processo(t, 1, 1, so);
+                so.adicionarProcesso(processos[t]);
+            }
+            bench.medirVazao("alocacao.concessao_liberacao", "recursos=4x2", threads, (t, ops) -> {
+                RecursoInstance instance = new RecursoInstance(null, (int) ops);
+                if (so.solicitarRecurso(processos[t], instance) != null)
+                    so.liberarRecurso(processos[t], instance);
+                else {
+                    so.limparAguardando(processos[t]);
+                    RecursoInstance entregue = so.retirarEntrega(processos[t]); // chegou antes de desistir
+                    if (entregue != null)
+                        so.liberarRecurso(processos[t], entregue);
+                }
+            });
+        }
+
+        // Substituto de updateMatrices: cada concessão/liberação aplica só deltas, então o custo deve
+        // ficar estável enquanto n x m cresce (antes crescia com o total de alocações do sistema)
+        int[][] tamanhos = { { 10, 10 }, { 100, 100 }, { 1_000, 1_000 }, { 10_000, 1_000 } };
+        for (int[] tam : tamanhos) {
+            int n = tam[0], m = tam[1];
+            SistemaOperacional so = new SistemaOperacional(1);
+            so.setLogger(msg -> {
+            });
+            Recurso[] recursos = new Recurso[m];
+            for (int j = 0; j < m; j++) {
+                recursos[j] = new Recurso(j, "R" + j, n);
+                so.adicionarRecurso(recursos[j]);
+            }
+            Random random = new Random(Bench.SEMENTE);
+            Processo[] processos = new Processo[n];
+            for (int i = 0; i < n; i++) {
+                processos[i] = new Processo(i, 1, 1, so);
+                so.adicionarProcesso(processos[i]);
+                for (int k = 0; k < 4; k++) // carga de fundo: algumas alocações por processo
+                    so.concederRecurso(processos[i], new RecursoInstance(null, k), recursos[random.nextInt(m)]);
+            }
+            Processo p = processos[n / 2];
+            Recurso r = recursos[m / 2];
+            RecursoInstance instance = new RecursoInstance(null, -1);
+            bench.medir("alocacao.manutencao_matrizes", "n=" + n + " m=" + m, () -> {
+                so.concederRecurso(p, instance, r);
+                so.liberarRecurso(p, instance);
+            });
+        }
+    }
+}
@@ -0,0 +1,44 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * AnaliseLote sobre lotes de instantâneos aleatórios (mesma semente), com 1 thread e com todas
+ * as CPUs: mede instantâneos analisados por segundo e mostra o ganho do fork-join.
+ */
+public class BenchAnaliseLote {
+    public static void executar(Bench bench) throws Exception {
+        if (!bench.habilitado("analise_lote"))
+            return;
+        int cpus = Runtime.getRuntime().availableProcessors();
+        int[][] tamanhos = { { 20, 5 }, { 200, 20 } };
+        for (int[] tam : tamanhos) {
+            List<AnaliseLote.Instantaneo> lote = gerar(4_096, tam[0], tam[1], new Random(Bench.SEMENTE));
+            for (int threads : cpus > 1 ? new int[] { 1, cpus } : new int[] { 1 }) {
+                ForkJoinPool pool = new ForkJoinPool(threads);
+                AnaliseLote analise = new AnaliseLote(pool);
+                bench.medir("analise_lote.instantaneos", "lote=4096 n=" + tam[0] + " m=" + tam[1] + " t=" + threads,
+                        () -> Bench.sumidouro = analise.analisar(lote));
+                pool.shutdown();
+            }
+        }
+    }
+
+    // Cada processo retém algumas instâncias e pede outras; boa parte dos instantâneos tem deadlock
+    static List<AnaliseLote.Instantaneo> gerar(int quantidade, int n, int m, Random random) {
+        List<AnaliseLote.Instantaneo> lote = new ArrayList<>(quantidade);
+        for (int s = 0; s < quantidade; s++) {
+            int[][] alocacao = new int[n][m];
+            int[][] requisicao = new int[n][m];
+            int[] disponivel = new int[m];
+            for (int i = 0; i < n; i++) {
+                alocacao[i][random.nextInt(m)] += 1 + random.nextInt(2);
+                if (random.nextInt(n) != 0)
+                    requisicao[i][random.nextInt(m)] = 1 + random.nextInt(n / m);
+            }
+            lote.add(new AnaliseLote.Instantaneo(alocacao, requisicao, disponivel));
+        }
+        return lote;
+    }
+}
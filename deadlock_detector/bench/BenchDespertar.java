@@ -0,0 +1,40 @@
+import java.util.Random;
+
+/**
+ * Custo dos despertares sob contenção: muitos processos disputando poucas instâncias, com cada
+ * PoliticaDespertar. Roda por eventos discretos, então o resultado é determinístico; relata
+ * quantos processos são acordados, em média, para cada concessão feita.
+ */
+public class BenchDespertar {
+    private static final long DURACAO_MS = 600_000;
+
+    public static void executar(Bench bench) {
+        if (!bench.habilitado("despertar"))
+            return;
+        for (int n : new int[] { 100, 1_000 }) {
+            for (PoliticaDespertar politica : PoliticaDespertar.values()) {
+                SistemaOperacional so = new SistemaOperacional(5);
+                so.setLogger(msg -> {
+                });
+                so.setRandom(new Random(Bench.SEMENTE));
+                so.setPoliticaDespertar(politica);
+                for (int j = 0; j < 4; j++)
+                    so.adicionarRecurso(new Recurso(j, "R" + j, Math.max(1, n / 20)));
+                SimulacaoDiscreta simulacao = new SimulacaoDiscreta(so, 5);
+                Random random = new Random(Bench.SEMENTE);
+                for (int i = 0; i < n; i++) {
+                    // ΔTu < ΔTs: cada processo devolve o que obteve antes de pedir de novo, então quem
+                    // espera não retém nada e a contenção nunca vira deadlock
+                    Processo p = new Processo(i, 2 + random.nextInt(3), 1, so);
+                    p.setPrioridade(random.nextInt(4));
+                    so.adicionarProcesso(p);
+                    simulacao.adicionarProcesso(p);
+                }
+                simulacao.executar(DURACAO_MS);
+                String parametros = "n=" + n + " " + politica.name().toLowerCase();
+                bench.relatarValor("despertar.por_concessao", parametros,
+                        (double) so.getDespertares() / Math.max(1, so.getConcessoes()), "despertares/concessão");
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+import java.util.Random;
+
+/**
+ * Tempo até a detecção: dois processos formam um deadlock num instante aleatório e mede-se quanto
+ * tempo passa até onVerificacao relatá-lo, com detecção periódica (Δt = 1s) e por evento
+ * (janela de coalescência de 5 ms).
+ */
+public class BenchDeteccao {
+    private static final int REPETICOES = 5;
+
+    public static void executar(Bench bench) throws Exception {
+        if (!bench.habilitado("deteccao"))
+            return;
+        Random random = new Random(Bench.SEMENTE);
+        for (ModoDeteccao modo : ModoDeteccao.values()) {
+            double soma = 0;
+            for (int rep = 0; rep < REPETICOES; rep++)
+                soma += latencia(modo, random.nextInt(1_000));
+            bench.relatarValor("deteccao.latencia", modo.name().toLowerCase() + " dt=1s", soma / REPETICOES, "ms");
+        }
+    }
+
+    private static double latencia(ModoDeteccao modo, long atrasoMs) throws Exception {
+        SistemaOperacional so = sistema(modo);
+        long[] detectado = { 0 };
+        Object sinal = new Object();
+        so.setOnVerificacao(deadlocked -> {
+            if (!deadlocked.isEmpty()) {
+                synchronized (sinal) {
+                    detectado[0] = System.nanoTime();
+                    sinal.notifyAll();
+                }
+            }
+        });
+        Recurso r0 = new Recurso(0, "R0", 1);
+        Recurso r1 = new Recurso(1, "R1", 1);
+        so.adicionarRecurso(r0);
+        so.adicionarRecurso(r1);
+        Processo p0 = new Processo(0, 1, 1, so);
+        Processo p1 = new Processo(1, 1, 1, so);
+        so.adicionarProcesso(p0);
+        so.adicionarProcesso(p1);
+        so.concederRecurso(p0, new RecursoInstance(null, 0), r0);
+        so.concederRecurso(p1, new RecursoInstance(null, 1), r1);
+        so.start();
+        Thread.sleep(atrasoMs); // fase aleatória em relação ao ciclo de Δt
+        so.registrarEspera(p0, r1);
+        long formado = System.nanoTime();
+        so.registrarEspera(p1, r0);
+        synchronized (sinal) {
+            while (detectado[0] == 0)
+                sinal.wait();
+        }
+        so.interrupt();
+        so.join(1000);
+        return (detectado[0] - formado) / 1e6;
+    }
+
+    private static SistemaOperacional sistema(ModoDeteccao modo) {
+        SistemaOperacional so = new SistemaOperacional(1);
+        so.setLogger(msg -> {
+        });
+        so.setModoDeteccao(modo);
+        so.setJanelaCoalescenciaMs(5);
+        return so;
+    }
+}
@@ -0,0 +1,20 @@
+/**
+ * detectarDeadlock sobre as formas de Grafos. Cada operação invalida o resultado incremental
+ * para medir uma verificação completa (o custo de invalidar, O(n), entra na medida).
+ */
+public class BenchDetector {
+    public static void executar(Bench bench) throws Exception {
+        for (Grafos.Forma forma : Grafos.Forma.values()) {
+            for (int n : new int[] { 100, 1_000, 10_000 }) {
+                SistemaOperacional so = Grafos.construir(forma, n, Bench.SEMENTE);
+                bench.medir("detector." + forma.name().toLowerCase(), "n=" + n, () -> {
+                    so.invalidarVerificacao();
+                    so.detectarDeadlock();
+                });
+            }
+        }
+        // Caso comum: nada mudou desde a última verificação
+        SistemaOperacional so = Grafos.construir(Grafos.Forma.CICLO_UNICO, 10_000, Bench.SEMENTE);
+        bench.medir("detector.sem_alteracoes", "n=10000", so::detectarDeadlock);
+    }
+}
@@ -0,0 +1,91 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Detecção distribuída: um anel de 16 processos, cada um retendo um recurso e pedindo o do seguinte,
+ * repartido entre 1..16 shards. Em blocos, posições vizinhas do anel ficam no mesmo shard e só n arestas
+ * atravessam shards; espalhado, a posição j fica no shard j mod n e toda aresta atravessa. A cada
+ * rodada os 15 primeiros pedidos bloqueiam, o sistema se acalma e o último pedido fecha o ciclo;
+ * mede-se a latência entre esse pedido e o relato do deadlock e as sondas que passaram pelo transporte
+ * só no fechamento e na rodada inteira (as computações dos que bloquearam antes morrem no processo
+ * ainda ativo), com transporte local e por sockets.
+ */
+public class BenchDistribuido {
+    private static final int ANEL = 16;
+    private static final int AQUECIMENTO = 20;
+    private static final int RODADAS = 100;
+
+    public static void executar(Bench bench) throws Exception {
+        if (!bench.habilitado("distribuido"))
+            return;
+        for (String transporte : new String[] { "local", "socket" }) {
+            for (boolean blocos : new boolean[] { true, false }) {
+                for (int n : new int[] { 1, 2, 4, 8, 16 }) {
+                    if (blocos || n > 1) // com um shard as disposições coincidem
+                        medir(bench, transporte, blocos, n);
+                }
+            }
+        }
+    }
+
+    // ID do processo ou recurso na posição j do anel: cai no shard da posição (ID mod n)
+    private static int id(int base, int j, boolean blocos, int n) {
+        int shard = blocos ? j * n / ANEL : j % n;
+        return base + shard + n * j;
+    }
+
+    private static void medir(Bench bench, String transporte, boolean blocos, int n) throws Exception {
+        String parametros = transporte + (blocos ? " blocos" : " espalhado") + " shards=" + n;
+        try (SistemaDistribuido sistema = new SistemaDistribuido(n,
+                transporte.equals("local") ? new TransporteLocal() : new TransporteSocket())) {
+            AtomicLong relato = new AtomicLong();
+            sistema.setOnDeadlock(p -> relato.compareAndSet(0, System.nanoTime()));
+            for (int j = 0; j < ANEL; j++)
+                sistema.adicionarRecurso(id(0, j, blocos, n), 1);
+            sistema.iniciar();
+            long[] latencias = new long[RODADAS];
+            long sondasFechamento = 0, sondasRodada = 0, mensagensRodada = 0;
+            for (int rodada = 0; rodada < AQUECIMENTO + RODADAS; rodada++) {
+                int base = rodada * ANEL * n;
+                long concessoes = sistema.getConcessoes();
+                for (int j = 0; j < ANEL; j++)
+                    sistema.solicitar(id(base, j, blocos, n), id(0, j, blocos, n));
+                while (sistema.getConcessoes() < concessoes + ANEL)
+                    Thread.onSpinWait();
+                long sondas0 = sistema.getSondas(), mensagens0 = sistema.getMensagens();
+                for (int j = 0; j < ANEL - 1; j++)
+                    sistema.solicitar(id(base, j, blocos, n), id(0, j + 1, blocos, n));
+                Thread.sleep(5);
+                long sondas1 = sistema.getSondas();
+                relato.set(0);
+                long inicio = System.nanoTime();
+                sistema.solicitar(id(base, ANEL - 1, blocos, n), id(0, 0, blocos, n));
+                while (relato.get() == 0) {
+                    if (System.nanoTime() - inicio > 5_000_000_000L)
+                        throw new IllegalStateException("Deadlock não relatado: " + parametros);
+                    Thread.onSpinWait();
+                }
+                long fim = relato.get();
+                Thread.sleep(2);
+                if (rodada >= AQUECIMENTO) {
+                    latencias[rodada - AQUECIMENTO] = fim - inicio;
+                    sondasFechamento += sistema.getSondas() - sondas1;
+                    sondasRodada += sistema.getSondas() - sondas0;
+                    mensagensRodada += sistema.getMensagens() - mensagens0;
+                }
+                for (int j = 0; j < ANEL; j++)
+                    sistema.abortar(id(base, j, blocos, n));
+                Thread.sleep(5);
+            }
+            Arrays.sort(latencias);
+            bench.relatarValor("distribuido.latencia_p50", parametros, latencias[RODADAS / 2] / 1e3, "µs");
+            bench.relatarValor("distribuido.latencia_p99", parametros, latencias[RODADAS * 99 / 100] / 1e3, "µs");
+            bench.relatarValor("distribuido.sondas_fechamento", parametros, (double) sondasFechamento / RODADAS,
+                    "msgs/deadlock");
+            bench.relatarValor("distribuido.sondas_rodada", parametros, (double) sondasRodada / RODADAS,
+                    "msgs/deadlock");
+            bench.relatarValor("distribuido.mensagens_rodada", parametros, (double) mensagensRodada / RODADAS,
+                    "msgs/deadlock");
+        }
+    }
+}
@@ -0,0 +1,51 @@
+import java.util.Random;
+
+/**
+ * Latência de uma concessão (solicitarRecurso + liberarRecurso) com e sem o modo de evitação.
+ * Cada processo declara reivindicação máxima e já retém uma instância, então a verificação de
+ * segurança nem sempre sai pelo atalho; "folgado" dá instâncias de sobra e exercita o atalho.
+ */
+public class BenchEvitacao {
+    public static void executar(Bench bench) throws Exception {
+        if (!bench.habilitado("evitacao"))
+            return;
+        for (int n : new int[] { 10, 100, 1_000 }) {
+            for (boolean folgado : new boolean[] { false, true }) {
+                for (boolean evitar : new boolean[] { false, true }) {
+                    medir(bench, n, 8, folgado, evitar);
+                }
+            }
+        }
+    }
+
+    private static void medir(Bench bench, int n, int m, boolean folgado, boolean evitar) throws Exception {
+        SistemaOperacional so = new SistemaOperacional(1);
+        so.setLogger(msg -> {
+        });
+        so.setRandom(new Random(Bench.SEMENTE));
+        so.setEvitarDeadlock(evitar);
+        int total = folgado ? 4 * n : Math.max(2, n / 2);
+        for (int j = 0; j < m; j++)
+            so.adicionarRecurso(new Recurso(j, "R" + j, total));
+        Random random = new Random(Bench.SEMENTE);
+        Processo[] processos = new Processo[n];
+        for (int i = 0; i < n; i++) {
+            processos[i] = new Processo(i, 1, 1, so);
+            for (int j = 0; j < m; j++)
+                processos[i].declararMaximo(j, 1 + random.nextInt(3));
+            so.adicionarProcesso(processos[i]);
+            RecursoInstance instance = new RecursoInstance(null, SistemaOperacional.getNextGlobalInstanceId());
+            if (so.solicitarRecurso(processos[i], instance) == null)
+                so.limparAguardando(processos[i]);
+        }
+        Processo p = processos[n / 2];
+        bench.medir("evitacao.concessao", "n=" + n + " m=" + m + (folgado ? " folgado" : "")
+                + (evitar ? " banqueiro" : " sem"), () -> {
+                    RecursoInstance instance = new RecursoInstance(null, 0);
+                    if (so.solicitarRecurso(p, instance) != null)
+                        so.liberarRecurso(p, instance);
+                    else
+                        so.limparAguardando(p);
+                });
+    }
+}
@@ -0,0 +1,60 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Simulação completa com muitos processos simultâneos, em threads de plataforma e virtuais.
+ * Mede eventos de simulação por segundo (solicitações, concessões e liberações registradas no log).
+ * O modo virtual exige Java 21+; sem suporte, ele é pulado.
+ */
+public class BenchModoExecucao {
+    private static final int SEGUNDOS_AQUECIMENTO = 2;
+    private static final int SEGUNDOS_MEDICAO = 5;
+
+    public static void executar(Bench bench) throws Exception {
+        if (!bench.habilitado("modo_execucao"))
+            return;
+        for (ModoExecucao modo : ModoExecucao.values()) {
+            if (modo == ModoExecucao.VIRTUAL && !ModoExecucao.virtualDisponivel()) {
+                System.out.println("modo_execucao.virtual: threads virtuais indisponíveis nesta JVM, pulando");
+                continue;
+            }
+            int[] quantidades = modo == ModoExecucao.VIRTUAL
+                    ? new int[] { 1_000, 10_000, 100_000 }
+                    : new int[] { 1_000, 10_000 };
+            for (int n : quantidades) {
+                bench.relatarValor("modo_execucao." + modo.name().toLowerCase(), "processos=" + n,
+                        simular(modo, n), "eventos/s");
+            }
+        }
+    }
+
+    private static double simular(ModoExecucao modo, int n) throws InterruptedException {
+        SistemaOperacional so = new SistemaOperacional(1);
+        so.setLogger(msg -> {
+        });
+        RegistroEventos eventos = so.getRegistroEventos();
+        so.setRandom(new Random(Bench.SEMENTE));
+        so.setModoExecucao(modo);
+        for (int j = 0; j < 100; j++)
+            so.adicionarRecurso(new Recurso(j, "R" + j, Math.max(1, n / 20)));
+        List<Processo> processos = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            Processo p = new Processo(i, 1, 1, so);
+            so.adicionarProcesso(p);
+            processos.add(p);
+        }
+        processos.forEach(Processo::start);
+
+        Thread.sleep(SEGUNDOS_AQUECIMENTO * 1000L);
+        long antes = eventos.getProduzidos();
+        long inicio = System.nanoTime();
+        Thread.sleep(SEGUNDOS_MEDICAO * 1000L);
+        double vazao = (eventos.getProduzidos() - antes) * 1e9 / (System.nanoTime() - inicio);
+
+        processos.forEach(Processo::interrupt);
+        for (Processo p : processos)
+            p.join(1000);
+        return vazao;
+    }
+}
@@ -0,0 +1,134 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Monitor de deadlock de threads reais: custo de uma amostra na própria JVM com N threads ociosas
+ * (estacionadas numa Condition, como um pool sem trabalho), com contenção num monitor e com um deadlock
+ * já relatado, contra as alternativas diretas da ThreadMXBean (dumpAllThreads com locks e
+ * findDeadlockedThreads), que param a JVM num safepoint a cada chamada.
+ */
+public class BenchMonitorJvm {
+    public static void executar(Bench bench) throws Exception {
+        if (!bench.habilitado("monitorjvm"))
+            return;
+        ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+        for (int n : new int[] { 100, 1000 }) {
+            List<Thread> criadas = new ArrayList<>();
+            try {
+                ociosas(n, criadas);
+                MonitorDeadlockJvm monitor = new MonitorDeadlockJvm();
+                String ociosas = "ociosas=" + n;
+                bench.medir("monitorjvm.amostra", ociosas, monitor::amostrar);
+                bench.medir("monitorjvm.dumpAllThreads", ociosas, () -> Bench.sumidouro = mx.dumpAllThreads(true, true));
+                bench.medir("monitorjvm.findDeadlocked", ociosas, () -> Bench.sumidouro = mx.findDeadlockedThreads());
+
+                contencao(8, criadas);
+                bench.medir("monitorjvm.amostra", ociosas + " contenção=8", monitor::amostrar);
+
+                deadlock(criadas);
+                monitor.amostrar(); // relata e confirma uma vez; as seguintes só reconhecem o mesmo deadlock
+                bench.medir("monitorjvm.amostra", ociosas + " contenção=8 deadlock", monitor::amostrar);
+                bench.medir("monitorjvm.dumpAllThreads", ociosas + " contenção=8 deadlock",
+                        () -> Bench.sumidouro = mx.dumpAllThreads(true, true));
+                bench.medir("monitorjvm.findDeadlocked", ociosas + " contenção=8 deadlock",
+                        () -> Bench.sumidouro = mx.findDeadlockedThreads());
+                if (monitor.getDeadlocks() != 1)
+                    throw new IllegalStateException("Deadlock não relatado uma única vez: " + monitor.getDeadlocks());
+            } finally {
+                for (Thread t : criadas)
+                    t.interrupt();
+                for (Thread t : criadas)
+                    t.join(1000);
+            }
+        }
+    }
+
+    private static void ociosas(int n, List<Thread> criadas) throws InterruptedException {
+        ReentrantLock trava = new ReentrantLock();
+        Condition nunca = trava.newCondition();
+        CountDownLatch prontas = new CountDownLatch(n);
+        for (int i = 0; i < n; i++) {
+            criadas.add(iniciar("ociosa-" + i, () -> {
+                trava.lock();
+                try {
+                    prontas.countDown();
+                    nunca.await();
+                } catch (InterruptedException e) {
+                    // fim do benchmark
+                } finally {
+                    trava.unlock();
+                }
+            }));
+        }
+        prontas.await();
+    }
+
+    // k threads bloqueadas num monitor retido por uma thread que dorme com ele
+    private static void contencao(int k, List<Thread> criadas) throws InterruptedException {
+        Object monitor = new Object();
+        CountDownLatch retido = new CountDownLatch(1);
+        criadas.add(iniciar("dono", () -> {
+            synchronized (monitor) {
+                retido.countDown();
+                try {
+                    Thread.sleep(Long.MAX_VALUE);
+                } catch (InterruptedException e) {
+                    // fim do benchmark
+                }
+            }
+        }));
+        retido.await();
+        for (int i = 0; i < k; i++) {
+            criadas.add(iniciar("disputa-" + i, () -> {
+                synchronized (monitor) {
+                    Bench.sumidouro = monitor;
+                }
+            }));
+        }
+        esperarEstado(criadas, Thread.State.BLOCKED, k);
+    }
+
+    // Duas threads em deadlock por locks interrompíveis, para o benchmark poder desfazê-lo
+    private static void deadlock(List<Thread> criadas) throws InterruptedException {
+        ReentrantLock a = new ReentrantLock();
+        ReentrantLock b = new ReentrantLock();
+        CountDownLatch ambos = new CountDownLatch(2);
+        criadas.add(iniciar("deadlock-a", () -> cruzar(a, b, ambos)));
+        criadas.add(iniciar("deadlock-b", () -> cruzar(b, a, ambos)));
+        esperarEstado(criadas, Thread.State.WAITING, 2);
+    }
+
+    private static void cruzar(ReentrantLock primeiro, ReentrantLock segundo, CountDownLatch ambos) {
+        primeiro.lock();
+        try {
+            ambos.countDown();
+            ambos.await();
+            segundo.lockInterruptibly();
+            segundo.unlock();
+        } catch (InterruptedException e) {
+            // fim do benchmark
+        } finally {
+            primeiro.unlock();
+        }
+    }
+
+    private static void esperarEstado(List<Thread> criadas, Thread.State estado, int ultimas)
+            throws InterruptedException {
+        for (int i = criadas.size() - ultimas; i < criadas.size(); i++) {
+            while (criadas.get(i).getState() != estado)
+                Thread.sleep(1);
+        }
+    }
+
+    private static Thread iniciar(String nome, Runnable corpo) {
+        Thread t = new Thread(corpo, nome);
+        t.setDaemon(true);
+        t.start();
+        return t;
+    }
+}
@@ -0,0 +1,55 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Ponto de controle: tempo de gravar o estado inteiro e de lê-lo e restaurá-lo num sistema novo
+ * (a construção do SistemaOperacional entra na medida da restauração). Cada processo retém duas
+ * instâncias e um em cada quatro aguarda um recurso.
+ */
+public class BenchPontoDeControle {
+    public static void executar(Bench bench) throws Exception {
+        if (!bench.habilitado("pontocontrole"))
+            return;
+        Path arquivo = Files.createTempFile("bench-ponto", ".bin");
+        try {
+            for (int[] tamanho : new int[][] { { 100, 1000 }, { 1000, 10000 } }) {
+                SistemaOperacional so = montar(tamanho[0], tamanho[1]);
+                String parametros = "recursos=" + tamanho[0] + " processos=" + tamanho[1];
+                bench.medir("pontocontrole.gravar", parametros, () -> PontoDeControle.gravar(so, arquivo));
+                bench.medir("pontocontrole.restaurar", parametros, () -> {
+                    SistemaOperacional destino = new SistemaOperacional(1);
+                    destino.setLogger(null);
+                    Bench.sumidouro = PontoDeControle.ler(arquivo).restaurar(destino);
+                });
+                bench.relatarValor("pontocontrole.arquivo", parametros, Files.size(arquivo) / 1024.0, "KiB");
+            }
+        } finally {
+            Files.deleteIfExists(arquivo);
+        }
+    }
+
+    private static SistemaOperacional montar(int recursos, int processos) {
+        SistemaOperacional so = new SistemaOperacional(1);
+        so.setLogger(null);
+        Random random = new Random(Bench.SEMENTE);
+        Recurso[] rs = new Recurso[recursos];
+        for (int j = 0; j < recursos; j++) {
+            rs[j] = new Recurso(j, "R" + j, 2 * processos / recursos + 2);
+            so.adicionarRecurso(rs[j]);
+        }
+        for (int i = 0; i < processos; i++) {
+            Processo p = new Processo(i, 1 + random.nextInt(5), 1 + random.nextInt(5), so);
+            so.adicionarProcesso(p);
+            for (int k = 0; k < 2; k++) {
+                Recurso r = rs[random.nextInt(recursos)];
+                if (r.getDisponivel() > 0)
+                    so.restaurarAlocacao(p, new RecursoInstance(r, SistemaOperacional.getNextGlobalInstanceId()),
+                            so.agoraMs(), false);
+            }
+            if (i % 4 == 0)
+                so.restaurarEspera(p, rs[random.nextInt(recursos)]);
+        }
+        return so;
+    }
+}
@@ -0,0 +1,43 @@
+import java.util.Random;
+
+/**
+ * Compara as ações de recuperação num cenário propenso a deadlock, por eventos discretos (resultado
+ * determinístico): vazão em concessões por minuto simulado, vítimas e tempo médio de cada recuperação
+ * e trabalho perdido (tempo de retenção desfeito) por minuto simulado.
+ */
+public class BenchRecuperacao {
+    private static final long DURACAO_MS = 3_600_000;
+
+    public static void executar(Bench bench) {
+        if (!bench.habilitado("recuperacao"))
+            return;
+        for (RecuperadorDeadlock.Acao acao : RecuperadorDeadlock.Acao.values()) {
+            SistemaOperacional so = new SistemaOperacional(2);
+            so.setLogger(msg -> {
+            });
+            so.setRandom(new Random(Bench.SEMENTE));
+            RecuperadorDeadlock recuperador = new RecuperadorDeadlock(acao);
+            so.setRecuperador(recuperador);
+            for (int j = 0; j < 4; j++)
+                so.adicionarRecurso(new Recurso(j, "R" + j, 2));
+            SimulacaoDiscreta simulacao = new SimulacaoDiscreta(so, 2);
+            Random random = new Random(Bench.SEMENTE);
+            for (int i = 0; i < 20; i++) {
+                Processo p = new Processo(i, 1 + random.nextInt(3), 3 + random.nextInt(4), so);
+                so.adicionarProcesso(p);
+                simulacao.adicionarProcesso(p);
+            }
+            simulacao.executar(DURACAO_MS);
+            String nome = acao.name().toLowerCase();
+            double minutos = DURACAO_MS / 60_000.0;
+            long episodios = Math.max(1, recuperador.getRecuperacoes());
+            bench.relatarValor("recuperacao.vazao", nome, so.getConcessoes() / minutos, "concessões/min");
+            bench.relatarValor("recuperacao.vitimas", nome, (double) recuperador.getVitimas() / episodios,
+                    "vítimas/recuperação");
+            bench.relatarValor("recuperacao.tempo", nome, recuperador.getTempoRecuperacaoNs() / 1e3 / episodios,
+                    "µs/recuperação");
+            bench.relatarValor("recuperacao.trabalho_perdido", nome,
+                    recuperador.getTrabalhoPerdidoMs() / 1000.0 / minutos, "s/min");
+        }
+    }
+}
@@ -0,0 +1,84 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Custo do log: o logger antigo (mensagem concatenada e uma tarefa por linha numa fila consumida
+ * por outra thread, como o Platform.runLater da interface) contra o RegistroEventos (vaga no anel,
+ * formatação e entrega em lote na thread consumidora). Relata bytes alocados por evento na thread
+ * produtora e a vazão de ponta a ponta, em rajadas que cabem no anel para não haver descarte.
+ */
+public class BenchRegistro {
+    private static final int RAJADA = 4_096;
+    private static final int RAJADAS = 200;
+
+    public static void executar(Bench bench) {
+        if (!bench.habilitado("registro"))
+            return;
+        for (int rodada = 0; rodada < 2; rodada++) { // a primeira só aquece
+            boolean medir = rodada == 1;
+            medirPorLinha(bench, medir);
+            medirAnel(bench, medir);
+        }
+    }
+
+    private static void medirPorLinha(Bench bench, boolean relatar) {
+        ConcurrentLinkedQueue<Runnable> fila = new ConcurrentLinkedQueue<>();
+        Thread consumidor = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                Runnable r = fila.poll();
+                if (r != null)
+                    r.run();
+                else
+                    LockSupport.parkNanos(100_000);
+            }
+        });
+        consumidor.setDaemon(true);
+        consumidor.start();
+        long bytes = 0;
+        long inicio = System.nanoTime();
+        for (int b = 0; b < RAJADAS; b++) {
+            long antes = alocadoNaThread();
+            for (int k = 0; k < RAJADA; k++) {
+                String msg = "Processo " + (k & 63) + " obteve recurso R" + (k & 7);
+                fila.add(() -> Bench.sumidouro = msg);
+            }
+            bytes += alocadoNaThread() - antes;
+            while (!fila.isEmpty())
+                Thread.onSpinWait();
+        }
+        long decorrido = System.nanoTime() - inicio;
+        consumidor.interrupt();
+        if (relatar)
+            relatar(bench, "registro.por_linha", bytes, decorrido);
+    }
+
+    private static void medirAnel(Bench bench, boolean relatar) {
+        RegistroEventos registro = new RegistroEventos(8_192);
+        registro.setSaida(lote -> Bench.sumidouro = lote);
+        long bytes = 0;
+        long inicio = System.nanoTime();
+        for (int b = 0; b < RAJADAS; b++) {
+            long antes = alocadoNaThread();
+            for (int k = 0; k < RAJADA; k++)
+                registro.registrar(TipoEvento.CONCESSAO, k, k & 63, k & 7);
+            bytes += alocadoNaThread() - antes;
+            registro.descarregar();
+        }
+        long decorrido = System.nanoTime() - inicio;
+        if (relatar) {
+            relatar(bench, "registro.anel", bytes, decorrido);
+            bench.relatarValor("registro.anel", "descartados", registro.getDescartados(), "eventos");
+        }
+    }
+
+    private static void relatar(Bench bench, String nome, long bytes, long decorridoNs) {
+        long eventos = (long) RAJADA * RAJADAS;
+        bench.relatarValor(nome, "alocação do produtor", (double) bytes / eventos, "bytes/evento");
+        bench.relatarValor(nome, "ponta a ponta", eventos * 1e9 / decorridoNs, "eventos/s");
+    }
+
+    private static long alocadoNaThread() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getCurrentThreadAllocatedBytes();
+    }
+}
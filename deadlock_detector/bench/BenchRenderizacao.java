@@ -0,0 +1,47 @@
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Custo das visões textuais usadas pela interface: statusProcessos, getAllocationMatrixString
+ * (matriz inteira) e a VisaoMatrizes depois de uma concessão/liberação, que remonta uma só linha.
+ */
+public class BenchRenderizacao {
+    public static void executar(Bench bench) throws Exception {
+        int[][] tamanhos = { { 10, 10 }, { 100, 50 }, { 1_000, 100 } };
+        for (int[] tam : tamanhos) {
+            int n = tam[0], m = tam[1];
+            SistemaOperacional so = new SistemaOperacional(1);
+            so.setLogger(msg -> {
+            });
+            Recurso[] recursos = new Recurso[m];
+            for (int j = 0; j < m; j++) {
+                recursos[j] = new Recurso(j, "R" + j, n);
+                so.adicionarRecurso(recursos[j]);
+            }
+            Random random = new Random(Bench.SEMENTE);
+            for (int i = 0; i < n; i++) {
+                Processo p = new Processo(i, 1, 1, so);
+                so.adicionarProcesso(p);
+                for (int k = 0; k < 3; k++)
+                    so.concederRecurso(p, new RecursoInstance(null, k), recursos[random.nextInt(m)]);
+            }
+            String params = "n=" + n + " m=" + m;
+            bench.medir("renderizacao.status_processos", params, () -> Bench.sumidouro = so.statusProcessos());
+            bench.medir("renderizacao.matriz_alocacao", params,
+                    () -> Bench.sumidouro = so.getAllocationMatrixString());
+
+            VisaoMatrizes visao = new VisaoMatrizes(so);
+            visao.atualizar();
+            List<Processo> processos = so.getProcessos();
+            int[] proximo = { 0 };
+            bench.medir("renderizacao.visao_incremental", params, () -> {
+                Processo p = processos.get(proximo[0]++ % n);
+                RecursoInstance instance = new RecursoInstance(null, 0);
+                if (so.concederRecurso(p, instance, recursos[0]))
+                    so.liberarRecurso(p, instance);
+                visao.atualizar();
+                Bench.sumidouro = visao.getAlocacao();
+            });
+        }
+    }
+}
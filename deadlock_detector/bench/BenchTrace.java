@@ -0,0 +1,96 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Trace binário: custo da gravação no caminho quente de concessão/liberação (com e sem trace, na
+ * mesma execução) e vazão da reprodução offline de três horas simuladas por eventos discretos, com
+ * a detecção incremental nos pontos gravados contra a detecção do grafo completo.
+ */
+public class BenchTrace {
+    public static void executar(Bench bench) throws Exception {
+        if (!bench.habilitado("trace"))
+            return;
+        Path arquivo = Files.createTempFile("bench-trace", ".bin");
+        try {
+            int maxThreads = Math.max(4, Runtime.getRuntime().availableProcessors());
+            for (int threads = 1; threads <= maxThreads; threads *= 2) {
+                medirConcessao(bench, threads, null);
+                try (GravadorTrace trace = new GravadorTrace(arquivo)) {
+                    medirConcessao(bench, threads, trace);
+                }
+            }
+
+            try (GravadorTrace trace = new GravadorTrace(arquivo)) {
+                gravarSimulacao(trace);
+            }
+            for (boolean completa : new boolean[] { false, true }) {
+                ReproducaoTrace reproducao = null;
+                long decorrido = 0;
+                for (int rodada = 0; rodada < 2; rodada++) { // a primeira só aquece
+                    reproducao = new ReproducaoTrace(arquivo);
+                    reproducao.setCompleta(completa);
+                    long inicio = System.nanoTime();
+                    reproducao.executar(new PrintStream(OutputStream.nullOutputStream()));
+                    decorrido = System.nanoTime() - inicio;
+                }
+                String parametros = completa ? "deteccao=completa" : "deteccao=incremental";
+                bench.relatarValor("trace.reproducao", parametros, reproducao.getTransicoes() * 1e9 / decorrido,
+                        "transições/s");
+                bench.relatarValor("trace.reproducao.deteccao", parametros,
+                        reproducao.getTempoDeteccaoNs() / 1e3 / Math.max(1, reproducao.getDeteccoes()), "µs/detecção");
+            }
+        } finally {
+            Files.deleteIfExists(arquivo);
+        }
+    }
+
+    private static void medirConcessao(Bench bench, int threads, GravadorTrace trace) throws Exception {
+        SistemaOperacional so = new SistemaOperacional(1);
+        so.setLogger(null);
+        so.setRandom(new Random(Bench.SEMENTE));
+        for (int j = 0; j < 4; j++)
+            so.adicionarRecurso(new Recurso(j, "R" + j, 2));
+        Processo[] processos = new Processo[threads];
+        for (int t = 0; t < threads; t++) {
+            processos[t] = new Processo(t, 1, 1, so);
+            so.adicionarProcesso(processos[t]);
+        }
+        so.setTrace(trace);
+        bench.medirVazao("trace.concessao_liberacao", trace != null ? "com trace" : "sem trace", threads, (t, ops) -> {
+            RecursoInstance instance = new RecursoInstance(null, (int) ops);
+            if (so.solicitarRecurso(processos[t], instance) != null)
+                so.liberarRecurso(processos[t], instance);
+            else {
+                so.limparAguardando(processos[t]);
+                RecursoInstance entregue = so.retirarEntrega(processos[t]);
+                if (entregue != null)
+                    so.liberarRecurso(processos[t], entregue);
+            }
+        });
+        so.setTrace(null);
+    }
+
+    // Cenário propenso a deadlock, com recuperação por reinício para a simulação seguir: 50 processos
+    // disputando 8 recursos de 3 instâncias
+    private static void gravarSimulacao(GravadorTrace trace) {
+        SistemaOperacional so = new SistemaOperacional(2);
+        so.setLogger(null);
+        so.setRandom(new Random(Bench.SEMENTE));
+        so.setRecuperador(new RecuperadorDeadlock(RecuperadorDeadlock.Acao.REINICIAR));
+        for (int j = 0; j < 8; j++)
+            so.adicionarRecurso(new Recurso(j, "R" + j, 3));
+        so.setTrace(trace);
+        SimulacaoDiscreta simulacao = new SimulacaoDiscreta(so, 2);
+        Random random = new Random(Bench.SEMENTE);
+        for (int i = 0; i < 50; i++) {
+            Processo p = new Processo(i, 1 + random.nextInt(3), 3 + random.nextInt(4), so);
+            so.adicionarProcesso(p);
+            simulacao.adicionarProcesso(p);
+        }
+        simulacao.executar(3 * 3_600_000);
+        so.setTrace(null);
+    }
+}
@@ -0,0 +1,35 @@
+/**
+ * Ponto de entrada da suíte de benchmarks.
+ *
+ * Uso: java -cp bin:bench-bin Benchmarks [filtro] [-rapido]
+ * O filtro seleciona benchmarks cujo nome contenha o texto (ex.: "detector").
+ */
+public class Benchmarks {
+    public static void main(String[] args) throws Exception {
+        String filtro = null;
+        boolean rapido = false;
+        for (String arg : args) {
+            if (arg.equals("-rapido"))
+                rapido = true;
+            else
+                filtro = arg;
+        }
+        Bench bench = rapido ? new Bench(1, 2, 100, filtro) : new Bench(3, 5, 1000, filtro);
+        System.out.printf("%-34s %-28s %27s%n", "benchmark", "parâmetros", "resultado");
+        BenchDetector.executar(bench);
+        BenchAlocacao.executar(bench);
+        BenchAnaliseLote.executar(bench);
+        BenchRenderizacao.executar(bench);
+        BenchDespertar.executar(bench);
+        BenchDeteccao.executar(bench);
+        BenchEvitacao.executar(bench);
+        BenchRecuperacao.executar(bench);
+        BenchRegistro.executar(bench);
+        BenchModoExecucao.executar(bench);
+        BenchTrace.executar(bench);
+        BenchPontoDeControle.executar(bench);
+        BenchMonitorJvm.executar(bench);
+        BenchAgenteLocks.executar(bench);
+        BenchDistribuido.executar(bench);
+    }
+}
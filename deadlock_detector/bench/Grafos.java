@@ -0,0 +1,62 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Gera estados de alocação com formas conhecidas para os benchmarks do detector.
+ * Em todas as formas o processo i segura uma instância do recurso i.
+ */
+public class Grafos {
+    public enum Forma {
+        SEGURO, // P2k aguarda o recurso de P2k+1, que roda livre: metade bloqueada, sem ciclo
+        CICLO_UNICO, // Pi aguarda R(i+1 mod n): um único ciclo com todos
+        CICLOS_DISJUNTOS, // pares (P2k, P2k+1) aguardando um o recurso do outro
+        CADEIA_LONGA // Pi aguarda R(i+1), o último roda livre: seguro, mas com n níveis de dependência
+    }
+
+    public static SistemaOperacional construir(Forma forma, int n, long semente) {
+        SistemaOperacional so = new SistemaOperacional(1);
+        so.setLogger(msg -> {
+        });
+        so.setRandom(new Random(semente));
+        List<Recurso> recursos = new ArrayList<>();
+        for (int j = 0; j < n; j++) {
+            Recurso r = new Recurso(j, "R" + j, 1);
+            recursos.add(r);
+            so.adicionarRecurso(r);
+        }
+        // Ordem de criação embaralhada com semente fixa, para não favorecer a varredura do detector
+        List<Integer> ordem = new ArrayList<>();
+        for (int i = 0; i < n; i++)
+            ordem.add(i);
+        Collections.shuffle(ordem, new Random(semente));
+        Processo[] processos = new Processo[n];
+        for (int i : ordem) {
+            processos[i] = new Processo(i, 1, 1, so);
+            so.adicionarProcesso(processos[i]);
+        }
+        for (int i = 0; i < n; i++) {
+            so.concederRecurso(processos[i], new RecursoInstance(null, SistemaOperacional.getNextGlobalInstanceId()),
+                    recursos.get(i));
+        }
+        for (int i = 0; i < n; i++) {
+            switch (forma) {
+                case SEGURO -> {
+                    if (i % 2 == 0)
+                        so.registrarEspera(processos[i], recursos.get((i + 1) % n));
+                }
+                case CICLO_UNICO -> so.registrarEspera(processos[i], recursos.get((i + 1) % n));
+                case CICLOS_DISJUNTOS -> {
+                    if (i + 1 < n || i % 2 == 1)
+                        so.registrarEspera(processos[i], recursos.get(i % 2 == 0 ? i + 1 : i - 1));
+                }
+                case CADEIA_LONGA -> {
+                    if (i + 1 < n)
+                        so.registrarEspera(processos[i], recursos.get(i + 1));
+                }
+            }
+        }
+        return so;
+    }
+}
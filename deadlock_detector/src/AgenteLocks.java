@@ -0,0 +1,43 @@
+import java.lang.instrument.Instrumentation;
+import java.net.JarURLConnection;
+import java.net.URL;
+import java.util.Enumeration;
+import java.util.jar.JarFile;
+
+/**
+ * Agente Java (-javaagent ou anexado com agentmain) que instala um DetectorLocks e imprime cada deadlock em
+ * stderr, sem mudar a aplicação: as classes de locks do JDK e as classes da aplicação são reescritas pelo
+ * TransformadorLocks para chamar as sondas de SondasLocks. O jar precisa de Premain-Class, Agent-Class e
+ * Can-Retransform-Classes no manifesto (ver README).
+ */
+public final class AgenteLocks {
+    private AgenteLocks() {
+    }
+
+    public static void premain(String args, Instrumentation inst) throws Exception {
+        instalar(inst);
+    }
+
+    public static void agentmain(String args, Instrumentation inst) throws Exception {
+        instalar(inst);
+    }
+
+    // As sondas são chamadas de dentro de java.base, que só enxerga o carregador de bootstrap. SondasLocks
+    // só é resolvida na chamada, depois do jar entrar na busca dele, e então vem de lá e não do classpath
+    private static void instalar(Instrumentation inst) throws Exception {
+        inst.appendToBootstrapClassLoaderSearch(jarDoAgente());
+        SondasLocks.instalar(inst);
+    }
+
+    // O jar vai para o fim do classpath: com as mesmas classes num diretório antes dele, AgenteLocks vem do
+    // diretório, e o jar é achado pelo recurso
+    private static JarFile jarDoAgente() throws Exception {
+        Enumeration<URL> urls = ClassLoader.getSystemClassLoader().getResources("AgenteLocks.class");
+        while (urls.hasMoreElements()) {
+            URL url = urls.nextElement();
+            if (url.getProtocol().equals("jar"))
+                return ((JarURLConnection) url.openConnection()).getJarFile();
+        }
+        throw new IllegalStateException("AgenteLocks: jar do agente não encontrado no classpath");
+    }
+}
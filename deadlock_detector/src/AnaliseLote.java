@@ -0,0 +1,253 @@
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Detecção de deadlock offline sobre um lote de instantâneos (alocação n x m, requisição n x m e
+ * disponíveis m, no formato das matrizes do SistemaOperacional), em paralelo com fork-join e sem
+ * criar SistemaOperacional nem threads de processo. Serve para varrer milhares de configurações
+ * candidatas (totais de recursos, misturas de processos) de uma vez.
+ *
+ * Cada thread trabalhadora reaproveita os próprios vetores de trabalho, que só crescem; o resultado
+ * do lote inteiro é alocado uma vez antes da análise. Nada é alocado por instantâneo.
+ */
+public class AnaliseLote {
+    // Abaixo disso a tarefa não se divide mais: o custo de um instantâneo pequeno é de microssegundos
+    private static final int LIMIAR_DIVISAO = 8;
+
+    public static final class Instantaneo {
+        private final int[][] alocacao;
+        private final int[][] requisicao;
+        private final int[] disponivel;
+
+        public Instantaneo(int[][] alocacao, int[][] requisicao, int[] disponivel) {
+            if (alocacao.length != requisicao.length)
+                throw new IllegalArgumentException("Alocação e requisição com números de processos diferentes");
+            for (int i = 0; i < alocacao.length; i++) {
+                if (alocacao[i].length != disponivel.length || requisicao[i].length != disponivel.length)
+                    throw new IllegalArgumentException("Linha " + i + " não tem " + disponivel.length + " recursos");
+            }
+            this.alocacao = alocacao;
+            this.requisicao = requisicao;
+            this.disponivel = disponivel;
+        }
+
+        public int getNumProcessos() {
+            return alocacao.length;
+        }
+
+        public int getNumRecursos() {
+            return disponivel.length;
+        }
+
+        public int[][] getAlocacao() {
+            return alocacao;
+        }
+
+        public int[][] getRequisicao() {
+            return requisicao;
+        }
+
+        public int[] getDisponivel() {
+            return disponivel;
+        }
+    }
+
+    /** Vereditos do lote: para cada instantâneo, um bit por processo em deadlock. */
+    public static final class Resultado {
+        private final int[] inicio; // primeira palavra de cada instantâneo em bits
+        private final long[] bits;
+        private final int[] quantidade;
+
+        private Resultado(List<Instantaneo> lote) {
+            inicio = new int[lote.size() + 1];
+            for (int s = 0; s < lote.size(); s++)
+                inicio[s + 1] = inicio[s] + (lote.get(s).getNumProcessos() + 63) / 64;
+            bits = new long[inicio[lote.size()]];
+            quantidade = new int[lote.size()];
+        }
+
+        public int tamanho() {
+            return quantidade.length;
+        }
+
+        public boolean temDeadlock(int s) {
+            return quantidade[s] > 0;
+        }
+
+        public int quantidadeEmDeadlock(int s) {
+            return quantidade[s];
+        }
+
+        public boolean emDeadlock(int s, int processo) {
+            return (bits[inicio[s] + (processo >>> 6)] & (1L << processo)) != 0;
+        }
+
+        /** Índices (linhas do instantâneo) dos processos em deadlock, em ordem crescente. */
+        public int[] processosEmDeadlock(int s) {
+            int[] resultado = new int[quantidade[s]];
+            int k = 0;
+            for (int w = inicio[s]; w < inicio[s + 1]; w++) {
+                long palavra = bits[w];
+                while (palavra != 0) {
+                    resultado[k++] = (w - inicio[s]) * 64 + Long.numberOfTrailingZeros(palavra);
+                    palavra &= palavra - 1;
+                }
+            }
+            return resultado;
+        }
+    }
+
+    // Vetores de trabalho de uma thread; crescem até o maior instantâneo visto e depois são reutilizados
+    private static final class Buffers {
+        int[] work = new int[0];
+        int[] falta = new int[0]; // recursos cujo pedido ainda excede work
+        int[] pronta = new int[0];
+        int[] inicioEspera = new int[1];
+        int[] cursor = new int[0];
+        long[] espera = new long[0]; // (quantidade pedida << 32) | processo, ordenado por recurso
+
+        void garantir(int n, int m, int arestas) {
+            if (work.length < m) {
+                work = new int[m];
+                cursor = new int[m];
+                inicioEspera = new int[m + 1];
+            }
+            if (falta.length < n) {
+                falta = new int[n];
+                pronta = new int[n];
+            }
+            if (espera.length < arestas)
+                espera = new long[Math.max(arestas, espera.length * 2)];
+        }
+    }
+
+    private static final ThreadLocal<Buffers> BUFFERS = ThreadLocal.withInitial(Buffers::new);
+
+    private final ForkJoinPool pool;
+
+    public AnaliseLote() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public AnaliseLote(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    public Resultado analisar(List<Instantaneo> lote) {
+        Resultado resultado = new Resultado(lote);
+        pool.invoke(new Tarefa(lote, resultado, 0, lote.size()));
+        return resultado;
+    }
+
+    private static final class Tarefa extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Instantaneo> lote;
+        private final Resultado resultado;
+        private final int de;
+        private final int ate;
+
+        Tarefa(List<Instantaneo> lote, Resultado resultado, int de, int ate) {
+            this.lote = lote;
+            this.resultado = resultado;
+            this.de = de;
+            this.ate = ate;
+        }
+
+        @Override
+        protected void compute() {
+            if (ate - de <= LIMIAR_DIVISAO) {
+                Buffers buffers = BUFFERS.get();
+                for (int s = de; s < ate; s++)
+                    analisar(lote.get(s), buffers, resultado, s);
+                return;
+            }
+            int meio = (de + ate) >>> 1;
+            invokeAll(new Tarefa(lote, resultado, de, meio), new Tarefa(lote, resultado, meio, ate));
+        }
+    }
+
+    // Redução por lista de trabalho com pedidos arbitrários: para cada recurso, os pedidos ainda não
+    // atendidos ficam ordenados por quantidade, e um cursor avança à medida que work cresce. Cada
+    // pedido é atendido uma única vez, então o custo é O(n·m + arestas·log) por instantâneo.
+    private static void analisar(Instantaneo inst, Buffers b, Resultado resultado, int s) {
+        int n = inst.getNumProcessos();
+        int m = inst.getNumRecursos();
+        int[][] alocacao = inst.alocacao;
+        int[][] requisicao = inst.requisicao;
+
+        int arestas = 0;
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < m; j++) {
+                if (requisicao[i][j] > inst.disponivel[j])
+                    arestas++;
+            }
+        }
+        b.garantir(n, m, arestas);
+        int[] work = b.work;
+        int[] falta = b.falta;
+        int[] inicio = b.inicioEspera;
+        int[] cursor = b.cursor;
+        long[] espera = b.espera;
+
+        System.arraycopy(inst.disponivel, 0, work, 0, m);
+        Arrays.fill(inicio, 0, m + 1, 0);
+        for (int i = 0; i < n; i++) {
+            int f = 0;
+            for (int j = 0; j < m; j++) {
+                if (requisicao[i][j] > work[j]) {
+                    inicio[j + 1]++;
+                    f++;
+                }
+            }
+            falta[i] = f;
+        }
+        for (int j = 0; j < m; j++) {
+            inicio[j + 1] += inicio[j];
+            cursor[j] = inicio[j];
+        }
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < m; j++) {
+                if (requisicao[i][j] > work[j])
+                    espera[cursor[j]++] = ((long) requisicao[i][j] << 32) | i;
+            }
+        }
+        for (int j = 0; j < m; j++) {
+            Arrays.sort(espera, inicio[j], inicio[j + 1]);
+            cursor[j] = inicio[j];
+        }
+
+        int[] pronta = b.pronta;
+        int cabeca = 0, fim = 0;
+        for (int i = 0; i < n; i++) {
+            if (falta[i] == 0)
+                pronta[fim++] = i;
+        }
+        while (cabeca < fim) {
+            int[] linha = alocacao[pronta[cabeca++]];
+            for (int j = 0; j < m; j++) {
+                if (linha[j] == 0)
+                    continue;
+                work[j] += linha[j]; // processo termina e devolve o que retém
+                while (cursor[j] < inicio[j + 1] && (espera[cursor[j]] >>> 32) <= work[j]) {
+                    int i = (int) espera[cursor[j]++];
+                    if (--falta[i] == 0)
+                        pronta[fim++] = i;
+                }
+            }
+        }
+
+        // Quem não entrou na lista de prontos não consegue terminar: está em deadlock
+        resultado.quantidade[s] = n - fim;
+        if (fim == n)
+            return;
+        long[] bits = resultado.bits;
+        int base = resultado.inicio[s];
+        for (int i = 0; i < n; i++) {
+            if (falta[i] > 0)
+                bits[base + (i >>> 6)] |= 1L << i;
+        }
+    }
+}
@@ -1,31 +1,58 @@
+import javafx.animation.AnimationTimer;
 import javafx.animation.KeyFrame;
 import javafx.animation.Timeline;
 import javafx.application.Application;
 import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.collections.transformation.FilteredList;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.layout.*;
+import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 import javafx.util.Duration;
 import javafx.geometry.Insets;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class App extends Application {
 
     private SistemaOperacional sistemaOperacional;
-    private TextArea logArea = new TextArea();
+    // Só as entradas recentes ficam na visão; o log completo vai para o arquivo do histórico
+    private static final int CAPACIDADE_LOG = 5_000;
+    private HistoricoLog historico;
+    private final ObservableList<RegistroEventos.Entrada> entradasLog = FXCollections.observableArrayList();
+    private final FilteredList<RegistroEventos.Entrada> entradasFiltradas = new FilteredList<>(entradasLog);
+    private ListView<RegistroEventos.Entrada> logLista = new ListView<>(entradasFiltradas);
     private ListView<String> listaProcessos = new ListView<>();
     private ListView<String> listaTodosRecursos = new ListView<>();
     private ListView<String> listaRecursosDisponiveis = new ListView<>();
-    private TextArea matrizAlocacao = new TextArea();
-    private TextArea matrizRequisicao = new TextArea();
+    private ListView<String> matrizAlocacao = new ListView<>();
+    private ListView<String> matrizRequisicao = new ListView<>();
     private Label cronometroLabel = new Label("0s");
     private long startTime = 0;
     private Timeline timeline;
+    // Mudanças de estado só marcam a interface como suja; ela é redesenhada no máximo uma vez por pulso
+    private final AtomicBoolean interfaceSuja = new AtomicBoolean(true);
+    private VisaoMatrizes visaoMatrizes;
+    private AnimationTimer renderizador;
 
     @Override
     public void start(Stage primaryStage) {
+        try {
+            java.nio.file.Path arquivoLog = Files.createTempFile("deadlock-log", ".txt");
+            arquivoLog.toFile().deleteOnExit();
+            historico = new HistoricoLog(CAPACIDADE_LOG, arquivoLog);
+        } catch (IOException e) {
+            historico = new HistoricoLog(CAPACIDADE_LOG, null);
+        }
+
         TextInputDialog dialog = new TextInputDialog("5");
         dialog.setTitle("Intervalo de Verificação");
         dialog.setHeaderText("Informe o intervalo Δt (em segundos) para verificação de deadlock:");
@@ -48,7 +75,13 @@ public class App extends Application {
 
         sistemaOperacional = new SistemaOperacional(intervalo);
         sistemaOperacional.setOnUpdate(this::atualizarInterface);
-        sistemaOperacional.setLogger(this::log);
+        visaoMatrizes = new VisaoMatrizes(sistemaOperacional);
+        try {
+            sistemaOperacional.getMetricas().publicar("App");
+        } catch (javax.management.JMException e) {
+            log("Métricas não publicadas por JMX: " + e.getMessage());
+        }
+        sistemaOperacional.getRegistroEventos().setSaida(historico::adicionar);
         sistemaOperacional.start();
 
         cronometroLabel.setStyle("-fx-font-size: 16; -fx-font-weight: bold;");
@@ -61,6 +94,16 @@ public class App extends Application {
         timeline.setCycleCount(Timeline.INDEFINITE);
         timeline.play();
 
+        renderizador = new AnimationTimer() {
+            @Override
+            public void handle(long agora) {
+                if (interfaceSuja.getAndSet(false))
+                    renderizar();
+                atualizarLog();
+            }
+        };
+        renderizador.start();
+
         // leiaute
         GridPane root = new GridPane();
         root.setPadding(new Insets(10));
@@ -97,7 +140,7 @@ public class App extends Application {
                     atualizarInterface();
                     log("Recurso " + nomeRecurso.getText() + " adicionado.");
                 } else {
-                    log("Erro: ID já existe ou limite de 10 recursos atingido.");
+                    log("Erro: Já existe um recurso com o ID informado.");
                 }
             } catch (NumberFormatException ex) {
                 log("Erro: ID e Quantidade precisam ser números inteiros positivos.");
@@ -123,10 +166,6 @@ public class App extends Application {
                 if (ts <= 0 || tu <= 0)
                     throw new NumberFormatException();
 
-                if (sistemaOperacional.getProcessos().size() >= 10) {
-                    log("Erro: Limite de 10 processos atingido.");
-                    return;
-                }
                 boolean idExistente = sistemaOperacional.getProcessos().stream()
                         .anyMatch(proc -> proc.getProcessoId() == id);
                 if (idExistente) {
@@ -138,7 +177,7 @@ public class App extends Application {
                     startTime = System.currentTimeMillis();
                 }
 
-                Processo p = new Processo(id, ts, tu, sistemaOperacional, this::log);
+                Processo p = new Processo(id, ts, tu, sistemaOperacional);
                 sistemaOperacional.adicionarProcesso(p);
                 p.start();
                 atualizarInterface();
@@ -196,25 +235,59 @@ public class App extends Application {
         VBox rightPane = new VBox(10);
         rightPane.setPadding(new Insets(10));
 
-        matrizAlocacao.setEditable(false);
         matrizAlocacao.setPrefHeight(100);
-        matrizAlocacao.setWrapText(false);
         matrizAlocacao.setStyle("-fx-font-family: 'monospace'; -fx-font-size: 12;");
 
-        matrizRequisicao.setEditable(false);
         matrizRequisicao.setPrefHeight(100);
-        matrizRequisicao.setWrapText(false);
         matrizRequisicao.setStyle("-fx-font-family: 'monospace'; -fx-font-size: 12;");
 
-        logArea.setEditable(false);
-        logArea.setWrapText(true);
-        logArea.setPrefHeight(350);
+        logLista.setPrefHeight(350);
+
+        TextField filtroProcesso = new TextField();
+        filtroProcesso.setPromptText("ID Processo");
+        TextField filtroRecurso = new TextField();
+        filtroRecurso.setPromptText("ID Recurso");
+        ComboBox<String> filtroTipo = new ComboBox<>();
+        filtroTipo.getItems().add("Todos");
+        for (TipoEvento t : TipoEvento.values())
+            filtroTipo.getItems().add(t.name());
+        filtroTipo.setValue("Todos");
+        Runnable aplicarFiltro = () -> entradasFiltradas.setPredicate(
+                filtroLog(filtroProcesso.getText(), filtroRecurso.getText(), filtroTipo.getValue()));
+        filtroProcesso.textProperty().addListener((obs, antes, depois) -> aplicarFiltro.run());
+        filtroRecurso.textProperty().addListener((obs, antes, depois) -> aplicarFiltro.run());
+        filtroTipo.valueProperty().addListener((obs, antes, depois) -> aplicarFiltro.run());
+
+        Button btnExportarLog = new Button("Exportar log completo");
+        btnExportarLog.setOnAction(e -> {
+            FileChooser escolha = new FileChooser();
+            escolha.setTitle("Exportar log completo");
+            escolha.setInitialFileName("log-deadlock.txt");
+            File destino = escolha.showSaveDialog(primaryStage);
+            if (destino == null)
+                return;
+            // A cópia sai do arquivo do histórico, fora da thread da interface
+            Thread exportacao = new Thread(() -> {
+                try {
+                    historico.exportar(destino.toPath());
+                    log("Log completo exportado para " + destino + ".");
+                } catch (IOException ex) {
+                    log("Erro ao exportar o log: " + ex.getMessage());
+                }
+            }, "exportacao-log");
+            exportacao.setDaemon(true);
+            exportacao.start();
+        });
+
+        HBox filtrosLog = new HBox(5, new Label("Filtrar:"), filtroProcesso, filtroRecurso, filtroTipo,
+                btnExportarLog);
 
         rightPane.getChildren().addAll(
                 new Label("Adicionar Processo:"),
                 processoInputs,
                 new Label("Log do Sistema:"),
-                logArea,
+                filtrosLog,
+                logLista,
                 new Label("Tempo de Execução:"),
                 cronometroLabel,
                 new Label("Processos:"),
@@ -229,27 +302,84 @@ public class App extends Application {
         primaryStage.show();
     }
 
+    // Chamado a cada mudança de estado, de qualquer thread: só marca; quem redesenha é o pulso
     public void atualizarInterface() {
-        Platform.runLater(() -> {
-            listaTodosRecursos.getItems().setAll(
-                    sistemaOperacional.getRecursos().stream()
-                            .map(r -> r.getNome() + " (ID: " + r.getId() + ", Total: " + r.getTotal() + ")")
-                            .toList());
-            listaRecursosDisponiveis.getItems().setAll(sistemaOperacional.statusRecursos());
-            listaProcessos.getItems().setAll(sistemaOperacional.statusProcessos());
-            matrizAlocacao.setText(sistemaOperacional.getAllocationMatrixString());
-            matrizRequisicao.setText(sistemaOperacional.getRequestMatrixString());
-        });
+        interfaceSuja.set(true);
+    }
+
+    private void renderizar() {
+        aplicarDiferenca(listaTodosRecursos.getItems(),
+                sistemaOperacional.getRecursos().stream()
+                        .map(r -> r.getNome() + " (ID: " + r.getId() + ", Total: " + r.getTotal() + ")")
+                        .toList());
+        aplicarDiferenca(listaRecursosDisponiveis.getItems(), sistemaOperacional.statusRecursos());
+        aplicarDiferenca(listaProcessos.getItems(), sistemaOperacional.statusProcessos());
+        visaoMatrizes.atualizar();
+        aplicarDiferenca(matrizAlocacao.getItems(), visaoMatrizes.getAlocacao());
+        aplicarDiferenca(matrizRequisicao.getItems(), visaoMatrizes.getRequisicao());
     }
 
+    // Troca só as linhas diferentes; linhas reaproveitadas pela VisaoMatrizes saem na comparação por referência
+    private static void aplicarDiferenca(ObservableList<String> itens, List<String> novos) {
+        int comum = Math.min(itens.size(), novos.size());
+        for (int k = 0; k < comum; k++) {
+            String linha = novos.get(k);
+            if (!linha.equals(itens.get(k)))
+                itens.set(k, linha);
+        }
+        if (itens.size() > novos.size())
+            itens.remove(novos.size(), itens.size());
+        else if (novos.size() > comum)
+            itens.addAll(novos.subList(comum, novos.size()));
+    }
+
+    // Mensagens da própria interface entram no histórico como entradas sem tipo
     public void log(String msg) {
-        Platform.runLater(() -> {
-            logArea.appendText(msg + "\n");
-        });
+        historico.adicionar(List.of(new RegistroEventos.Entrada(-1, null, -1, -1, msg)));
+    }
+
+    // Chamado a cada pulso: move as entradas novas para a visão e descarta as mais antigas além do limite
+    private void atualizarLog() {
+        List<RegistroEventos.Entrada> novas = historico.retirarPendentes();
+        if (novas.isEmpty())
+            return;
+        entradasLog.addAll(novas);
+        int excesso = entradasLog.size() - CAPACIDADE_LOG;
+        if (excesso > 0)
+            entradasLog.remove(0, excesso);
+        if (!entradasFiltradas.isEmpty())
+            logLista.scrollTo(entradasFiltradas.size() - 1);
+    }
+
+    // Campos vazios não filtram; entradas sem tipo (mensagens da interface) só somem com um filtro ativo
+    private static java.util.function.Predicate<RegistroEventos.Entrada> filtroLog(String processo, String recurso,
+            String tipo) {
+        Integer idProcesso = inteiroOuNulo(processo);
+        Integer idRecurso = inteiroOuNulo(recurso);
+        TipoEvento tipoEvento = tipo == null || tipo.equals("Todos") ? null : TipoEvento.valueOf(tipo);
+        if (idProcesso == null && idRecurso == null && tipoEvento == null)
+            return null;
+        return e -> (idProcesso == null || e.getProcesso() == idProcesso)
+                && (idRecurso == null || e.getRecurso() == idRecurso)
+                && (tipoEvento == null || e.getTipo() == tipoEvento);
+    }
+
+    private static Integer inteiroOuNulo(String texto) {
+        try {
+            return texto == null || texto.isBlank() ? null : Integer.valueOf(texto.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
     }
 
     @Override
     public void stop() {
+        renderizador.stop();
+        try {
+            historico.close();
+        } catch (IOException e) {
+            // nada a fazer ao encerrar
+        }
         for (Processo p : sistemaOperacional.getProcessos()) {
             p.interrupt();
         }
@@ -0,0 +1,173 @@
+import java.util.Arrays;
+
+/**
+ * Estado do algoritmo do banqueiro para o modo de evitação do SistemaOperacional: reivindicação
+ * máxima, necessidade restante (máximo - alocado) e disponível, por índice estável de processo e
+ * recurso. A necessidade é mantida por deltas a cada concessão/liberação, junto com a soma por
+ * recurso, que dá um atalho O(m) para o caso comum em que o disponível cobre a necessidade de todos.
+ *
+ * Não é thread-safe: o SistemaOperacional serializa concessões e liberações no monitor deste objeto
+ * enquanto a evitação está ligada. Os vetores de trabalho da verificação são pré-alocados e só crescem.
+ */
+public class Banqueiro {
+    public static final int CONCEDIDO = 0;
+    public static final int INSEGURO = 1; // sem instância livre ou estado resultante inseguro: aguarda
+    public static final int ACIMA_DO_MAXIMO = 2; // pedido excederia a reivindicação declarada
+
+    private int[][] maximo = new int[0][];
+    private int[][] necessidade = new int[0][];
+    private boolean[] ativo = new boolean[0];
+    private Processo[] donos = new Processo[0];
+    private int[] total = new int[0];
+    private int[] disponivel = new int[0];
+    private int[] necessidadeTotal = new int[0];
+    private int numRecursos = 0;
+    // Buffers da verificação de segurança
+    private int[] work = new int[0];
+    private int[] faltaTotal = new int[0];
+    private int[] pendentes = new int[0];
+
+    public void adicionarRecurso(int j, Recurso r) {
+        if (j >= total.length) {
+            int novo = Math.max(j + 1, total.length * 2);
+            total = Arrays.copyOf(total, novo);
+            disponivel = Arrays.copyOf(disponivel, novo);
+            necessidadeTotal = Arrays.copyOf(necessidadeTotal, novo);
+            work = new int[novo];
+            faltaTotal = new int[novo];
+            for (int i = 0; i < maximo.length; i++) {
+                maximo[i] = Arrays.copyOf(maximo[i], novo);
+                necessidade[i] = Arrays.copyOf(necessidade[i], novo);
+            }
+        }
+        total[j] = r.getTotal();
+        disponivel[j] = r.getDisponivel();
+        numRecursos = Math.max(numRecursos, j + 1);
+        for (int i = 0; i < ativo.length; i++) {
+            if (ativo[i])
+                definirMaximo(i, j, donos[i].getMaximo(r.getId(), r.getTotal()));
+        }
+    }
+
+    public void adicionarProcesso(int i, Processo p, Iterable<Recurso> recursos) {
+        if (i >= ativo.length) {
+            int novo = Math.max(i + 1, ativo.length * 2);
+            maximo = Arrays.copyOf(maximo, novo);
+            necessidade = Arrays.copyOf(necessidade, novo);
+            for (int k = ativo.length; k < novo; k++) {
+                maximo[k] = new int[total.length];
+                necessidade[k] = new int[total.length];
+            }
+            ativo = Arrays.copyOf(ativo, novo);
+            donos = Arrays.copyOf(donos, novo);
+            pendentes = new int[novo];
+        }
+        ativo[i] = true;
+        donos[i] = p;
+        for (Recurso r : recursos) {
+            if (r.getIndice() >= 0 && r.getIndice() < numRecursos)
+                definirMaximo(i, r.getIndice(), p.getMaximo(r.getId(), r.getTotal()));
+        }
+    }
+
+    // Só vale para processos sem alocação (registro); a necessidade parte do máximo
+    private void definirMaximo(int i, int j, int valor) {
+        valor = Math.max(0, Math.min(valor, total[j]));
+        necessidadeTotal[j] += valor - necessidade[i][j];
+        maximo[i][j] = valor;
+        necessidade[i][j] = valor;
+    }
+
+    /** Chamado depois que o processo devolveu tudo; libera a linha para reutilização do índice. */
+    public void removerProcesso(int i) {
+        if (i >= ativo.length || !ativo[i])
+            return;
+        for (int j = 0; j < numRecursos; j++) {
+            necessidadeTotal[j] -= necessidade[i][j];
+            maximo[i][j] = 0;
+            necessidade[i][j] = 0;
+        }
+        ativo[i] = false;
+        donos[i] = null;
+    }
+
+    /**
+     * Concede uma instância do recurso j ao processo i se houver instância livre e o estado
+     * resultante for seguro; senão não altera nada.
+     */
+    public int reservar(int i, int j) {
+        if (necessidade[i][j] <= 0)
+            return ACIMA_DO_MAXIMO;
+        if (disponivel[j] <= 0)
+            return INSEGURO;
+        disponivel[j]--;
+        necessidade[i][j]--;
+        necessidadeTotal[j]--;
+        if (seguro())
+            return CONCEDIDO;
+        disponivel[j]++;
+        necessidade[i][j]++;
+        necessidadeTotal[j]++;
+        return INSEGURO;
+    }
+
+    /** Instância já retida ao restaurar um ponto de controle: entra sem verificação de segurança. */
+    public void restaurarAlocacao(int i, int j) {
+        disponivel[j]--;
+        if (necessidade[i][j] > 0) {
+            necessidade[i][j]--;
+            necessidadeTotal[j]--;
+        }
+    }
+
+    public void liberar(int i, int j) {
+        disponivel[j]++;
+        if (necessidade[i][j] < maximo[i][j]) {
+            necessidade[i][j]++;
+            necessidadeTotal[j]++;
+        }
+    }
+
+    private boolean seguro() {
+        int m = numRecursos;
+        // Atalho: se o disponível cobre a necessidade somada de todos, qualquer ordem termina
+        if (cobre(disponivel, necessidadeTotal, m))
+            return true;
+        System.arraycopy(disponivel, 0, work, 0, m);
+        System.arraycopy(necessidadeTotal, 0, faltaTotal, 0, m);
+        int restantes = 0;
+        for (int i = 0; i < ativo.length; i++) {
+            if (ativo[i])
+                pendentes[restantes++] = i;
+        }
+        boolean progresso;
+        do {
+            progresso = false;
+            for (int k = 0; k < restantes; k++) {
+                int i = pendentes[k];
+                int[] precisa = necessidade[i];
+                if (!cobre(work, precisa, m))
+                    continue;
+                int[] max = maximo[i];
+                for (int j = 0; j < m; j++) {
+                    work[j] += max[j] - precisa[j]; // termina e devolve o que tem alocado
+                    faltaTotal[j] -= precisa[j];
+                }
+                pendentes[k--] = pendentes[--restantes]; // só os que faltam são revisitados
+                progresso = true;
+                // Mesmo atalho para os que faltam: todos cabem no que já foi devolvido
+                if (cobre(work, faltaTotal, m))
+                    return true;
+            }
+        } while (progresso && restantes > 0);
+        return restantes == 0;
+    }
+
+    private static boolean cobre(int[] oferta, int[] demanda, int m) {
+        for (int j = 0; j < m; j++) {
+            if (oferta[j] < demanda[j])
+                return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,609 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Grafo de espera incremental alimentado por eventos de aquisição, espera e liberação de locks de uma
+ * aplicação real (ver AgenteLocks e SondasLocks). Cada thread produtora tem o próprio anel de eventos: um
+ * long por evento, escrito com uma store de release, sem CAS, trava ou alocação; a única thread consumidora
+ * percorre os anéis, apaga o que leu e mantém quem retém cada lock e o que cada thread aguarda. Juntos
+ * os anéis formam a fila MPSC; a ordem vale dentro de cada thread, não entre elas.
+ *
+ * Aquisições e liberações só são lidas no próximo lote; a espera acorda o consumidor, que segue o grafo
+ * a partir de quem acabou de bloquear: um ciclo que volta a essa thread é o deadlock que ela fechou.
+ * Como a ordem entre anéis não é global, o ciclo é conferido no estado real antes de ser relatado (o
+ * bloqueio em que cada thread está estacionada e o dono que a ThreadMXBean informa); se ainda não confere
+ * (a thread publicou a espera mas não entrou na fila do lock), é reexaminado a cada lote enquanto ela
+ * continuar esperando.
+ *
+ * Monitores não geram eventos: o caminho sem disputa de um monitorenter só conta a entrada no anel (ímpar
+ * enquanto ela está em curso), e o consumidor varre as contagens a cada VARREDURA_NS. Uma entrada que
+ * continua em curso em duas varreduras vira espera; o monitor e o dono dele vêm da ThreadMXBean.
+ */
+public class DetectorLocks {
+    // Evento: tipo nos 4 bits altos, extra nos 28 seguintes, ID do lock nos 32 baixos
+    static final int AQUISICAO_LEITURA = 2;
+    static final int LIBERACAO_LEITURA = 4;
+    static final int ESPERA = 5; // extra: anel do dono + 1, 0 se desconhecido
+    static final int ESPERA_LEITURA = 6;
+    static final int DESISTENCIA = 7; // tempo esgotado ou interrupção
+    static final int DONO = 8; // extra: 1 ao assumir um sincronizador, 0 ao soltá-lo (sem reentradas)
+    static final int MONITOR = 1 << 31; // bit dos IDs de monitor (hash de identidade do objeto)
+    static final int SINCRONIZADOR = 1 << 30; // bit dos IDs de AbstractQueuedSynchronizer, sem o de monitor
+
+    private static final VarHandle SLOT = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final VarHandle ENTRADAS;
+    static {
+        try {
+            ENTRADAS = MethodHandles.lookup().findVarHandle(Anel.class, "entradas", int.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+    private static final int TAMANHO_ANEL = 1024;
+    private static final int LOTE_POR_ANEL = 256; // por volta, para um anel cheio não monopolizar o consumidor
+    private static final long PAUSA_MINIMA_NS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final long PAUSA_MAXIMA_NS = TimeUnit.MILLISECONDS.toNanos(2);
+    private static final long GIRO_CONFERENCIA_NS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final long VARREDURA_NS = TimeUnit.MICROSECONDS.toNanos(200);
+
+    /** Anel de uma thread produtora. Os campos depois de slots só a thread consumidora lê e escreve. */
+    static final class Anel {
+        final long[] slots = new long[TAMANHO_ANEL];
+        final Thread thread;
+        final int indice;
+        long escritos; // só a produtora
+        int entradas; // só a produtora escreve (ENTRADAS): +1 antes e +1 depois de cada monitorenter
+        long lidos;
+        int entradasVistas; // na varredura anterior
+        int aguarda; // lock aguardado, 0 se nenhum
+        boolean aguardaLeitura;
+        Anel donoIndicado; // dono do lock no momento da espera, quando a produtora soube
+        long esperaNs; // quando o consumidor leu a espera
+        int visita;
+        Anel pai;
+
+        Anel(Thread thread, int indice) {
+            this.thread = thread;
+            this.indice = indice;
+        }
+    }
+
+    // Estado de um lock no grafo: dono exclusivo com reentradas e leitores com suas contagens
+    private static final class EstadoLock {
+        final int id;
+        Anel dono;
+        int retencoes;
+        Anel[] leitores = new Anel[0];
+        int[] leituras = new int[0];
+        int numLeitores;
+
+        EstadoLock(int id) {
+            this.id = id;
+        }
+
+        boolean livre() {
+            return dono == null && numLeitores == 0;
+        }
+
+        void ler(Anel a, int delta) {
+            for (int k = 0; k < numLeitores; k++) {
+                if (leitores[k] == a) {
+                    leituras[k] += delta;
+                    if (leituras[k] <= 0) {
+                        numLeitores--;
+                        leitores[k] = leitores[numLeitores];
+                        leituras[k] = leituras[numLeitores];
+                        leitores[numLeitores] = null;
+                    }
+                    return;
+                }
+            }
+            if (delta <= 0)
+                return;
+            if (numLeitores == leitores.length) {
+                leitores = Arrays.copyOf(leitores, Math.max(2, numLeitores * 2));
+                leituras = Arrays.copyOf(leituras, leitores.length);
+            }
+            leitores[numLeitores] = a;
+            leituras[numLeitores++] = delta;
+        }
+    }
+
+    private final ThreadLocal<Anel> anelLocal = ThreadLocal.withInitial(this::registrar);
+    private final Map<Thread, Anel> anelPorThread = new ConcurrentHashMap<>();
+    private final Map<Long, Anel> anelPorId = new ConcurrentHashMap<>(); // pelo ID da thread, para a ThreadMXBean
+    private final Object travaRegistro = new Object();
+    private volatile Anel[] aneis = new Anel[0];
+    private int proximoIndice = 0; // protegido por travaRegistro
+    private final List<Anel> porIndice = new ArrayList<>(); // só o consumidor lê; índices nunca reusados
+    private final TabelaLocks estados = new TabelaLocks();
+    private final List<Anel> pendentes = new ArrayList<>(); // ciclos achados que ainda não conferiram
+    private long proximoReexameNs, intervaloReexameNs = PAUSA_MINIMA_NS;
+    private long proximaLimpezaNs;
+    private long proximaVarreduraNs;
+    private boolean monitoresPedidos; // a última varredura achou algum monitorenter em curso
+    private final ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+    private volatile Consumer<List<String>> onDeadlock = ciclo -> {
+    };
+    private volatile Thread consumidor;
+    private int geracao = 0;
+    private Anel[] pilha = new Anel[16];
+    private volatile long eventos, ciclos, deadlocks, latenciaTotalNs;
+
+    static int idSincronizador(Object sincronizador) {
+        return System.identityHashCode(sincronizador) & ~MONITOR | SINCRONIZADOR;
+    }
+
+    /** Chamado na thread consumidora com uma linha por aresta de cada deadlock encontrado. */
+    public void setOnDeadlock(Consumer<List<String>> c) {
+        this.onDeadlock = c;
+    }
+
+    public synchronized void iniciar() {
+        if (consumidor != null)
+            return;
+        Thread t = new Thread(this::consumir, "detector-locks");
+        t.setDaemon(true);
+        consumidor = t;
+        t.start();
+    }
+
+    public synchronized void parar() {
+        Thread t = consumidor;
+        consumidor = null;
+        if (t != null)
+            t.interrupt();
+    }
+
+    boolean ehConsumidora() {
+        return Thread.currentThread() == consumidor;
+    }
+
+    // Caminho quente das produtoras
+    void publicar(int tipo, int lock, int extra) {
+        Anel a = anelLocal.get();
+        long evento = (long) tipo << 60 | (long) (extra & 0x0FFFFFFF) << 32 | (lock & 0xFFFFFFFFL);
+        int i = (int) a.escritos & (TAMANHO_ANEL - 1);
+        if ((long) SLOT.getAcquire(a.slots, i) != 0)
+            esperarVaga(a, i);
+        SLOT.setRelease(a.slots, i, evento);
+        a.escritos++;
+    }
+
+    // Antes de bloquear: publica a espera, com o dono se a produtora o conhece, e acorda o consumidor
+    void publicarEspera(int tipo, int lock, Thread dono) {
+        Anel d = dono != null ? anelPorThread.get(dono) : null;
+        publicar(tipo, lock, d != null ? d.indice + 1 : 0);
+        Thread c = consumidor;
+        if (c != null)
+            LockSupport.unpark(c);
+    }
+
+    // Em volta de um monitorenter: sem evento, hash de identidade nem referência ao monitor
+    void contarEntradaMonitor() {
+        Anel a = anelLocal.get();
+        ENTRADAS.setRelease(a, a.entradas + 1);
+    }
+
+    // Anel cheio: a produtora espera o consumidor em vez de perder um evento, que deixaria o grafo errado
+    private void esperarVaga(Anel a, int i) {
+        while ((long) SLOT.getAcquire(a.slots, i) != 0) {
+            Thread c = consumidor;
+            if (c == null)
+                return; // detector parado: o evento sobrescreve, o grafo não é mais lido
+            LockSupport.unpark(c);
+            Thread.onSpinWait();
+        }
+    }
+
+    private Anel registrar() {
+        synchronized (travaRegistro) {
+            Anel a = new Anel(Thread.currentThread(), proximoIndice++);
+            Anel[] atual = aneis;
+            Anel[] novos = Arrays.copyOf(atual, atual.length + 1);
+            novos[atual.length] = a;
+            aneis = novos;
+            anelPorThread.put(a.thread, a);
+            anelPorId.put(a.thread.getId(), a);
+            return a;
+        }
+    }
+
+    private void consumir() {
+        long pausa = PAUSA_MINIMA_NS;
+        while (consumidor == Thread.currentThread()) {
+            int lidos = drenar();
+            if (System.nanoTime() >= proximaVarreduraNs) {
+                varrerMonitores();
+                proximaVarreduraNs = System.nanoTime() + VARREDURA_NS;
+            }
+            if (!pendentes.isEmpty() && System.nanoTime() >= proximoReexameNs)
+                reexaminarPendentes();
+            if (lidos > 0) {
+                pausa = PAUSA_MINIMA_NS;
+                continue;
+            }
+            LockSupport.parkNanos(!pendentes.isEmpty() ? PAUSA_MINIMA_NS
+                    : monitoresPedidos ? Math.min(pausa, VARREDURA_NS) : pausa);
+            pausa = Math.min(pausa * 2, PAUSA_MAXIMA_NS);
+            if (System.nanoTime() >= proximaLimpezaNs) {
+                retirarEncerradas();
+                proximaLimpezaNs = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+            }
+        }
+    }
+
+    private int drenar() {
+        Anel[] atual = aneis;
+        for (Anel a : atual) { // antes de ler: uma espera pode indicar como dono o anel de uma thread nova
+            if (a.indice >= porIndice.size()) {
+                while (porIndice.size() < a.indice)
+                    porIndice.add(null);
+                porIndice.add(a);
+            }
+        }
+        int total = 0;
+        for (Anel a : atual) {
+            for (int k = 0; k < LOTE_POR_ANEL; k++) {
+                int i = (int) a.lidos & (TAMANHO_ANEL - 1);
+                long evento = (long) SLOT.getAcquire(a.slots, i);
+                if (evento == 0)
+                    break;
+                SLOT.setRelease(a.slots, i, 0L);
+                a.lidos++;
+                total++;
+                aplicar(a, evento);
+            }
+        }
+        eventos += total;
+        return total;
+    }
+
+    private void aplicar(Anel a, long evento) {
+        int tipo = (int) (evento >>> 60);
+        int extra = (int) (evento >>> 32) & 0x0FFFFFFF;
+        int lock = (int) evento;
+        switch (tipo) {
+            case AQUISICAO_LEITURA -> {
+                estados.obter(lock).ler(a, 1);
+                terminarEspera(a, lock);
+            }
+            case LIBERACAO_LEITURA -> {
+                EstadoLock e = estados.buscar(lock);
+                if (e != null) {
+                    e.ler(a, -1);
+                    if (e.livre())
+                        estados.remover(lock);
+                }
+            }
+            case ESPERA, ESPERA_LEITURA -> {
+                a.aguarda = lock;
+                a.aguardaLeitura = tipo == ESPERA_LEITURA;
+                a.donoIndicado = extra > 0 && extra - 1 < porIndice.size() ? porIndice.get(extra - 1) : null;
+                a.esperaNs = System.nanoTime();
+                examinar(a);
+            }
+            case DONO -> {
+                if (extra != 0) {
+                    EstadoLock e = estados.obter(lock);
+                    e.dono = a;
+                    e.retencoes = 1;
+                    terminarEspera(a, lock);
+                } else {
+                    EstadoLock e = estados.buscar(lock);
+                    if (e != null && e.dono == a) {
+                        e.dono = null;
+                        if (e.livre())
+                            estados.remover(lock);
+                    }
+                }
+            }
+            case DESISTENCIA -> terminarEspera(a, lock);
+            default -> {
+            }
+        }
+    }
+
+    // A mesma entrada em curso nas duas últimas varreduras é espera, se a thread está BLOCKED num monitor;
+    // a que acabou deixa de ser
+    private void varrerMonitores() {
+        boolean pedidos = false;
+        for (Anel a : aneis) {
+            int entradas = (int) ENTRADAS.getAcquire(a);
+            boolean emCurso = (entradas & 1) != 0;
+            if (emCurso && entradas == a.entradasVistas) {
+                if (a.aguarda == 0) {
+                    ThreadInfo info = mx.getThreadInfo(a.thread.getId());
+                    if (info != null && info.getThreadState() == Thread.State.BLOCKED && info.getLockInfo() != null) {
+                        a.aguarda = info.getLockInfo().getIdentityHashCode() | MONITOR;
+                        a.aguardaLeitura = false;
+                        a.donoIndicado = null;
+                        a.esperaNs = System.nanoTime();
+                        examinar(a);
+                    }
+                }
+            } else if ((a.aguarda & MONITOR) != 0) {
+                terminarEspera(a, a.aguarda);
+            }
+            pedidos |= emCurso;
+            a.entradasVistas = entradas;
+        }
+        monitoresPedidos = pedidos;
+    }
+
+    private static void terminarEspera(Anel a, int lock) {
+        if (a.aguarda == lock) {
+            a.aguarda = 0;
+            a.donoIndicado = null;
+        }
+    }
+
+    // Segue o grafo a partir de w; um caminho de volta a w é um ciclo que w fechou ao esperar
+    private void examinar(Anel w) {
+        List<Anel> ciclo = buscarCiclo(w);
+        if (ciclo == null)
+            return;
+        ciclos++;
+        // A thread que fechou o ciclo publicou a espera antes de bloquear: costuma faltar só ela entrar na fila
+        long limite = System.nanoTime() + GIRO_CONFERENCIA_NS;
+        boolean confere;
+        while (!(confere = conferir(ciclo)) && System.nanoTime() < limite)
+            Thread.yield(); // cede o processador a ela em vez de girar
+        if (!confere) {
+            if (!pendentes.contains(w)) {
+                pendentes.add(w);
+                intervaloReexameNs = PAUSA_MINIMA_NS;
+                proximoReexameNs = System.nanoTime() + intervaloReexameNs;
+            }
+            return;
+        }
+        pendentes.remove(w);
+        deadlocks++;
+        latenciaTotalNs += System.nanoTime() - w.esperaNs;
+        onDeadlock.accept(descrever(ciclo));
+    }
+
+    // Com recuo: um ciclo que não confere por muito tempo (lock solto por Object.wait ou por uma Condition
+    // alheia, por exemplo) não ocupa o consumidor
+    private void reexaminarPendentes() {
+        for (Anel w : new ArrayList<>(pendentes)) {
+            if (w.aguarda == 0 || !w.thread.isAlive())
+                pendentes.remove(w);
+            else
+                examinar(w);
+        }
+        intervaloReexameNs = Math.min(intervaloReexameNs * 2, TimeUnit.MILLISECONDS.toNanos(100));
+        proximoReexameNs = System.nanoTime() + intervaloReexameNs;
+    }
+
+    // Arestas de a: o dono (indicado na espera ou o do grafo) e, para espera exclusiva, os leitores
+    private List<Anel> buscarCiclo(Anel w) {
+        int g = ++geracao;
+        int topo = 0;
+        w.visita = g;
+        w.pai = null;
+        pilha[topo++] = w;
+        while (topo > 0) {
+            Anel a = pilha[--topo];
+            if (a.aguarda == 0)
+                continue;
+            boolean monitor = (a.aguarda & MONITOR) != 0;
+            EstadoLock e = monitor ? null : estados.buscar(a.aguarda);
+            Anel dono = monitor ? donoMonitor(a) : a.donoIndicado != null ? a.donoIndicado : e != null ? e.dono : null;
+            int leitores = e != null && !a.aguardaLeitura ? e.numLeitores : 0;
+            for (int k = -1; k < leitores; k++) {
+                Anel b = k < 0 ? dono : e.leitores[k];
+                if (b == null || b == a)
+                    continue;
+                if (b == w) {
+                    List<Anel> ciclo = new ArrayList<>();
+                    for (Anel c = a; c != null; c = c.pai)
+                        ciclo.add(0, c);
+                    return ciclo;
+                }
+                if (b.visita == g)
+                    continue;
+                b.visita = g;
+                b.pai = a;
+                if (topo == pilha.length)
+                    pilha = Arrays.copyOf(pilha, topo * 2);
+                pilha[topo++] = b;
+            }
+        }
+        return null;
+    }
+
+    // Quem retém o monitor em que a thread está BLOCKED; null se ela já não está nele
+    private Anel donoMonitor(Anel a) {
+        ThreadInfo info = mx.getThreadInfo(a.thread.getId());
+        if (info == null || info.getThreadState() != Thread.State.BLOCKED || info.getLockInfo() == null
+                || (info.getLockInfo().getIdentityHashCode() | MONITOR) != a.aguarda)
+            return null;
+        return anelPorId.get(info.getLockOwnerId());
+    }
+
+    // Cada aresta a -> b do ciclo no estado real: a está BLOCKED no monitor, ou estacionada na fila do
+    // sincronizador, e b o retém. Um sincronizador retido só por leitores não tem dono para a ThreadMXBean:
+    // vale a leitura de b que o grafo registrou
+    private boolean conferir(List<Anel> ciclo) {
+        for (int k = 0; k < ciclo.size(); k++) {
+            Anel a = ciclo.get(k);
+            Anel b = ciclo.get((k + 1) % ciclo.size());
+            if ((a.aguarda & MONITOR) == 0) {
+                Object bloqueio = LockSupport.getBlocker(a.thread);
+                if (bloqueio == null || idSincronizador(bloqueio) != a.aguarda)
+                    return false;
+            }
+            ThreadInfo info = mx.getThreadInfo(a.thread.getId());
+            long dono = info != null ? info.getLockOwnerId() : -2;
+            if (dono != b.thread.getId() && !(dono == -1 && (a.aguarda & MONITOR) == 0 && !a.aguardaLeitura
+                    && leitor(a.aguarda, b)))
+                return false;
+        }
+        return true;
+    }
+
+    private boolean leitor(int lock, Anel b) {
+        EstadoLock e = estados.buscar(lock);
+        if (e == null)
+            return false;
+        for (int k = 0; k < e.numLeitores; k++) {
+            if (e.leitores[k] == b)
+                return true;
+        }
+        return false;
+    }
+
+    private List<String> descrever(List<Anel> ciclo) {
+        List<String> linhas = new ArrayList<>();
+        for (int k = 0; k < ciclo.size(); k++) {
+            Anel a = ciclo.get(k);
+            Anel b = ciclo.get((k + 1) % ciclo.size());
+            linhas.add("\"" + a.thread.getName() + "\" aguarda " + (a.aguardaLeitura ? "leitura de " : "")
+                    + nomeLock(a) + " retido por \"" + b.thread.getName() + "\"");
+        }
+        return linhas;
+    }
+
+    // Monitor pelo hash de identidade; sincronizador pela classe do bloqueio em que a thread estacionou
+    private static String nomeLock(Anel a) {
+        int id = a.aguarda;
+        if ((id & MONITOR) != 0)
+            return "monitor@" + Integer.toHexString(id & ~MONITOR);
+        Object bloqueio = LockSupport.getBlocker(a.thread);
+        String classe = bloqueio != null && idSincronizador(bloqueio) == id ? bloqueio.getClass().getName()
+                : "sincronizador";
+        return classe.substring(classe.lastIndexOf('.') + 1) + "@" + Integer.toHexString(id & ~SINCRONIZADOR);
+    }
+
+    // Threads encerradas com o anel vazio saem da varredura; locks que ainda retinham ficam no grafo
+    private void retirarEncerradas() {
+        Anel[] atual = aneis;
+        int vivos = 0;
+        for (Anel a : atual) {
+            if (a.thread.isAlive() || (long) SLOT.getAcquire(a.slots, (int) a.lidos & (TAMANHO_ANEL - 1)) != 0)
+                vivos++;
+        }
+        if (vivos == atual.length)
+            return;
+        synchronized (travaRegistro) {
+            List<Anel> restantes = new ArrayList<>();
+            for (Anel a : aneis) {
+                if (a.thread.isAlive() || (long) SLOT.getAcquire(a.slots, (int) a.lidos & (TAMANHO_ANEL - 1)) != 0) {
+                    restantes.add(a);
+                } else {
+                    anelPorThread.remove(a.thread);
+                    anelPorId.remove(a.thread.getId());
+                    a.aguarda = 0;
+                }
+            }
+            aneis = restantes.toArray(new Anel[0]);
+        }
+    }
+
+    public long getEventos() {
+        return eventos;
+    }
+
+    // Ciclos achados pelo grafo, inclusive os reexaminados até conferir
+    public long getCiclos() {
+        return ciclos;
+    }
+
+    public long getDeadlocks() {
+        return deadlocks;
+    }
+
+    /** Média entre o consumidor ler a espera que fechou o ciclo e relatar o deadlock. */
+    public double getLatenciaMediaUs() {
+        long n = deadlocks;
+        return n > 0 ? latenciaTotalNs / 1e3 / n : 0;
+    }
+
+    public int getThreadsRegistradas() {
+        return aneis.length;
+    }
+
+    // Tabela aberta ID do lock -> estado, com remoção por deslocamento: sem objeto por consulta
+    private static final class TabelaLocks {
+        private int[] ids = new int[64];
+        private EstadoLock[] estados = new EstadoLock[64];
+        private int tamanho;
+
+        private static int hash(int id) {
+            return id * 0x9E3779B9;
+        }
+
+        EstadoLock buscar(int id) {
+            int mascara = ids.length - 1;
+            for (int h = hash(id) & mascara; estados[h] != null; h = (h + 1) & mascara) {
+                if (ids[h] == id)
+                    return estados[h];
+            }
+            return null;
+        }
+
+        EstadoLock obter(int id) {
+            EstadoLock e = buscar(id);
+            if (e != null)
+                return e;
+            if (2 * (tamanho + 1) > ids.length)
+                crescer();
+            e = new EstadoLock(id);
+            inserir(e);
+            tamanho++;
+            return e;
+        }
+
+        private void inserir(EstadoLock e) {
+            int mascara = ids.length - 1;
+            int h = hash(e.id) & mascara;
+            while (estados[h] != null)
+                h = (h + 1) & mascara;
+            ids[h] = e.id;
+            estados[h] = e;
+        }
+
+        private void crescer() {
+            EstadoLock[] antigos = estados;
+            ids = new int[antigos.length * 2];
+            estados = new EstadoLock[antigos.length * 2];
+            for (EstadoLock e : antigos) {
+                if (e != null)
+                    inserir(e);
+            }
+        }
+
+        void remover(int id) {
+            int mascara = ids.length - 1;
+            int h = hash(id) & mascara;
+            while (estados[h] != null && ids[h] != id)
+                h = (h + 1) & mascara;
+            if (estados[h] == null)
+                return;
+            estados[h] = null;
+            tamanho--;
+            // Desloca de volta as entradas seguintes do mesmo aglomerado que ficariam inalcançáveis
+            for (int j = (h + 1) & mascara; estados[j] != null; j = (j + 1) & mascara) {
+                int ideal = hash(ids[j]) & mascara;
+                if (((j - ideal) & mascara) >= ((j - h) & mascara)) {
+                    ids[h] = ids[j];
+                    estados[h] = estados[j];
+                    estados[j] = null;
+                    h = j;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,168 @@
+import java.util.Arrays;
+
+/**
+ * Estado de alocação/requisição em formato esparso, indexado pelos índices estáveis
+ * de processo (linha) e recurso (coluna). Cada linha guarda só os pares
+ * (recurso, quantidade) que o processo realmente segura, então a memória acompanha
+ * as alocações existentes e não n x m. Um processo aguarda no máximo um recurso por vez,
+ * por isso a requisição é um único índice por linha.
+ *
+ * Não há lock global: cada linha é protegida pelo próprio monitor (lock listrado por processo),
+ * e o vetor de disponíveis fica nos contadores atômicos de cada Recurso. Só o crescimento das
+ * tabelas (novos processos ou recursos) é serializado, e ele nunca perde atualizações de linhas
+ * porque copia referências para os mesmos objetos Linha.
+ *
+ * Cada linha tem uma versão, incrementada a cada mudança de alocação ou pedido, para que as visões
+ * da interface remontem só as linhas que mudaram.
+ */
+public class EstadoEsparso {
+    private static final int[] VAZIO = new int[0];
+
+    private static final class Linha {
+        int[] pares = VAZIO; // recurso0, qtd0, recurso1, qtd1, ...
+        int usados; // pares ocupados
+        volatile int pedido = -1; // recurso aguardado, -1 se nenhum
+        volatile int versao;
+    }
+
+    private volatile Linha[] linhas = new Linha[0];
+    private volatile int[] total = new int[0];
+    private volatile int numRecursos = 0;
+
+    public synchronized void garantirProcessos(int quantidade) {
+        Linha[] atual = linhas;
+        if (quantidade <= atual.length)
+            return;
+        Linha[] novas = Arrays.copyOf(atual, Math.max(quantidade, atual.length * 2));
+        for (int i = atual.length; i < novas.length; i++)
+            novas[i] = new Linha();
+        linhas = novas;
+    }
+
+    public synchronized void adicionarRecurso(int j, int totalRecurso) {
+        int[] atual = total;
+        if (j >= atual.length)
+            atual = Arrays.copyOf(atual, Math.max(j + 1, atual.length * 2));
+        atual[j] = totalRecurso;
+        total = atual;
+        numRecursos = Math.max(numRecursos, j + 1);
+    }
+
+    public int getNumRecursos() {
+        return numRecursos;
+    }
+
+    public int getLinhas() {
+        return linhas.length;
+    }
+
+    /** Soma delta à célula (i, j). */
+    public void alocar(int i, int j, int delta) {
+        Linha l = linhas[i];
+        synchronized (l) {
+            l.versao++;
+            int[] par = l.pares;
+            int u = l.usados;
+            for (int k = 0; k < u; k++) {
+                if (par[2 * k] == j) {
+                    par[2 * k + 1] += delta;
+                    if (par[2 * k + 1] == 0) {
+                        // remove trocando pelo último par
+                        par[2 * k] = par[2 * (u - 1)];
+                        par[2 * k + 1] = par[2 * (u - 1) + 1];
+                        l.usados = u - 1;
+                    }
+                    return;
+                }
+            }
+            if (delta <= 0)
+                return;
+            if (2 * u == par.length) {
+                par = Arrays.copyOf(par, Math.max(4, par.length * 2));
+                l.pares = par;
+            }
+            par[2 * u] = j;
+            par[2 * u + 1] = delta;
+            l.usados = u + 1;
+        }
+    }
+
+    public int quantidade(int i, int j) {
+        Linha l = linhas[i];
+        synchronized (l) {
+            for (int k = 0; k < l.usados; k++) {
+                if (l.pares[2 * k] == j)
+                    return l.pares[2 * k + 1];
+            }
+            return 0;
+        }
+    }
+
+    public void definirPedido(int i, int j) {
+        Linha l = linhas[i];
+        synchronized (l) {
+            l.pedido = j;
+            l.versao++;
+        }
+    }
+
+    /** Limpa o pedido de i só se ele ainda for j (um novo pedido concorrente é preservado). */
+    public void limparPedido(int i, int j) {
+        Linha l = linhas[i];
+        synchronized (l) {
+            if (l.pedido == j) {
+                l.pedido = -1;
+                l.versao++;
+            }
+        }
+    }
+
+    public int pedido(int i) {
+        return linhas[i].pedido;
+    }
+
+    public int versao(int i) {
+        return linhas[i].versao;
+    }
+
+    public int total(int j) {
+        return total[j];
+    }
+
+    /** Esvazia a linha i para reutilização do índice. */
+    public void limparLinha(int i) {
+        Linha l = linhas[i];
+        synchronized (l) {
+            l.pares = VAZIO;
+            l.usados = 0;
+            l.pedido = -1;
+            l.versao++;
+        }
+    }
+
+    /**
+     * Cópia consistente da linha i: [pedido, recurso0, qtd0, recurso1, qtd1, ...].
+     * O detector trabalha sobre essas cópias enquanto as linhas continuam mudando.
+     */
+    public int[] copiarLinha(int i) {
+        Linha l = linhas[i];
+        synchronized (l) {
+            int[] copia = new int[1 + 2 * l.usados];
+            copia[0] = l.pedido;
+            System.arraycopy(l.pares, 0, copia, 1, 2 * l.usados);
+            return copia;
+        }
+    }
+
+    /** Copia a linha i para um vetor denso de m posições (usado pelas visões em matriz). */
+    public void expandirLinha(int i, int[] destino) {
+        Arrays.fill(destino, 0);
+        Linha l = linhas[i];
+        synchronized (l) {
+            for (int k = 0; k < l.usados; k++) {
+                if (l.pares[2 * k] < destino.length)
+                    destino[l.pares[2 * k]] = l.pares[2 * k + 1];
+            }
+        }
+    }
+}
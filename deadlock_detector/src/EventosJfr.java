@@ -0,0 +1,124 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Eventos do Java Flight Recorder emitidos pelo SistemaOperacional e pelos processos, para cruzar
+ * picos de latência com pausas de GC e estacionamento de threads numa gravação. Quem emite cria o
+ * evento, chama begin se houver duração e só preenche os campos se shouldCommit; sem gravação ativa
+ * o JIT elimina a alocação e as chamadas viram testes de um campo estático.
+ *
+ * Durações são de relógio de parede (as do JFR); na simulação discreta nenhuma thread bloqueia, então
+ * Bloqueio não é emitido, e retenção e ΔTu seguem o relógio virtual do sistema.
+ */
+public final class EventosJfr {
+    private EventosJfr() {
+    }
+
+    @Name("deadlock_detector.Solicitacao")
+    @Label("Solicitação de recurso")
+    @Category({ "Deadlock Detector", "Alocação" })
+    @Description("Chamada a SistemaOperacional.solicitarRecurso, do sorteio do recurso ao resultado")
+    @StackTrace(false)
+    public static final class Solicitacao extends Event {
+        @Label("Processo")
+        int processo;
+        @Label("Recurso")
+        @Description("ID do recurso concedido ou aguardado; -1 sem recurso")
+        int recurso = -1;
+        @Label("Nome do recurso")
+        String nomeRecurso;
+        @Label("Resultado")
+        @Description("concedido, aguardando ou sem recurso")
+        String resultado;
+    }
+
+    @Name("deadlock_detector.Concessao")
+    @Label("Concessão")
+    @Category({ "Deadlock Detector", "Alocação" })
+    @StackTrace(false)
+    public static final class Concessao extends Event {
+        @Label("Processo")
+        int processo;
+        @Label("Recurso")
+        int recurso;
+        @Label("Nome do recurso")
+        String nomeRecurso;
+        @Label("Instância")
+        int instancia;
+        @Label("Entrega direta")
+        @Description("A instância liberada foi entregue a quem estava na fila, sem passar pelos disponíveis")
+        boolean entregaDireta;
+    }
+
+    @Name("deadlock_detector.Liberacao")
+    @Label("Liberação")
+    @Category({ "Deadlock Detector", "Alocação" })
+    @StackTrace(false)
+    public static final class Liberacao extends Event {
+        @Label("Processo")
+        int processo;
+        @Label("Recurso")
+        int recurso;
+        @Label("Nome do recurso")
+        String nomeRecurso;
+        @Label("Instância")
+        int instancia;
+        @Label("Retenção")
+        @Timespan(Timespan.MILLISECONDS)
+        long retencao;
+    }
+
+    @Name("deadlock_detector.Bloqueio")
+    @Label("Processo bloqueado")
+    @Category({ "Deadlock Detector", "Processos" })
+    @Description("Espera do processo na sua Condition até ser acordado")
+    @StackTrace(false)
+    public static final class Bloqueio extends Event {
+        @Label("Processo")
+        int processo;
+        @Label("Recurso aguardado")
+        @Description("-1 se o processo não estava na fila de nenhum recurso")
+        int recurso = -1;
+        @Label("Nome do recurso")
+        String nomeRecurso;
+    }
+
+    @Name("deadlock_detector.Deteccao")
+    @Label("Detecção de deadlock")
+    @Category({ "Deadlock Detector", "Detecção" })
+    @StackTrace(false)
+    public static final class Deteccao extends Event {
+        @Label("Processos")
+        int processos;
+        @Label("Recursos")
+        int recursos;
+        @Label("Região reavaliada")
+        @Description("Processos bloqueados reexaminados pela verificação incremental")
+        int regiao;
+        @Label("Em deadlock")
+        int emDeadlock;
+    }
+
+    @Name("deadlock_detector.ExpiracaoUso")
+    @Label("Expiração de ΔTu")
+    @Category({ "Deadlock Detector", "Processos" })
+    @StackTrace(false)
+    public static final class ExpiracaoUso extends Event {
+        @Label("Processo")
+        int processo;
+        @Label("Recurso")
+        int recurso;
+        @Label("Nome do recurso")
+        String nomeRecurso;
+        @Label("Instância")
+        int instancia;
+        @Label("ΔTu")
+        @Timespan(Timespan.SECONDS)
+        long deltaU;
+    }
+}
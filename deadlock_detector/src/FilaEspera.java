@@ -0,0 +1,91 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Fila de processos aguardando um recurso, com lock próprio. Cada recurso tem a sua, então
+ * esperas e liberações em recursos diferentes não disputam um lock global. O lock fica exposto
+ * para operações compostas do SistemaOperacional (ex.: conferir o disponível e enfileirar).
+ */
+public class FilaEspera {
+    private final ReentrantLock trava = new ReentrantLock();
+    private final ArrayDeque<Processo> fila = new ArrayDeque<>();
+
+    ReentrantLock trava() {
+        return trava;
+    }
+
+    public boolean adicionar(Processo p) {
+        trava.lock();
+        try {
+            if (fila.contains(p))
+                return false;
+            fila.addLast(p);
+            return true;
+        } finally {
+            trava.unlock();
+        }
+    }
+
+    public boolean remover(Processo p) {
+        trava.lock();
+        try {
+            return fila.remove(p);
+        } finally {
+            trava.unlock();
+        }
+    }
+
+    /**
+     * Retira o próximo processo a ser atendido: o mais antigo, ou o de maior prioridade
+     * (o mais antigo entre os empatados). Devolve null se a fila estiver vazia.
+     */
+    public Processo retirarProximo(boolean porPrioridade) {
+        trava.lock();
+        try {
+            if (!porPrioridade)
+                return fila.pollFirst();
+            Processo escolhido = null;
+            for (Processo p : fila) {
+                if (escolhido == null || p.getPrioridade() > escolhido.getPrioridade())
+                    escolhido = p;
+            }
+            if (escolhido != null)
+                fila.removeFirstOccurrence(escolhido);
+            return escolhido;
+        } finally {
+            trava.unlock();
+        }
+    }
+
+    /** Esvazia a fila, devolvendo os processos em ordem de chegada. */
+    public List<Processo> drenar() {
+        trava.lock();
+        try {
+            List<Processo> todos = new ArrayList<>(fila);
+            fila.clear();
+            return todos;
+        } finally {
+            trava.unlock();
+        }
+    }
+
+    public List<Processo> copia() {
+        trava.lock();
+        try {
+            return new ArrayList<>(fila);
+        } finally {
+            trava.unlock();
+        }
+    }
+
+    public boolean isEmpty() {
+        trava.lock();
+        try {
+            return fila.isEmpty();
+        } finally {
+            trava.unlock();
+        }
+    }
+}
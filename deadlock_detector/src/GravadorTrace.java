@@ -0,0 +1,207 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Trace binário das transições de estado do SistemaOperacional, para reproduzir uma execução com o
+ * ReproducaoTrace. Cada transição é um registro de 16 bytes num arquivo mapeado em memória:
+ *
+ *   byte tipo, byte flags, 2 bytes livres, int instante (ms desde o início), int a, int b
+ *
+ * Quem grava só reserva a posição com um getAndIncrement e escreve no mapeamento, sem trava nem
+ * chamada de sistema; a ordem das reservas é a ordem do arquivo. Por isso o SistemaOperacional grava
+ * cada transição onde ela já é visível para as outras threads (a liberação antes de a instância
+ * voltar ao contador, a concessão depois de alocá-la), e a reprodução nunca vê efeito antes da causa.
+ *
+ * Reservar e publicar são as únicas operações atômicas; close confere que todo registro reservado
+ * foi publicado antes de escrever o cabeçalho.
+ *
+ * O cabeçalho (16 bytes: mágico, versão, número de registros) só é preenchido em close, que também
+ * corta o arquivo no último registro; sem contagem (trace não fechado ou com falha de E/S) o leitor
+ * vai até o primeiro registro vazio.
+ */
+public class GravadorTrace implements Closeable {
+    static final int MAGICO = 0x444C5452; // "DLTR"
+    static final int VERSAO = 1;
+    static final int CABECALHO = 16;
+    static final int TAMANHO_REGISTRO = 16;
+    static final int BITS_REGIAO = 22; // regiões mapeadas de 4 MiB
+    static final long TAMANHO_REGIAO = 1L << BITS_REGIAO;
+
+    // Tipos de registro, com o significado de a e b
+    static final byte RECURSO = 1; // a: id, b: instâncias; seguido dos registros NOME
+    static final byte NOME = 2; // flags: bytes usados; bytes 2..15: trecho do nome em UTF-8
+    static final byte PROCESSO = 3; // a: id, b: ΔTs << 16 | ΔTu
+    static final byte REMOCAO = 4; // a: processo
+    static final byte SOLICITACAO = 5; // a: processo
+    static final byte CONCESSAO = 6; // a: processo, b: recurso; flags 1: entrega direta da fila
+    static final byte ESPERA = 7; // a: processo, b: recurso
+    static final byte FIM_ESPERA = 8; // a: processo, b: recurso
+    static final byte LIBERACAO = 9; // a: processo, b: recurso
+    static final byte DETECCAO = 10; // a: processos, b: em deadlock após a verificação
+    static final int BYTES_NOME = TAMANHO_REGISTRO - 2;
+
+    private static final long FECHADO = 1L << 62;
+    // Primeira palavra do registro (tipo e flags), publicada por último com release: close espera até
+    // todo registro reservado ter tipo, e então o conteúdo inteiro dele está no mapeamento
+    private static final VarHandle PALAVRA = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+
+    private final FileChannel canal;
+    private final AtomicLong reservados = new AtomicLong();
+    private volatile long registrosAoFechar = -1;
+    private volatile MappedByteBuffer[] regioes = new MappedByteBuffer[0];
+    private volatile IOException falha;
+    // Separada do monitor de mapear: close espera escritores que ainda podem precisar mapear uma região
+    private final Object travaFechamento = new Object();
+
+    /** Cria (ou sobrescreve) o arquivo de trace. */
+    public GravadorTrace(Path arquivo) throws IOException {
+        canal = FileChannel.open(arquivo, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (regiao(0) == null) {
+            canal.close();
+            throw falha;
+        }
+    }
+
+    void gravar(byte tipo, int flags, long instanteMs, int a, int b) {
+        long k = reservados.getAndIncrement();
+        if (k >= FECHADO)
+            return;
+        escrever(k, tipo, flags, instanteMs, a, b);
+    }
+
+    void gravarRecurso(long instanteMs, Recurso r) {
+        byte[] nome = r.getNome().getBytes(StandardCharsets.UTF_8);
+        int trechos = (nome.length + BYTES_NOME - 1) / BYTES_NOME;
+        long k = reservados.getAndAdd(1 + trechos); // contíguos: o nome vem logo depois do recurso
+        if (k >= FECHADO)
+            return;
+        escrever(k, RECURSO, 0, instanteMs, r.getId(), r.getTotal());
+        for (int t = 0; t < trechos; t++) {
+            long pos = posicao(k + 1 + t);
+            MappedByteBuffer reg = regiao(pos);
+            if (reg == null)
+                break;
+            int i = (int) (pos & (TAMANHO_REGIAO - 1));
+            int usados = Math.min(BYTES_NOME, nome.length - t * BYTES_NOME);
+            for (int c = 0; c < usados; c++)
+                reg.put(i + 2 + c, nome[t * BYTES_NOME + c]);
+            publicar(reg, i, NOME, usados, reg.getShort(i + 2) & 0xFFFF);
+        }
+    }
+
+    private void escrever(long k, byte tipo, int flags, long instanteMs, int a, int b) {
+        long pos = posicao(k);
+        MappedByteBuffer reg = regiao(pos);
+        if (reg == null)
+            return;
+        int i = (int) (pos & (TAMANHO_REGIAO - 1));
+        reg.putInt(i + 4, (int) instanteMs);
+        reg.putInt(i + 8, a);
+        reg.putInt(i + 12, b);
+        publicar(reg, i, tipo, flags, 0);
+    }
+
+    // resto: bytes 2 e 3, livres nos registros comuns e o começo do trecho nos registros NOME
+    private static void publicar(MappedByteBuffer reg, int i, byte tipo, int flags, int resto) {
+        PALAVRA.setRelease(reg, i, (tipo & 0xFF) << 24 | (flags & 0xFF) << 16 | resto);
+    }
+
+    static long posicao(long registro) {
+        return CABECALHO + registro * TAMANHO_REGISTRO;
+    }
+
+    private MappedByteBuffer regiao(long pos) {
+        int indice = (int) (pos >>> BITS_REGIAO);
+        MappedByteBuffer[] rs = regioes;
+        if (indice < rs.length && rs[indice] != null)
+            return rs[indice];
+        return mapear(indice);
+    }
+
+    // Raro (uma vez a cada 4 MiB): mapeia a região seguinte, o que também estende o arquivo
+    private synchronized MappedByteBuffer mapear(int indice) {
+        MappedByteBuffer[] rs = regioes;
+        if (indice < rs.length && rs[indice] != null)
+            return rs[indice];
+        if (falha != null)
+            return null;
+        try {
+            MappedByteBuffer reg = canal.map(FileChannel.MapMode.READ_WRITE, indice * TAMANHO_REGIAO, TAMANHO_REGIAO);
+            rs = Arrays.copyOf(rs, Math.max(rs.length, indice + 1));
+            rs[indice] = reg;
+            regioes = rs;
+            return reg;
+        } catch (IOException e) {
+            falha = e;
+            return null;
+        }
+    }
+
+    /** Registros gravados até agora. */
+    public long getRegistros() {
+        long fechados = registrosAoFechar;
+        return fechados >= 0 ? fechados : reservados.get();
+    }
+
+    /** Erro de E/S que interrompeu a gravação, ou null. */
+    public IOException getFalha() {
+        return falha;
+    }
+
+    /**
+     * Encerra a gravação: novas transições são ignoradas, as que já reservaram posição terminam de
+     * escrever, e o arquivo recebe o cabeçalho e é cortado no último registro.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (travaFechamento) {
+            long total = reservados.getAndAdd(FECHADO);
+            if (total >= FECHADO)
+                return;
+            aguardarEscritores(total);
+            registrosAoFechar = total;
+            fechar(total);
+        }
+        if (falha != null)
+            throw new IOException("Trace incompleto", falha);
+    }
+
+    private void aguardarEscritores(long total) {
+        for (long k = 0; k < total && falha == null; k++) {
+            long pos = posicao(k);
+            MappedByteBuffer reg = regiao(pos);
+            int i = (int) (pos & (TAMANHO_REGIAO - 1));
+            while (reg != null && (int) PALAVRA.getAcquire(reg, i) == 0 && falha == null)
+                Thread.onSpinWait();
+        }
+    }
+
+    private void fechar(long total) throws IOException {
+        try {
+            MappedByteBuffer[] rs = regioes;
+            rs[0].putInt(0, MAGICO);
+            rs[0].putInt(4, VERSAO);
+            rs[0].putLong(8, falha != null ? 0 : total); // 0: o leitor procura o fim pelo primeiro registro vazio
+            for (MappedByteBuffer reg : rs) {
+                if (reg != null)
+                    reg.force();
+            }
+            regioes = new MappedByteBuffer[0];
+            if (falha == null)
+                canal.truncate(posicao(total));
+        } finally {
+            canal.close();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histograma concorrente de valores não negativos (tempos em ms ou µs) para as métricas do sistema.
+ * Os baldes são potências de 2 divididas em 4 faixas iguais, então um percentil sai com erro de
+ * no máximo 25% do valor; cada balde é um LongAdder, e registrar nunca disputa um contador único.
+ * O resumo lê os baldes sem parar quem registra, então pode misturar registros em andamento.
+ */
+public class Histograma {
+    private static final int SUBBALDES = 4;
+    private static final int BITS_SUB = 2;
+    private static final int BALDES = (64 - BITS_SUB + 1) * SUBBALDES;
+
+    private final LongAdder[] baldes = new LongAdder[BALDES];
+    private final LongAdder soma = new LongAdder();
+    // Máximo em AtomicLong: só escreve quando o valor é novo recorde, o que fica raro depois do início
+    private final AtomicLong maximo = new AtomicLong();
+
+    public Histograma() {
+        for (int b = 0; b < BALDES; b++)
+            baldes[b] = new LongAdder();
+    }
+
+    public void registrar(long valor) {
+        if (valor < 0)
+            valor = 0;
+        baldes[balde(valor)].increment();
+        soma.add(valor);
+        long atual = maximo.get();
+        while (valor > atual && !maximo.compareAndSet(atual, valor))
+            atual = maximo.get();
+    }
+
+    // Valores abaixo de 2^BITS_SUB têm balde próprio; acima, o expoente escolhe o grupo e os dois
+    // bits seguintes ao mais alto escolhem a faixa dentro dele
+    private static int balde(long valor) {
+        if (valor < SUBBALDES)
+            return (int) valor;
+        int expoente = 63 - Long.numberOfLeadingZeros(valor);
+        int faixa = (int) (valor >>> (expoente - BITS_SUB)) & (SUBBALDES - 1);
+        return (expoente - BITS_SUB + 1) * SUBBALDES + faixa;
+    }
+
+    // Maior valor que cai no balde b
+    private static long limiteSuperior(int b) {
+        if (b < SUBBALDES)
+            return b;
+        int expoente = b / SUBBALDES + BITS_SUB - 1;
+        long faixa = b % SUBBALDES;
+        long largura = 1L << (expoente - BITS_SUB);
+        return (1L << expoente) + (faixa + 1) * largura - 1;
+    }
+
+    public ResumoHistograma resumo() {
+        long[] contagens = new long[BALDES];
+        long total = 0;
+        for (int b = 0; b < BALDES; b++) {
+            contagens[b] = baldes[b].sum();
+            total += contagens[b];
+        }
+        long max = maximo.get();
+        return new ResumoHistograma(total, total > 0 ? (double) soma.sum() / total : 0,
+                percentil(contagens, total, 0.50, max), percentil(contagens, total, 0.95, max),
+                percentil(contagens, total, 0.99, max), max);
+    }
+
+    private static long percentil(long[] contagens, long total, double p, long max) {
+        if (total == 0)
+            return 0;
+        long alvo = (long) Math.ceil(p * total);
+        long acumulado = 0;
+        for (int b = 0; b < contagens.length; b++) {
+            acumulado += contagens[b];
+            if (acumulado >= alvo)
+                return Math.min(limiteSuperior(b), max);
+        }
+        return max;
+    }
+}
@@ -0,0 +1,133 @@
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Log de execuções longas com memória limitada. Só as últimas entradas ficam em memória, à espera
+ * de serem exibidas; o log completo vai linha a linha para um arquivo de trabalho, e a exportação
+ * copia esse arquivo em vez de juntar texto em memória.
+ *
+ * adicionar pode ser chamado de qualquer thread (a consumidora do RegistroEventos, a da interface);
+ * quem exibe retira as pendentes periodicamente. Se não há quem retire, as mais antigas são
+ * descartadas da memória, mas continuam no arquivo.
+ */
+public class HistoricoLog implements Closeable {
+    private final int capacidade;
+    private final ArrayDeque<RegistroEventos.Entrada> pendentes = new ArrayDeque<>(); // protegida por this
+    private final Object travaArquivo = new Object();
+    private final Path arquivo;
+    private BufferedWriter escritor; // protegido por travaArquivo; null se o arquivo não pôde ser usado
+    private IOException falha;
+    private long linhasNoArquivo = 0;
+
+    /** arquivo: onde guardar o log completo (sobrescrito); null mantém só as entradas recentes. */
+    public HistoricoLog(int capacidade, Path arquivo) {
+        this.capacidade = capacidade;
+        this.arquivo = arquivo;
+        if (arquivo != null) {
+            try {
+                escritor = Files.newBufferedWriter(arquivo, StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                falha = e;
+            }
+        }
+    }
+
+    public int getCapacidade() {
+        return capacidade;
+    }
+
+    public void adicionar(List<RegistroEventos.Entrada> lote) {
+        escrever(lote);
+        synchronized (this) {
+            for (RegistroEventos.Entrada e : lote) {
+                pendentes.addLast(e);
+                if (pendentes.size() > capacidade)
+                    pendentes.removeFirst();
+            }
+        }
+    }
+
+    /** Entradas ainda não exibidas, em ordem; no máximo a capacidade. */
+    public synchronized List<RegistroEventos.Entrada> retirarPendentes() {
+        if (pendentes.isEmpty())
+            return List.of();
+        List<RegistroEventos.Entrada> lote = new ArrayList<>(pendentes);
+        pendentes.clear();
+        return lote;
+    }
+
+    private void escrever(List<RegistroEventos.Entrada> lote) {
+        synchronized (travaArquivo) {
+            if (escritor == null)
+                return;
+            try {
+                for (RegistroEventos.Entrada e : lote) {
+                    escritor.write(e.getTexto());
+                    escritor.newLine();
+                }
+                linhasNoArquivo += lote.size();
+                escritor.flush();
+            } catch (IOException e) {
+                falha = e;
+                fecharEscritor();
+            }
+        }
+    }
+
+    public long getLinhasNoArquivo() {
+        synchronized (travaArquivo) {
+            return linhasNoArquivo;
+        }
+    }
+
+    /**
+     * Copia para destino o log completo até o momento da chamada, direto do arquivo de trabalho.
+     * A gravação continua durante a cópia: só o tamanho é fixado sob a trava.
+     */
+    public void exportar(Path destino) throws IOException {
+        long tamanho;
+        synchronized (travaArquivo) {
+            if (falha != null)
+                throw new IOException("Log completo indisponível", falha);
+            if (arquivo == null)
+                throw new IOException("Log completo não está sendo gravado");
+            if (escritor != null)
+                escritor.flush();
+            tamanho = Files.size(arquivo);
+        }
+        try (FileChannel origem = FileChannel.open(arquivo, StandardOpenOption.READ);
+                FileChannel saida = FileChannel.open(destino, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING)) {
+            long copiado = 0;
+            while (copiado < tamanho)
+                copiado += origem.transferTo(copiado, tamanho - copiado, saida);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (travaArquivo) {
+            fecharEscritor();
+        }
+    }
+
+    private void fecharEscritor() {
+        if (escritor == null)
+            return;
+        try {
+            escritor.close();
+        } catch (IOException e) {
+            // o conteúdo já gravado continua no arquivo
+        }
+        escritor = null;
+    }
+}
@@ -0,0 +1,65 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Mensagem entre shards do SistemaDistribuido: tipo e cinco inteiros, 24 bytes no fio. Operações de
+ * recurso usam processo e recurso; sondas (CONSULTA e RESPOSTA) usam iniciador, sequencia, processo
+ * (o alvo), remetente (quem consulta ou é creditado) e o shard onde o remetente está engajado.
+ */
+final class MensagemShard {
+    static final int PEDIR = 1; // cliente -> casa do processo
+    static final int SOLICITAR = 2; // casa -> dono do recurso
+    static final int CONCEDER = 3; // dono -> casa
+    static final int DEVOLVER = 4; // cliente -> casa
+    static final int LIBERAR = 5; // casa -> dono
+    static final int ABORTAR = 6; // cliente -> casa
+    static final int CANCELAR = 7; // casa -> dono: desiste da espera
+    static final int CONSULTA = 8;
+    static final int RESPOSTA = 9;
+
+    final int tipo;
+    final int processo;
+    final int recurso; // nas sondas: sequência da computação
+    final int iniciador;
+    final int remetente;
+    final int shardResposta;
+
+    MensagemShard(int tipo, int processo, int recurso) {
+        this(tipo, processo, recurso, -1, -1, -1);
+    }
+
+    MensagemShard(int tipo, int processo, int recurso, int iniciador, int remetente, int shardResposta) {
+        this.tipo = tipo;
+        this.processo = processo;
+        this.recurso = recurso;
+        this.iniciador = iniciador;
+        this.remetente = remetente;
+        this.shardResposta = shardResposta;
+    }
+
+    static MensagemShard consulta(int iniciador, int sequencia, int alvo, int remetente, int shardResposta) {
+        return new MensagemShard(CONSULTA, alvo, sequencia, iniciador, remetente, shardResposta);
+    }
+
+    static MensagemShard resposta(int iniciador, int sequencia, int creditado) {
+        return new MensagemShard(RESPOSTA, creditado, sequencia, iniciador, -1, -1);
+    }
+
+    boolean isSonda() {
+        return tipo == CONSULTA || tipo == RESPOSTA;
+    }
+
+    void escrever(DataOutputStream out) throws IOException {
+        out.writeInt(tipo);
+        out.writeInt(processo);
+        out.writeInt(recurso);
+        out.writeInt(iniciador);
+        out.writeInt(remetente);
+        out.writeInt(shardResposta);
+    }
+
+    static MensagemShard ler(DataInputStream in) throws IOException {
+        return new MensagemShard(in.readInt(), in.readInt(), in.readInt(), in.readInt(), in.readInt(), in.readInt());
+    }
+}
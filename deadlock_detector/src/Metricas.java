@@ -0,0 +1,155 @@
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Instrumentação do SistemaOperacional. O caminho quente só incrementa LongAdders e histogramas de
+ * baldes LongAdder, sem trava compartilhada; os medidores (bloqueados, disponíveis) são lidos do
+ * sistema na hora da consulta. publicar registra o MXBean no servidor de MBeans da plataforma.
+ */
+public class Metricas implements MetricasMXBean {
+    private final SistemaOperacional sistema;
+    private final LongAdder solicitacoes = new LongAdder();
+    private final LongAdder concessoes = new LongAdder();
+    private final LongAdder esperas = new LongAdder();
+    private final LongAdder liberacoes = new LongAdder();
+    private final LongAdder despertares = new LongAdder();
+    private final Map<Recurso, Histograma> esperaPorRecurso = new ConcurrentHashMap<>();
+    private final Histograma retencao = new Histograma();
+    private final Histograma deteccao = new Histograma();
+    private final Histograma latenciaDeadlock = new Histograma();
+    private ObjectName nomePublicado;
+
+    public Metricas(SistemaOperacional sistema) {
+        this.sistema = sistema;
+    }
+
+    // Chamado ao registrar o recurso, para o caminho quente só consultar o mapa
+    void adicionarRecurso(Recurso r) {
+        esperaPorRecurso.putIfAbsent(r, new Histograma());
+    }
+
+    void solicitacao() {
+        solicitacoes.increment();
+    }
+
+    void concessao() {
+        concessoes.increment();
+    }
+
+    void espera() {
+        esperas.increment();
+    }
+
+    void fimEspera(Recurso r, long esperaMs) {
+        Histograma h = esperaPorRecurso.get(r);
+        if (h != null)
+            h.registrar(esperaMs);
+    }
+
+    void liberacao(long retencaoMs) {
+        liberacoes.increment();
+        retencao.registrar(retencaoMs);
+    }
+
+    void despertares(int quantidade) {
+        despertares.add(quantidade);
+    }
+
+    void deteccao(long duracaoNs) {
+        deteccao.registrar(duracaoNs / 1_000);
+    }
+
+    void deadlockRelatado(long latenciaMs) {
+        latenciaDeadlock.registrar(latenciaMs);
+    }
+
+    public synchronized void publicar(String nome) throws JMException {
+        MBeanServer servidor = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objeto = new ObjectName("deadlock_detector:type=Metricas,name=" + ObjectName.quote(nome));
+        servidor.registerMBean(this, objeto);
+        nomePublicado = objeto;
+    }
+
+    public synchronized void retirar() throws JMException {
+        if (nomePublicado != null) {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(nomePublicado);
+            nomePublicado = null;
+        }
+    }
+
+    @Override
+    public long getSolicitacoes() {
+        return solicitacoes.sum();
+    }
+
+    @Override
+    public long getConcessoes() {
+        return concessoes.sum();
+    }
+
+    @Override
+    public long getEsperas() {
+        return esperas.sum();
+    }
+
+    @Override
+    public long getLiberacoes() {
+        return liberacoes.sum();
+    }
+
+    @Override
+    public long getDespertares() {
+        return despertares.sum();
+    }
+
+    @Override
+    public int getProcessosBloqueados() {
+        return sistema.getProcessosAguardando();
+    }
+
+    @Override
+    public Map<String, Integer> getDisponiveisPorRecurso() {
+        Map<String, Integer> resultado = new LinkedHashMap<>();
+        for (Recurso r : sistema.getRecursos())
+            resultado.put(chave(r), r.getDisponivel());
+        return resultado;
+    }
+
+    @Override
+    public Map<String, ResumoHistograma> getTempoEsperaMsPorRecurso() {
+        Map<String, ResumoHistograma> resultado = new LinkedHashMap<>();
+        for (Recurso r : sistema.getRecursos()) {
+            Histograma h = esperaPorRecurso.get(r);
+            if (h != null)
+                resultado.put(chave(r), h.resumo());
+        }
+        return resultado;
+    }
+
+    // Nomes de recurso podem se repetir; o ID não
+    private static String chave(Recurso r) {
+        return r.getNome() + " (ID " + r.getId() + ")";
+    }
+
+    @Override
+    public ResumoHistograma getTempoRetencaoMs() {
+        return retencao.resumo();
+    }
+
+    @Override
+    public ResumoHistograma getDuracaoDeteccaoUs() {
+        return deteccao.resumo();
+    }
+
+    @Override
+    public ResumoHistograma getLatenciaDeadlockMs() {
+        return latenciaDeadlock.resumo();
+    }
+}
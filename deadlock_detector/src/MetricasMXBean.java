@@ -0,0 +1,31 @@
+import java.util.Map;
+
+/**
+ * Métricas de um SistemaOperacional publicadas por JMX (jconsole, VisualVM, Mission Control).
+ * Contadores são acumulados desde a criação do sistema; tempos de espera e retenção estão no relógio
+ * do sistema (virtual na simulação discreta), a duração da detecção em µs de tempo real.
+ */
+public interface MetricasMXBean {
+    long getSolicitacoes();
+
+    long getConcessoes();
+
+    long getEsperas();
+
+    long getLiberacoes();
+
+    long getDespertares();
+
+    int getProcessosBloqueados();
+
+    Map<String, Integer> getDisponiveisPorRecurso();
+
+    Map<String, ResumoHistograma> getTempoEsperaMsPorRecurso();
+
+    ResumoHistograma getTempoRetencaoMs();
+
+    ResumoHistograma getDuracaoDeteccaoUs();
+
+    /** Do instante em que o último processo do conjunto passou a aguardar até o deadlock ser relatado. */
+    ResumoHistograma getLatenciaDeadlockMs();
+}
@@ -0,0 +1,11 @@
+/**
+ * Quando o SistemaOperacional verifica deadlock. PERIODICA dorme Δt entre verificações
+ * (comportamento original). POR_EVENTO verifica quando um processo passa a aguardar um recurso,
+ * única forma de um deadlock se formar; bloqueios próximos, dentro da janela de coalescência,
+ * resultam numa única verificação. No modo POR_EVENTO a verificação a cada Δt pode continuar
+ * ligada como rede de segurança ou ser desligada, e aí o detector não acorda sem motivo.
+ */
+public enum ModoDeteccao {
+    PERIODICA,
+    POR_EVENTO
+}
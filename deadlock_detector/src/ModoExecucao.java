@@ -0,0 +1,50 @@
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * Como as threads dos processos simulados são criadas. PLATAFORMA usa uma thread do SO por
+ * processo (comportamento original); VIRTUAL usa threads virtuais, que permitem centenas de
+ * milhares de processos numa única JVM. Threads virtuais exigem Java 21+: o construtor é
+ * resolvido por reflexão para o projeto continuar compilando e rodando em Java 17, e em
+ * JVMs sem suporte o modo VIRTUAL cai para threads de plataforma.
+ */
+public enum ModoExecucao {
+    PLATAFORMA,
+    VIRTUAL;
+
+    // Thread.ofVirtual(), Builder.name(String) e Builder.unstarted(Runnable); nulos antes do Java 21
+    private static final MethodHandle[] CONSTRUTOR_VIRTUAL = resolverConstrutorVirtual();
+
+    private static MethodHandle[] resolverConstrutorVirtual() {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            Class<?> ofVirtual = Class.forName("java.lang.Thread$Builder$OfVirtual");
+            return new MethodHandle[] {
+                    lookup.findStatic(Thread.class, "ofVirtual", MethodType.methodType(ofVirtual)),
+                    lookup.findVirtual(builder, "name", MethodType.methodType(builder, String.class)),
+                    lookup.findVirtual(builder, "unstarted", MethodType.methodType(Thread.class, Runnable.class)) };
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    public static boolean virtualDisponivel() {
+        return CONSTRUTOR_VIRTUAL != null;
+    }
+
+    /** Cria (sem iniciar) a thread que vai executar a tarefa neste modo. */
+    public Thread novaThread(Runnable tarefa, String nome) {
+        if (this == VIRTUAL && CONSTRUTOR_VIRTUAL != null) {
+            try {
+                Object builder = CONSTRUTOR_VIRTUAL[0].invoke();
+                builder = CONSTRUTOR_VIRTUAL[1].invoke(builder, nome);
+                return (Thread) CONSTRUTOR_VIRTUAL[2].invoke(builder, tarefa);
+            } catch (Throwable e) {
+                throw new IllegalStateException("Falha ao criar thread virtual", e);
+            }
+        }
+        return new Thread(tarefa, nome);
+    }
+}
@@ -0,0 +1,464 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.management.LockInfo;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MonitorInfo;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.AbstractOwnableSynchronizer;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import javax.management.remote.JMXConnector;
+import javax.management.remote.JMXConnectorFactory;
+import javax.management.remote.JMXServiceURL;
+import com.sun.tools.attach.AttachNotSupportedException;
+import com.sun.tools.attach.VirtualMachine;
+import com.sun.tools.attach.VirtualMachineDescriptor;
+
+/**
+ * Detector de deadlock para threads reais de uma JVM, pela ThreadMXBean: da própria JVM ou de outra
+ * JVM local, pela API de attach. Cada thread vira um processo e cada monitor ou lock de j.u.c um
+ * recurso de instância única; a thread que aguarda um lock com dono tem uma aresta para o dono.
+ *
+ * Feito para ficar ligado em produção, a amostragem tem três níveis de custo:
+ *   - na própria JVM, uma varredura dos estados das threads (sem safepoint) descarta a amostra se
+ *     menos de duas estão BLOCKED ou estacionadas num lock com dono; WAITING em Condition, sleep ou
+ *     fila ociosa não conta, pois não tem dono a quem apontar;
+ *   - senão, getThreadInfo sem pilha só das candidatas monta o grafo de espera em vetores
+ *     reaproveitados, e a redução do detector (que com instância única e um pedido por thread vira
+ *     seguir a cadeia de donos) acha quem não consegue terminar;
+ *   - só então os suspeitos são lidos de novo com monitores e sincronizadores retidos, num
+ *     instantâneo consistente, e o deadlock é confirmado pela AnaliseLote antes de ser relatado.
+ * A leitura sem pilha não é atômica entre threads, por isso a confirmação; um deadlock já relatado
+ * não é confirmado de novo enquanto persistir.
+ *
+ * O intervalo se adapta: cai pela metade (até o mínimo) enquanto há contenção e dobra (até o máximo)
+ * quando não há, e nunca fica abaixo do que manteria a amostragem em 1% do tempo.
+ *
+ * Uso: java MonitorDeadlockJvm [pid] [-min ms] [-max ms] [-duracao s]
+ *   sem pid, lista as JVMs locais
+ */
+public class MonitorDeadlockJvm implements Closeable {
+    private static final double ORCAMENTO = 0.01; // fração do tempo que a amostragem pode ocupar
+    private static final long[] NENHUM = new long[0];
+
+    private final ThreadMXBean threads;
+    private final JMXConnector conexao; // null na própria JVM
+    private final ThreadGroup raiz;
+    private volatile long intervaloMinMs = 10;
+    private volatile long intervaloMaxMs = 1000;
+    private volatile long intervaloMs = 100;
+    private double custoRecenteNs = 0; // média móvel do custo da amostra, para o piso do intervalo
+    private volatile Consumer<List<ThreadInfo>> onDeadlock = deadlocked -> {
+    };
+    private Thread thread;
+    private volatile RuntimeException falha;
+
+    // Vetores da amostra, reaproveitados: só crescem
+    private Thread[] vivas = new Thread[64];
+    private long[] candidatas = new long[16];
+    private int[] dono = new int[16]; // nó dono do lock que o nó aguarda, -1: não aguarda ninguém da amostra
+    private byte[] veredito = new byte[16];
+    private long[] chaves = new long[32]; // tabela aberta id de thread -> nó, chave 0: vaga
+    private int[] nos = new int[32];
+    private long[] emDeadlock = NENHUM; // threads que a redução da amostra não consegue terminar, ordenadas
+    private long[] conhecido = NENHUM; // threads do último deadlock relatado, ordenadas
+    private int aguardandoDono; // threads da amostra aguardando um lock com dono, na amostra ou não
+
+    // Escritos só pela thread que amostra
+    private volatile long amostras, puladas, confirmacoes, falsosPositivos, deadlocks, custoTotalNs;
+
+    /** Monitora a própria JVM. */
+    public MonitorDeadlockJvm() {
+        this(ManagementFactory.getThreadMXBean(), null);
+    }
+
+    private MonitorDeadlockJvm(ThreadMXBean threads, JMXConnector conexao) {
+        this.threads = threads;
+        this.conexao = conexao;
+        ThreadGroup g = Thread.currentThread().getThreadGroup();
+        while (g.getParent() != null)
+            g = g.getParent();
+        raiz = g;
+    }
+
+    /** Monitora outra JVM local, que recebe o agente de gerenciamento local se ainda não tiver. */
+    public static MonitorDeadlockJvm conectar(String pid) throws IOException {
+        VirtualMachine vm;
+        try {
+            vm = VirtualMachine.attach(pid);
+        } catch (AttachNotSupportedException e) {
+            throw new IOException("Não foi possível anexar à JVM " + pid + ": " + e.getMessage(), e);
+        }
+        try {
+            JMXConnector c = JMXConnectorFactory.connect(new JMXServiceURL(vm.startLocalManagementAgent()));
+            return new MonitorDeadlockJvm(ManagementFactory.newPlatformMXBeanProxy(c.getMBeanServerConnection(),
+                    ManagementFactory.THREAD_MXBEAN_NAME, ThreadMXBean.class), c);
+        } finally {
+            vm.detach();
+        }
+    }
+
+    public void setIntervalos(long minMs, long maxMs) {
+        if (minMs <= 0 || maxMs < minMs)
+            throw new IllegalArgumentException("Intervalos inválidos: " + minMs + ".." + maxMs);
+        intervaloMinMs = minMs;
+        intervaloMaxMs = maxMs;
+        intervaloMs = Math.max(minMs, Math.min(maxMs, intervaloMs));
+    }
+
+    /** Chamado na thread do monitor com as threads de cada deadlock novo, com os locks que retêm. */
+    public void setOnDeadlock(Consumer<List<ThreadInfo>> c) {
+        this.onDeadlock = c;
+    }
+
+    public synchronized void iniciar() {
+        if (thread != null)
+            return;
+        thread = new Thread(this::executar, "monitor-deadlock-jvm");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void close() throws IOException {
+        Thread t;
+        synchronized (this) {
+            t = thread;
+            thread = null;
+        }
+        if (t != null) {
+            t.interrupt();
+            try {
+                t.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (conexao != null)
+            conexao.close();
+    }
+
+    private void executar() {
+        while (!Thread.currentThread().isInterrupted()) {
+            long inicio = System.nanoTime();
+            boolean contencao;
+            try {
+                contencao = amostrar();
+            } catch (RuntimeException e) {
+                falha = e; // JVM monitorada encerrada ou conexão perdida
+                return;
+            }
+            custoRecenteNs += (System.nanoTime() - inicio - custoRecenteNs) / 8;
+            long piso = (long) (custoRecenteNs / 1e6 / ORCAMENTO);
+            long proximo = contencao ? intervaloMs / 2 : intervaloMs * 2;
+            intervaloMs = Math.min(intervaloMaxMs, Math.max(Math.max(intervaloMinMs, piso), proximo));
+            try {
+                Thread.sleep(intervaloMs);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    // Uma amostra; devolve se havia contenção (alguma thread aguardando um dono)
+    boolean amostrar() {
+        long inicio = System.nanoTime();
+        try {
+            ThreadInfo[] infos;
+            if (conexao == null) {
+                int k = candidatasLocais();
+                if (k < 2) {
+                    puladas++;
+                    conhecido = NENHUM;
+                    return k > 0;
+                }
+                infos = threads.getThreadInfo(Arrays.copyOf(candidatas, k), 0);
+            } else {
+                infos = threads.getThreadInfo(threads.getAllThreadIds(), 0);
+            }
+            int arestas = montarGrafo(infos);
+            if (arestas < 2 || reduzir(infos) == 0) {
+                if (arestas < 2)
+                    puladas++;
+                conhecido = NENHUM;
+                return aguardandoDono > 0;
+            }
+            if (!Arrays.equals(emDeadlock, conhecido))
+                confirmar();
+            return true;
+        } finally {
+            amostras++;
+            custoTotalNs += System.nanoTime() - inicio;
+        }
+    }
+
+    // Threads BLOCKED num monitor ou estacionadas num lock de j.u.c (o bloqueador do park tem dono)
+    private int candidatasLocais() {
+        int total;
+        while ((total = raiz.enumerate(vivas, true)) == vivas.length)
+            vivas = new Thread[vivas.length * 2];
+        int k = 0;
+        for (int t = 0; t < total; t++) {
+            Thread th = vivas[t];
+            vivas[t] = null; // não prende threads encerradas até a próxima amostra
+            Thread.State estado = th.getState();
+            if (estado == Thread.State.BLOCKED || (estado == Thread.State.WAITING || estado == Thread.State.TIMED_WAITING)
+                    && LockSupport.getBlocker(th) instanceof AbstractOwnableSynchronizer) {
+                if (k == candidatas.length)
+                    candidatas = Arrays.copyOf(candidatas, k * 2);
+                candidatas[k++] = th.getId();
+            }
+        }
+        return k;
+    }
+
+    // Uma aresta por thread que aguarda um lock cujo dono está na amostra; devolve quantas
+    private int montarGrafo(ThreadInfo[] infos) {
+        int n = infos.length;
+        if (dono.length < n) {
+            dono = new int[Math.max(n, dono.length * 2)];
+            veredito = new byte[dono.length];
+        }
+        if (chaves.length < 2 * n) {
+            chaves = new long[Integer.highestOneBit(2 * n) << 1];
+            nos = new int[chaves.length];
+        } else {
+            Arrays.fill(chaves, 0L);
+        }
+        for (int i = 0; i < n; i++) {
+            if (infos[i] != null)
+                inserir(infos[i].getThreadId(), i);
+        }
+        int arestas = 0;
+        aguardandoDono = 0;
+        for (int i = 0; i < n; i++) {
+            long d = infos[i] != null ? infos[i].getLockOwnerId() : -1;
+            if (d >= 0)
+                aguardandoDono++;
+            dono[i] = d >= 0 ? buscar(d) : -1;
+            if (dono[i] >= 0)
+                arestas++;
+        }
+        return arestas;
+    }
+
+    // IDs de thread são positivos; guardados como id + 1 para a chave 0 marcar vaga
+    private void inserir(long id, int no) {
+        int mascara = chaves.length - 1;
+        int h = Long.hashCode(id * 0x9E3779B97F4A7C15L) & mascara;
+        while (chaves[h] != 0)
+            h = (h + 1) & mascara;
+        chaves[h] = id + 1;
+        nos[h] = no;
+    }
+
+    private int buscar(long id) {
+        int mascara = chaves.length - 1;
+        int h = Long.hashCode(id * 0x9E3779B97F4A7C15L) & mascara;
+        while (chaves[h] != 0) {
+            if (chaves[h] == id + 1)
+                return nos[h];
+            h = (h + 1) & mascara;
+        }
+        return -1;
+    }
+
+    private static final byte NOVO = 0, NO_CAMINHO = 1, TERMINA = 2, DEADLOCK = 3;
+
+    // Redução do grafo de espera: com instância única e um pedido por thread, quem aguarda termina se a
+    // cadeia de donos chega a uma thread que não aguarda; se volta a si mesma, ninguém nela (nem quem
+    // espera por ela) termina. Preenche emDeadlock (ordenado) e devolve o tamanho
+    private int reduzir(ThreadInfo[] infos) {
+        int n = infos.length;
+        Arrays.fill(veredito, 0, n, NOVO);
+        int presos = 0;
+        for (int i = 0; i < n; i++) {
+            int j = i;
+            while (veredito[j] == NOVO) {
+                veredito[j] = NO_CAMINHO;
+                if (dono[j] < 0)
+                    break;
+                j = dono[j];
+            }
+            byte v = veredito[j] == NO_CAMINHO ? (dono[j] < 0 ? TERMINA : DEADLOCK) : veredito[j];
+            for (int k = i; veredito[k] == NO_CAMINHO; k = dono[k]) {
+                veredito[k] = v;
+                if (v == DEADLOCK)
+                    presos++;
+                if (dono[k] < 0)
+                    break;
+            }
+        }
+        if (emDeadlock.length != presos)
+            emDeadlock = new long[presos];
+        int k = 0;
+        for (int i = 0; i < n; i++) {
+            if (veredito[i] == DEADLOCK)
+                emDeadlock[k++] = infos[i].getThreadId();
+        }
+        Arrays.sort(emDeadlock);
+        return presos;
+    }
+
+    // Caminho raro: relê os suspeitos num instantâneo consistente, com o que cada um retém, e confirma
+    // com a AnaliseLote
+    private void confirmar() {
+        confirmacoes++;
+        ThreadInfo[] infos = threads.getThreadInfo(emDeadlock, threads.isObjectMonitorUsageSupported(),
+                threads.isSynchronizerUsageSupported());
+        AnaliseLote.Instantaneo inst = paraInstantaneo(infos);
+        int[] presos = new AnaliseLote().analisar(List.of(inst)).processosEmDeadlock(0);
+        if (presos.length == 0) {
+            falsosPositivos++;
+            return;
+        }
+        List<ThreadInfo> deadlocked = new ArrayList<>(presos.length);
+        long[] ids = new long[presos.length];
+        for (int k = 0; k < presos.length; k++) {
+            deadlocked.add(infos[presos[k]]);
+            ids[k] = infos[presos[k]].getThreadId();
+        }
+        Arrays.sort(ids);
+        conhecido = ids;
+        deadlocks++;
+        onDeadlock.accept(deadlocked);
+    }
+
+    /**
+     * Threads como processos e locks aguardados como recursos de instância única, no formato da
+     * AnaliseLote. Um lock cujo dono não está entre as threads conta como disponível: o dono está
+     * rodando e vai soltá-lo.
+     */
+    public static AnaliseLote.Instantaneo paraInstantaneo(ThreadInfo[] infos) {
+        Map<Long, Integer> linha = new HashMap<>();
+        Map<String, Integer> coluna = new HashMap<>();
+        for (int i = 0; i < infos.length; i++) {
+            if (infos[i] == null)
+                continue;
+            linha.put(infos[i].getThreadId(), i);
+            LockInfo lock = infos[i].getLockInfo();
+            if (lock != null && infos[i].getLockOwnerId() >= 0)
+                coluna.putIfAbsent(chave(lock), coluna.size());
+        }
+        int[][] alocacao = new int[infos.length][coluna.size()];
+        int[][] requisicao = new int[infos.length][coluna.size()];
+        int[] disponivel = new int[coluna.size()];
+        Arrays.fill(disponivel, 1);
+        for (int i = 0; i < infos.length; i++) {
+            if (infos[i] == null || infos[i].getLockInfo() == null || infos[i].getLockOwnerId() < 0)
+                continue;
+            int j = coluna.get(chave(infos[i].getLockInfo()));
+            requisicao[i][j] = 1;
+            Integer d = linha.get(infos[i].getLockOwnerId());
+            if (d != null) {
+                alocacao[d][j] = 1;
+                disponivel[j] = 0;
+            }
+        }
+        return new AnaliseLote.Instantaneo(alocacao, requisicao, disponivel);
+    }
+
+    private static String chave(LockInfo lock) {
+        return lock.getClassName() + '@' + Integer.toHexString(lock.getIdentityHashCode());
+    }
+
+    /** Uma linha por thread: o lock que aguarda, o dono dele e o que ela retém. */
+    public static List<String> descrever(List<ThreadInfo> deadlocked) {
+        List<String> linhas = new ArrayList<>();
+        for (ThreadInfo info : deadlocked) {
+            List<String> retidos = new ArrayList<>();
+            for (MonitorInfo m : info.getLockedMonitors())
+                retidos.add(chave(m));
+            for (LockInfo l : info.getLockedSynchronizers())
+                retidos.add(chave(l));
+            linhas.add("\"" + info.getThreadName() + "\" (id " + info.getThreadId() + ", "
+                    + info.getThreadState().name().toLowerCase() + ") aguarda " + info.getLockName() + " retido por \""
+                    + info.getLockOwnerName() + "\" (id " + info.getLockOwnerId() + "), retém " + retidos);
+        }
+        return linhas;
+    }
+
+    public long getAmostras() {
+        return amostras;
+    }
+
+    // Amostras descartadas antes de montar o grafo ou sem arestas suficientes para um ciclo
+    public long getPuladas() {
+        return puladas;
+    }
+
+    public long getConfirmacoes() {
+        return confirmacoes;
+    }
+
+    // Suspeitas da amostra sem pilha que o instantâneo consistente desmentiu
+    public long getFalsosPositivos() {
+        return falsosPositivos;
+    }
+
+    public long getDeadlocks() {
+        return deadlocks;
+    }
+
+    public double getCustoMedioUs() {
+        long n = amostras;
+        return n > 0 ? custoTotalNs / 1e3 / n : 0;
+    }
+
+    public long getIntervaloMs() {
+        return intervaloMs;
+    }
+
+    /** Erro que encerrou a amostragem (JVM monitorada encerrada, conexão perdida), ou null. */
+    public RuntimeException getFalha() {
+        return falha;
+    }
+
+    public static void main(String[] args) throws Exception {
+        String pid = null;
+        long min = 10, max = 1000, duracao = 0;
+        for (int k = 0; k < args.length; k++) {
+            String arg = args[k];
+            if (arg.equals("-min") && k + 1 < args.length)
+                min = Long.parseLong(args[++k]);
+            else if (arg.equals("-max") && k + 1 < args.length)
+                max = Long.parseLong(args[++k]);
+            else if (arg.equals("-duracao") && k + 1 < args.length)
+                duracao = Long.parseLong(args[++k]);
+            else
+                pid = arg;
+        }
+        if (pid == null) {
+            System.err.println("Uso: java MonitorDeadlockJvm pid [-min ms] [-max ms] [-duracao s]");
+            System.err.println("JVMs locais:");
+            for (VirtualMachineDescriptor vm : VirtualMachine.list())
+                System.err.println("  " + vm.id() + " " + vm.displayName());
+            System.exit(2);
+        }
+
+        try (MonitorDeadlockJvm monitor = conectar(pid)) {
+            monitor.setIntervalos(min, max);
+            monitor.setOnDeadlock(deadlocked -> {
+                System.out.println("Deadlock entre " + deadlocked.size() + " threads:");
+                descrever(deadlocked).forEach(l -> System.out.println("  " + l));
+            });
+            monitor.iniciar();
+            long fim = duracao > 0 ? System.currentTimeMillis() + duracao * 1000 : Long.MAX_VALUE;
+            while (System.currentTimeMillis() < fim && monitor.getFalha() == null)
+                Thread.sleep(Math.min(500, Math.max(1, fim - System.currentTimeMillis())));
+            if (monitor.getFalha() != null)
+                System.err.println("Amostragem encerrada: " + monitor.getFalha());
+            System.out.println("Amostras: " + monitor.getAmostras() + " (" + monitor.getPuladas() + " puladas, "
+                    + monitor.getConfirmacoes() + " confirmações, " + monitor.getFalsosPositivos()
+                    + " falsos positivos), deadlocks: " + monitor.getDeadlocks() + ", custo médio "
+                    + String.format("%.1f", monitor.getCustoMedioUs()) + " µs, intervalo final "
+                    + monitor.getIntervaloMs() + " ms");
+        }
+    }
+}
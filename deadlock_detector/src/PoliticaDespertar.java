@@ -0,0 +1,12 @@
+/**
+ * O que acontece com a fila de espera de um recurso quando uma instância é liberada.
+ * TODOS acorda todos os processos da fila, que voltam a disputar com uma nova solicitação
+ * aleatória (comportamento original). FIFO e PRIORIDADE entregam a instância liberada
+ * diretamente a um único processo da fila, o primeiro a chegar ou o de maior prioridade
+ * (empate pela ordem de chegada), e só ele é acordado.
+ */
+public enum PoliticaDespertar {
+    TODOS,
+    FIFO,
+    PRIORIDADE
+}
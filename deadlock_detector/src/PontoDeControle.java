@@ -0,0 +1,271 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Ponto de controle do estado da simulação, para retomar de um estado de disputa interessante sem
+ * repetir as horas de execução que levaram até ele. O arquivo tem leiaute fixo, escrito e lido por
+ * um mapeamento em memória:
+ *
+ *   cabeçalho (64 bytes): mágico, versão, instante, próximo ID de instância, quantidade de cada tabela
+ *   recursos (24 bytes cada): id, total, disponível, posição e tamanho do nome
+ *   processos (48 bytes cada): id, ΔTs, ΔTu, prioridade, reinícios, recurso aguardado (-1: nenhum),
+ *                              posição na fila dele, idade do início e idade da espera (ms)
+ *   instâncias (24 bytes cada): processo, recurso, ID da instância, flags (1: entrega não retirada),
+ *                               idade da concessão (ms)
+ *   máximos (12 bytes cada): processo, recurso, reivindicação máxima
+ *   nomes dos recursos em UTF-8
+ *
+ * Os instantes são guardados como idades em relação ao momento da gravação, então valem em qualquer
+ * relógio na restauração (inclusive o virtual da simulação discreta). Gravado com o sistema parado
+ * (simulação discreta, ou antes de iniciar as threads), o estado é exato; com threads rodando, uma
+ * transição em andamento pode ficar pela metade, e a restauração recalcula os disponíveis a partir
+ * das instâncias retidas.
+ */
+public class PontoDeControle {
+    static final int MAGICO = 0x444C5043; // "DLPC"
+    static final int VERSAO = 1;
+    static final int CABECALHO = 64;
+    static final int TAMANHO_RECURSO = 24;
+    static final int TAMANHO_PROCESSO = 48;
+    static final int TAMANHO_INSTANCIA = 24;
+    static final int TAMANHO_MAXIMO = 12;
+
+    private long instanteMs;
+    private int proximoIdInstancia;
+    private int[] recursos; // id, total, disponível por recurso, em sequência
+    private String[] nomes;
+    private int[] processos; // id, ΔTs, ΔTu, prioridade, reinícios, aguardado, posição na fila
+    private long[] idades; // início e espera por processo
+    private int[] instancias; // processo, recurso, ID, flags
+    private long[] idadesInstancias;
+    private int[] maximos; // processo, recurso, máximo
+    private int disponiveisCorrigidos = 0;
+
+    private PontoDeControle() {
+    }
+
+    /** Grava o estado atual de sistema em arquivo (sobrescrito). */
+    public static void gravar(SistemaOperacional sistema, Path arquivo) throws IOException {
+        long agora = sistema.agoraMs();
+        List<Recurso> recursos = sistema.getRecursos();
+        List<Processo> processos = new ArrayList<>(sistema.getProcessos());
+        Map<Processo, Integer> posicaoNaFila = new HashMap<>();
+        for (Recurso r : recursos) {
+            List<Processo> fila = sistema.getFilaEspera(r);
+            for (int k = 0; k < fila.size(); k++)
+                posicaoNaFila.put(fila.get(k), k);
+        }
+        List<RecursoInstance> instancias = new ArrayList<>();
+        List<Processo> donos = new ArrayList<>();
+        int maximos = 0;
+        for (Processo p : processos) {
+            for (RecursoInstance ri : sistema.getAlocados(p)) {
+                instancias.add(ri);
+                donos.add(p);
+            }
+            maximos += p.getMaximos().size();
+        }
+        byte[][] nomes = new byte[recursos.size()][];
+        int tamanhoNomes = 0;
+        for (int j = 0; j < nomes.length; j++) {
+            nomes[j] = recursos.get(j).getNome().getBytes(StandardCharsets.UTF_8);
+            tamanhoNomes += nomes[j].length;
+        }
+
+        long tamanho = CABECALHO + (long) recursos.size() * TAMANHO_RECURSO + (long) processos.size() * TAMANHO_PROCESSO
+                + (long) instancias.size() * TAMANHO_INSTANCIA + (long) maximos * TAMANHO_MAXIMO + tamanhoNomes;
+        try (FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buf = canal.map(FileChannel.MapMode.READ_WRITE, 0, tamanho);
+            buf.putInt(MAGICO).putInt(VERSAO).putLong(agora - sistema.getOrigemMs())
+                    .putInt(SistemaOperacional.peekNextGlobalInstanceId()).putInt(recursos.size())
+                    .putInt(processos.size()).putInt(instancias.size()).putInt(maximos).putInt(tamanhoNomes);
+            buf.position(CABECALHO);
+            int posicaoNome = 0;
+            for (int j = 0; j < nomes.length; j++) {
+                Recurso r = recursos.get(j);
+                buf.putInt(r.getId()).putInt(r.getTotal()).putInt(r.getDisponivel()).putInt(posicaoNome)
+                        .putInt(nomes[j].length).putInt(0);
+                posicaoNome += nomes[j].length;
+            }
+            for (Processo p : processos) {
+                Recurso aguardado = sistema.getRecursoAguardado(p);
+                buf.putInt(p.getProcessoId()).putInt(p.getDeltaS()).putInt(p.getDeltaU()).putInt(p.getPrioridade())
+                        .putInt(p.getReinicios()).putInt(aguardado != null ? aguardado.getId() : -1)
+                        .putInt(aguardado != null ? posicaoNaFila.getOrDefault(p, Integer.MAX_VALUE) : -1).putInt(0)
+                        .putLong(agora - p.getInicio()).putLong(aguardado != null ? agora - p.getEsperandoDesde() : 0);
+            }
+            for (int k = 0; k < instancias.size(); k++) {
+                RecursoInstance ri = instancias.get(k);
+                Processo p = donos.get(k);
+                buf.putInt(p.getProcessoId()).putInt(ri.getRecurso().getId()).putInt(ri.getInstanceId())
+                        .putInt(sistema.getEntrega(p) == ri ? 1 : 0).putLong(agora - ri.getConcedidoEm());
+            }
+            for (Processo p : processos) {
+                for (Map.Entry<Integer, Integer> m : p.getMaximos().entrySet())
+                    buf.putInt(p.getProcessoId()).putInt(m.getKey()).putInt(m.getValue());
+            }
+            for (byte[] nome : nomes)
+                buf.put(nome);
+            buf.force();
+        }
+    }
+
+    /** Lê um ponto de controle gravado por gravar. */
+    public static PontoDeControle ler(Path arquivo) throws IOException {
+        try (FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.READ)) {
+            long tamanho = canal.size();
+            if (tamanho < CABECALHO)
+                throw new IOException("arquivo curto demais para um ponto de controle");
+            MappedByteBuffer buf = canal.map(FileChannel.MapMode.READ_ONLY, 0, tamanho);
+            if (buf.getInt() != MAGICO)
+                throw new IOException("não é um ponto de controle do simulador");
+            int versao = buf.getInt();
+            if (versao != VERSAO)
+                throw new IOException("versão de ponto de controle não suportada: " + versao);
+            PontoDeControle pc = new PontoDeControle();
+            pc.instanteMs = buf.getLong();
+            pc.proximoIdInstancia = buf.getInt();
+            int m = buf.getInt(), n = buf.getInt(), k = buf.getInt(), x = buf.getInt(), tamanhoNomes = buf.getInt();
+            if (m < 0 || n < 0 || k < 0 || x < 0 || tamanhoNomes < 0 || tamanho != CABECALHO
+                    + (long) m * TAMANHO_RECURSO + (long) n * TAMANHO_PROCESSO + (long) k * TAMANHO_INSTANCIA
+                    + (long) x * TAMANHO_MAXIMO + tamanhoNomes)
+                throw new IOException("ponto de controle truncado ou corrompido");
+            long inicioNomes = tamanho - tamanhoNomes;
+
+            buf.position(CABECALHO);
+            pc.recursos = new int[m * 3];
+            pc.nomes = new String[m];
+            for (int j = 0; j < m; j++) {
+                pc.recursos[j * 3] = buf.getInt();
+                pc.recursos[j * 3 + 1] = buf.getInt();
+                pc.recursos[j * 3 + 2] = buf.getInt();
+                int posicao = buf.getInt(), comprimento = buf.getInt();
+                buf.getInt();
+                byte[] nome = new byte[comprimento];
+                buf.get((int) inicioNomes + posicao, nome);
+                pc.nomes[j] = new String(nome, StandardCharsets.UTF_8);
+            }
+            pc.processos = new int[n * 7];
+            pc.idades = new long[n * 2];
+            for (int i = 0; i < n; i++) {
+                for (int c = 0; c < 7; c++)
+                    pc.processos[i * 7 + c] = buf.getInt();
+                buf.getInt();
+                pc.idades[i * 2] = buf.getLong();
+                pc.idades[i * 2 + 1] = buf.getLong();
+            }
+            pc.instancias = new int[k * 4];
+            pc.idadesInstancias = new long[k];
+            for (int t = 0; t < k; t++) {
+                for (int c = 0; c < 4; c++)
+                    pc.instancias[t * 4 + c] = buf.getInt();
+                pc.idadesInstancias[t] = buf.getLong();
+            }
+            pc.maximos = new int[x * 3];
+            buf.asIntBuffer().get(pc.maximos);
+            return pc;
+        }
+    }
+
+    public int getRecursos() {
+        return nomes.length;
+    }
+
+    public int getProcessos() {
+        return processos.length / 7;
+    }
+
+    public int getInstancias() {
+        return idadesInstancias.length;
+    }
+
+    /** Instante da gravação, em ms desde o início do sistema gravado. */
+    public long getInstanteMs() {
+        return instanteMs;
+    }
+
+    /** Recursos cujo disponível gravado não batia com as instâncias retidas (gravação com threads rodando). */
+    public int getDisponiveisCorrigidos() {
+        return disponiveisCorrigidos;
+    }
+
+    /**
+     * Recria o estado em destino, que não pode ter recursos nem processos e ainda não deve ter sido
+     * iniciado. Devolve os processos criados, na ordem gravada; para continuar a execução, chame
+     * Processo.retomarDoPontoDeControle antes de start(), ou SimulacaoDiscreta.retomarProcesso.
+     */
+    public List<Processo> restaurar(SistemaOperacional destino) {
+        if (!destino.getRecursos().isEmpty() || !destino.getProcessos().isEmpty())
+            throw new IllegalStateException("O sistema de destino precisa estar vazio");
+        SistemaOperacional.garantirProximoInstanceId(proximoIdInstancia);
+        long agora = destino.agoraMs();
+        Map<Integer, Recurso> recursoPorId = new HashMap<>();
+        for (int j = 0; j < nomes.length; j++) {
+            Recurso r = new Recurso(recursos[j * 3], nomes[j], recursos[j * 3 + 1]);
+            if (!destino.adicionarRecurso(r))
+                throw new IllegalStateException("ID de recurso repetido no ponto de controle: " + r.getId());
+            recursoPorId.put(r.getId(), r);
+        }
+        int n = getProcessos();
+        Map<Integer, Processo> processoPorId = new HashMap<>();
+        List<Processo> criados = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            int[] d = Arrays.copyOfRange(processos, i * 7, i * 7 + 7);
+            Processo p = new Processo(d[0], d[1], d[2], destino);
+            p.setPrioridade(d[3]);
+            p.setReinicios(d[4]);
+            p.setInicio(agora - idades[i * 2]);
+            processoPorId.put(d[0], p);
+            criados.add(p);
+        }
+        for (int t = 0; t < maximos.length; t += 3) {
+            Processo p = processoPorId.get(maximos[t]);
+            if (p != null)
+                p.declararMaximo(maximos[t + 1], maximos[t + 2]);
+        }
+        destino.adicionarProcessos(criados); // depois dos máximos, que o banqueiro lê ao adicionar
+        for (int t = 0; t < idadesInstancias.length; t++) {
+            Processo p = processoPorId.get(instancias[t * 4]);
+            Recurso r = recursoPorId.get(instancias[t * 4 + 1]);
+            if (p == null || r == null)
+                throw new IllegalStateException("Instância de processo ou recurso inexistente no ponto de controle");
+            destino.restaurarAlocacao(p, new RecursoInstance(r, instancias[t * 4 + 2]), agora - idadesInstancias[t],
+                    (instancias[t * 4 + 3] & 1) != 0);
+        }
+        // Filas de espera na ordem gravada
+        Integer[] aguardando = new Integer[n];
+        int esperas = 0;
+        for (int i = 0; i < n; i++) {
+            if (processos[i * 7 + 5] >= 0)
+                aguardando[esperas++] = i;
+        }
+        Arrays.sort(aguardando, 0, esperas, Comparator.comparingInt((Integer i) -> processos[i * 7 + 5])
+                .thenComparingInt(i -> processos[i * 7 + 6]));
+        for (int e = 0; e < esperas; e++) {
+            int i = aguardando[e];
+            Recurso r = recursoPorId.get(processos[i * 7 + 5]);
+            if (r == null)
+                throw new IllegalStateException("Espera por recurso inexistente no ponto de controle");
+            Processo p = criados.get(i);
+            destino.restaurarEspera(p, r);
+            p.setEsperandoDesde(agora - idades[i * 2 + 1]);
+        }
+        disponiveisCorrigidos = 0;
+        for (int j = 0; j < nomes.length; j++) {
+            if (recursoPorId.get(recursos[j * 3]).getDisponivel() != recursos[j * 3 + 2])
+                disponiveisCorrigidos++;
+        }
+        return criados;
+    }
+}
@@ -2,27 +2,40 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
-public class Processo extends Thread {
+// Runnable executado numa thread de plataforma ou virtual, conforme o ModoExecucao do sistema.
+// O bloqueio usa ReentrantLock/Condition em vez de synchronized/wait, que prenderiam a thread portadora.
+public class Processo implements Runnable {
     private int id;
     private int deltaS;
     private int deltaU;
     private SistemaOperacional sistema;
-    private List<RecursoInstance> recursosUsados = new ArrayList<>();
-    private java.util.function.Consumer<String> logger;
-    private ConcurrentMap<RecursoInstance, Thread> timers = new ConcurrentHashMap<>();
-    private ConcurrentMap<RecursoInstance, Long> timerStartTimes = new ConcurrentHashMap<>();
-    private Recurso recursoSolicitado = null;
-    private long startTime;
-    private boolean isBlocked = false;
-
-    public Processo(int id, int deltaS, int deltaU, SistemaOperacional sistema,
-            java.util.function.Consumer<String> logger) {
+    private List<RecursoInstance> recursosUsados = new CopyOnWriteArrayList<>();
+    private ConcurrentMap<RecursoInstance, RodaTemporizacao.Temporizador> timers = new ConcurrentHashMap<>();
+    private volatile Recurso recursoSolicitado = null;
+    private volatile long startTime;
+    private volatile boolean isBlocked = false;
+    private final ReentrantLock trava = new ReentrantLock();
+    private final Condition acordar = trava.newCondition();
+    private volatile Thread thread;
+    private volatile int indice = -1; // linha estável nas matrizes do SistemaOperacional
+    private volatile int prioridade = 0; // usada pela PoliticaDespertar.PRIORIDADE; maior é atendido antes
+    // Reivindicação máxima por ID de recurso, para o modo de evitação (banqueiro); sem declaração vale o total
+    private final ConcurrentMap<Integer, Integer> maximos = new ConcurrentHashMap<>();
+    private volatile int reinicios = 0; // vezes em que foi vítima da recuperação de deadlock
+    private boolean reinicioPendente = false; // protegido por trava
+    private volatile long esperandoDesde; // instante, no relógio do sistema, em que entrou na fila atual
+    private volatile boolean retomarEspera = false; // restaurado aguardando: bloqueia sem esperar ΔTs
+
+    public Processo(int id, int deltaS, int deltaU, SistemaOperacional sistema) {
         this.id = id;
         this.deltaS = deltaS;
         this.deltaU = deltaU;
         this.sistema = sistema;
-        this.logger = logger;
         this.startTime = System.currentTimeMillis();
     }
 
@@ -34,167 +47,373 @@ public class Processo extends Thread {
         return "" + id;
     }
 
-    private synchronized boolean isBlocked() {
+    public void start() {
+        thread = sistema.getModoExecucao().novaThread(this, "Processo-" + id);
+        thread.start();
+    }
+
+    public void interrupt() {
+        Thread t = thread;
+        if (t != null)
+            t.interrupt();
+    }
+
+    public void join(long millis) throws InterruptedException {
+        Thread t = thread;
+        if (t != null)
+            t.join(millis);
+    }
+
+    public int getDeltaS() {
+        return deltaS;
+    }
+
+    public int getDeltaU() {
+        return deltaU;
+    }
+
+    public int getPrioridade() {
+        return prioridade;
+    }
+
+    public void setPrioridade(int prioridade) {
+        this.prioridade = prioridade;
+    }
+
+    // Declare antes de adicionar o processo ao sistema
+    public void declararMaximo(int recursoId, int maximo) {
+        maximos.put(recursoId, maximo);
+    }
+
+    public int getMaximo(int recursoId, int padrao) {
+        return maximos.getOrDefault(recursoId, padrao);
+    }
+
+    // Reivindicações declaradas, por ID de recurso
+    java.util.Map<Integer, Integer> getMaximos() {
+        return new java.util.HashMap<>(maximos);
+    }
+
+    public int getReinicios() {
+        return reinicios;
+    }
+
+    // Início da execução atual (reiniciado pela recuperação), no relógio do sistema
+    public long getInicio() {
+        return startTime;
+    }
+
+    long getEsperandoDesde() {
+        return esperandoDesde;
+    }
+
+    void setEsperandoDesde(long instante) {
+        this.esperandoDesde = instante;
+    }
+
+    // A simulação discreta mede o tempo rodando no relógio virtual, não no de parede
+    void setInicio(long inicio) {
+        this.startTime = inicio;
+    }
+
+    // Restauração de ponto de controle, antes de start()
+    void setReinicios(int reinicios) {
+        this.reinicios = reinicios;
+    }
+
+    /**
+     * Depois de restaurar um ponto de controle e antes de start(): as instâncias retidas voltam ao uso
+     * com o ΔTu que faltava (contado desde a concessão, como na roda), uma entrega ainda não retirada
+     * já entra em uso, e um processo que aguardava volta a bloquear assim que a thread começa.
+     */
+    void retomarDoPontoDeControle() {
+        sistema.retirarEntrega(this);
+        long agora = sistema.agoraMs();
+        RodaTemporizacao roda = sistema.getRodaTemporizacao();
+        for (RecursoInstance ri : sistema.getAlocados(this)) {
+            recursosUsados.add(ri);
+            long restante = Math.max(0, deltaU * 1000L - (agora - ri.getConcedidoEm()));
+            timers.put(ri, roda.agendar(restante, () -> expirarRecurso(ri)));
+        }
+        retomarEspera = sistema.getRecursoAguardado(this) != null;
+        if (retomarEspera)
+            setBlocked(true);
+    }
+
+    public int getIndice() {
+        return indice;
+    }
+
+    void setIndice(int indice) {
+        this.indice = indice;
+    }
+
+    private boolean isBlocked() {
         return isBlocked;
     }
 
-    private synchronized void setBlocked(boolean blocked) {
-        this.isBlocked = blocked;
-        if (!blocked) {
-            notifyAll(); // Notifica todos os timers pausados
+    private void setBlocked(boolean blocked) {
+        trava.lock();
+        try {
+            if (this.isBlocked == blocked)
+                return;
+            this.isBlocked = blocked;
+            RodaTemporizacao roda = sistema.getRodaTemporizacao();
+            for (RodaTemporizacao.Temporizador t : timers.values()) {
+                if (blocked)
+                    roda.pausar(t); // ΔTu não expira enquanto o processo está bloqueado
+                else
+                    roda.retomar(t);
+            }
+        } finally {
+            trava.unlock();
         }
     }
 
     public String status() {
-        synchronized (recursosUsados) {
-            StringBuilder status = new StringBuilder("Processo " + id);
-            if (recursoSolicitado != null || sistema.getRecursoAguardado(this) != null) {
-                Recurso aguardado = recursoSolicitado != null ? recursoSolicitado : sistema.getRecursoAguardado(this);
-                status.append(" [bloqueado, aguardando ").append(aguardado.getNome());
-                if (!recursosUsados.isEmpty()) {
-                    status.append(", usando ");
-                    status.append(String.join(", ", recursosUsados.stream()
-                            .map(r -> r.getRecurso().getNome() + " ("
-                                    + recursosUsados.stream().filter(x -> x.getRecurso() == r.getRecurso()).count()
-                                    + ")")
-                            .distinct()
-                            .toList()));
-                }
-                status.append("]");
-            } else if (recursosUsados.isEmpty()) {
-                status.append(" [Bloqueado]");
-            } else {
-                status.append(" [rodando, usando ");
+        StringBuilder status = new StringBuilder("Processo " + id);
+        if (recursoSolicitado != null || sistema.getRecursoAguardado(this) != null) {
+            Recurso aguardado = recursoSolicitado != null ? recursoSolicitado : sistema.getRecursoAguardado(this);
+            status.append(" [bloqueado, aguardando ").append(aguardado.getNome());
+            if (!recursosUsados.isEmpty()) {
+                status.append(", usando ");
                 status.append(String.join(", ", recursosUsados.stream()
                         .map(r -> r.getRecurso().getNome() + " ("
-                                + recursosUsados.stream().filter(x -> x.getRecurso() == r.getRecurso()).count() + ")")
+                                + recursosUsados.stream().filter(x -> x.getRecurso() == r.getRecurso()).count()
+                                + ")")
                         .distinct()
                         .toList()));
-                status.append("]");
             }
-            return status.toString();
+            status.append("]");
+        } else if (recursosUsados.isEmpty()) {
+            status.append(" [Bloqueado]");
+        } else {
+            status.append(" [rodando, usando ");
+            status.append(String.join(", ", recursosUsados.stream()
+                    .map(r -> r.getRecurso().getNome() + " ("
+                            + recursosUsados.stream().filter(x -> x.getRecurso() == r.getRecurso()).count() + ")")
+                    .distinct()
+                    .toList()));
+            status.append("]");
         }
+        return status.toString();
     }
 
     public List<RecursoInstance> getRecursosUsados() {
-        synchronized (recursosUsados) {
-            return new ArrayList<>(recursosUsados);
-        }
+        return new ArrayList<>(recursosUsados);
     }
 
     public Recurso getRecursoSolicitado() {
-        synchronized (this) {
-            return recursoSolicitado;
-        }
+        return recursoSolicitado;
+    }
+
+    // Registro de uso sem thread nem timer, para motores que controlam o tempo por conta própria
+    void registrarUso(RecursoInstance instance) {
+        recursosUsados.add(instance);
+    }
+
+    boolean encerrarUso(RecursoInstance instance) {
+        return recursosUsados.remove(instance);
     }
 
     private void startTimerForRecurso(RecursoInstance instance) {
-        timerStartTimes.put(instance, System.currentTimeMillis());
-        Thread timer = new Thread(() -> {
-            try {
-                long startTime = timerStartTimes.get(instance);
-                long elapsed = 0;
-                while (!Thread.currentThread().isInterrupted() && elapsed < deltaU * 1000L) {
-                    Thread.sleep(100); // Verifica a cada 100ms
-                    elapsed = System.currentTimeMillis() - startTime;
-                    synchronized (this) { // Sincroniza com o estado do processo
-                        while (isBlocked() && !Thread.currentThread().isInterrupted()) { // Pausa se bloqueado
-                            wait(); // Aguarda notificação para retomar
-                        }
-                    }
-                }
-                synchronized (recursosUsados) {
-                    if (recursosUsados.remove(instance)) {
-                        sistema.liberarRecurso(this, instance); // Libera só se ainda estiver na lista
-                        timers.remove(instance);
-                        timerStartTimes.remove(instance);
-                    }
-                }
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt(); // Restaura o estado interrompido
-            }
-        });
+        RodaTemporizacao roda = sistema.getRodaTemporizacao();
+        RodaTemporizacao.Temporizador timer = roda.agendar(deltaU * 1000L, () -> expirarRecurso(instance));
         timers.put(instance, timer);
-        timer.start();
+        if (isBlocked())
+            roda.pausar(timer);
+    }
+
+    // Com entrega direta, a instância liberada já chega alocada a este processo quando ele é acordado
+    private boolean receberEntrega() {
+        RecursoInstance entregue = sistema.retirarEntrega(this);
+        if (entregue == null)
+            return false;
+        recursosUsados.add(entregue);
+        startTimerForRecurso(entregue);
+        return true;
+    }
+
+    /**
+     * Recuperação: desfaz o trabalho em andamento (instâncias em uso e seus ΔTu) para o processo
+     * recomeçar do zero. As instâncias continuam alocadas no SistemaOperacional, que as libera.
+     */
+    void prepararReinicio(long agora) {
+        trava.lock();
+        try {
+            RodaTemporizacao roda = sistema.getRodaTemporizacao();
+            timers.values().forEach(roda::cancelar);
+            timers.clear();
+            recursosUsados.clear();
+            recursoSolicitado = null;
+            reinicios++;
+            startTime = agora;
+            reinicioPendente = true;
+        } finally {
+            trava.unlock();
+        }
+    }
+
+    // Consome o pedido de reinício; quem acorda o processo chama isto antes de continuar a espera
+    boolean consumirReinicio() {
+        trava.lock();
+        try {
+            boolean pendente = reinicioPendente;
+            reinicioPendente = false;
+            return pendente;
+        } finally {
+            trava.unlock();
+        }
+    }
+
+    /** Preempção: a instância deixa de estar em uso por este processo e o ΔTu dela é cancelado. */
+    boolean perderInstancia(RecursoInstance instance) {
+        RodaTemporizacao.Temporizador timer = timers.remove(instance);
+        if (timer != null)
+            sistema.getRodaTemporizacao().cancelar(timer);
+        return recursosUsados.remove(instance);
+    }
+
+    private void expirarRecurso(RecursoInstance instance) {
+        if (recursosUsados.remove(instance)) {
+            emitirExpiracao(this, instance);
+            sistema.liberarRecurso(this, instance); // Libera só se ainda estiver na lista
+        }
+        timers.remove(instance);
     }
-    
 
     @Override
     public void run() {
         long lastSolicitationTime = System.currentTimeMillis();
-        while (!isInterrupted()) {
+        if (retomarEspera) {
+            retomarEspera = false;
+            lastSolicitationTime -= deltaS * 1000L; // a primeira volta já cai na espera pelo recurso
+        }
+        while (!Thread.currentThread().isInterrupted()) {
+            trava.lock();
             try {
-                synchronized (this) {
-                    long currentTime = System.currentTimeMillis();
-                    long elapsedSinceLastSolicitation = currentTime - lastSolicitationTime;
-
-                    if (elapsedSinceLastSolicitation >= deltaS * 1000L) {
-                        if (recursoSolicitado == null && sistema.getRecursoAguardado(this) == null) {
-                            logger.accept("Processo " + id + " solicitando recurso às "
-                                    + (currentTime - startTime) / 1000 + "s...");
-                            RecursoInstance instance = new RecursoInstance(null,
-                                    SistemaOperacional.getNextGlobalInstanceId());
-                            recursoSolicitado = sistema.solicitarRecurso(this, instance);
-                            if (recursoSolicitado != null) {
-                                synchronized (recursosUsados) {
-                                    instance.setRecurso(recursoSolicitado);
-                                    recursosUsados.add(instance);
-                                    startTimerForRecurso(instance);
+                if (consumirReinicio()) // reiniciado pela recuperação fora de uma espera
+                    lastSolicitationTime = System.currentTimeMillis();
+                // Entrega feita entre duas voltas (o sinal não achou ninguém esperando): entra em uso já
+                receberEntrega();
+                long currentTime = System.currentTimeMillis();
+                long elapsedSinceLastSolicitation = currentTime - lastSolicitationTime;
+
+                if (elapsedSinceLastSolicitation >= deltaS * 1000L) {
+                    if (recursoSolicitado == null && sistema.getRecursoAguardado(this) == null) {
+                        if (receberEntrega()) { // a fila foi atendida depois da checagem do início da volta
+                            lastSolicitationTime = currentTime;
+                            continue;
+                        }
+                        sistema.registrarEvento(TipoEvento.SOLICITACAO, this, null);
+                        RecursoInstance instance = new RecursoInstance(null,
+                                SistemaOperacional.getNextGlobalInstanceId());
+                        recursoSolicitado = sistema.solicitarRecurso(this, instance);
+                        if (recursoSolicitado != null) {
+                            instance.setRecurso(recursoSolicitado);
+                            recursosUsados.add(instance);
+                            startTimerForRecurso(instance);
+                            recursoSolicitado = null;
+                            setBlocked(false); // Processo ativo
+                        } else {
+                            if (sistema.getRecursoAguardado(this) != null) {
+                                setBlocked(true); // Marca como bloqueado
+                                aguardarDespertar();
+                                setBlocked(false); // Desmarca ao acordar
+                                if (consumirReinicio()) {
+                                    lastSolicitationTime = System.currentTimeMillis();
+                                    continue; // recomeça o ciclo: próxima solicitação só daqui a ΔTs
                                 }
-                                recursoSolicitado = null;
-                                setBlocked(false); // Processo ativo
-                            } else {
-                                if (sistema.getRecursoAguardado(this) != null) {
-                                    setBlocked(true); // Marca como bloqueado
-                                    wait();
-                                    setBlocked(false); // Desmarca ao acordar
-                                    recursoSolicitado = sistema.solicitarRecurso(this,
-                                            new RecursoInstance(null, SistemaOperacional.getNextGlobalInstanceId()));
+                                if (!receberEntrega()) {
+                                    // Instância nova: é ela que fica registrada em alocados se houver concessão
+                                    RecursoInstance nova = new RecursoInstance(null,
+                                            SistemaOperacional.getNextGlobalInstanceId());
+                                    recursoSolicitado = sistema.solicitarRecurso(this, nova);
                                     if (recursoSolicitado != null) {
-                                        synchronized (recursosUsados) {
-                                            instance.setRecurso(recursoSolicitado);
-                                            recursosUsados.add(instance);
-                                            startTimerForRecurso(instance);
-                                        }
+                                        recursosUsados.add(nova);
+                                        startTimerForRecurso(nova);
                                         recursoSolicitado = null;
                                     }
-                                } else {
-                                    logger.accept("Processo " + id
-                                            + " não obteve recurso, tentando novamente no próximo ciclo às "
-                                            + (currentTime - startTime) / 1000 + "s");
                                 }
+                            } else if (!receberEntrega()) { // entregue antes de chegar a bloquear
+                                sistema.registrarEvento(TipoEvento.SEM_RECURSO, this, null);
                             }
-                        } else {
-                            setBlocked(true); // Bloqueia se estiver aguardando recursoSolicitado
-                            wait();
-                            setBlocked(false); // Desbloqueia ao acordar
                         }
-                        lastSolicitationTime = currentTime;
                     } else {
-                        long waitTime = Math.max(0, (deltaS * 1000L) - elapsedSinceLastSolicitation);
-                        wait(waitTime);
+                        setBlocked(true); // Bloqueia se estiver aguardando recursoSolicitado
+                        aguardarDespertar();
+                        setBlocked(false); // Desbloqueia ao acordar
+                        if (consumirReinicio()) {
+                            lastSolicitationTime = System.currentTimeMillis();
+                            continue;
+                        }
+                        receberEntrega();
                     }
+                    lastSolicitationTime = currentTime;
+                } else {
+                    long waitTime = Math.max(0, (deltaS * 1000L) - elapsedSinceLastSolicitation);
+                    acordar.await(waitTime, TimeUnit.MILLISECONDS);
                 }
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
                 break;
+            } finally {
+                trava.unlock();
             }
         }
         // Cleanup
-        timers.values().forEach(Thread::interrupt); // Interrompe todos os timers ao finalizar
-        synchronized (recursosUsados) {
-            for (RecursoInstance ri : new ArrayList<>(recursosUsados)) {
+        RodaTemporizacao roda = sistema.getRodaTemporizacao();
+        timers.values().forEach(roda::cancelar); // Cancela todos os timers ao finalizar
+        timers.clear();
+        for (RecursoInstance ri : recursosUsados) {
+            if (recursosUsados.remove(ri))
                 sistema.liberarRecurso(this, ri);
-            }
-            recursosUsados.clear();
         }
-        timerStartTimes.clear();
         sistema.limparAguardando(this);
+        RecursoInstance entregue = sistema.retirarEntrega(this); // entregue depois do último despertar
+        if (entregue != null)
+            sistema.liberarRecurso(this, entregue);
+    }
+
+    // Espera até ser acordado, com a trava já tomada; a duração vai para o evento Bloqueio do JFR
+    private void aguardarDespertar() throws InterruptedException {
+        EventosJfr.Bloqueio evento = new EventosJfr.Bloqueio();
+        if (evento.isEnabled()) {
+            Recurso aguardado = sistema.getRecursoAguardado(this);
+            evento.processo = id;
+            if (aguardado != null) {
+                evento.recurso = aguardado.getId();
+                evento.nomeRecurso = aguardado.getNome();
+            }
+        }
+        evento.begin();
+        try {
+            acordar.await();
+        } finally {
+            evento.commit();
+        }
+    }
+
+    // Também usado pela SimulacaoDiscreta, que controla o ΔTu por conta própria
+    static void emitirExpiracao(Processo p, RecursoInstance instance) {
+        EventosJfr.ExpiracaoUso evento = new EventosJfr.ExpiracaoUso();
+        if (evento.shouldCommit()) {
+            Recurso r = instance.getRecurso();
+            evento.processo = p.id;
+            evento.recurso = r.getId();
+            evento.nomeRecurso = r.getNome();
+            evento.instancia = instance.getInstanceId();
+            evento.deltaU = p.deltaU;
+            evento.commit();
+        }
     }
 
     public void notifyProcess() {
-        synchronized (this) {
-            notify();
+        trava.lock();
+        try {
+            acordar.signal();
+        } finally {
+            trava.unlock();
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,140 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Recuperação automática de deadlock. A cada conjunto em deadlock detectado, escolhe a vítima de
+ * menor custo e age sobre ela até a verificação seguinte não acusar mais deadlock:
+ * REINICIAR desfaz o trabalho da vítima, devolve tudo o que ela retém e a faz recomeçar;
+ * PREEMPTAR retira dela só uma instância que outro processo do conjunto aguarda (e cai para o
+ * reinício se ela não retém nada útil ao conjunto).
+ *
+ * Custo = pesoUnidades x instâncias retidas + pesoTempo x segundos rodando desde o último início
+ *       + pesoReinicios x reinícios anteriores. O último termo evita que o mesmo processo seja
+ * sempre a vítima. Registra tempo de recuperação e trabalho perdido (tempo desde a concessão
+ * pelas instâncias desfeitas), para comparar políticas.
+ */
+public class RecuperadorDeadlock {
+    public enum Acao {
+        REINICIAR,
+        PREEMPTAR
+    }
+
+    private final Acao acao;
+    private final double pesoUnidades;
+    private final double pesoTempo;
+    private final double pesoReinicios;
+    private final LongAdder recuperacoes = new LongAdder();
+    private final LongAdder vitimas = new LongAdder();
+    private final LongAdder preempcoes = new LongAdder();
+    private final LongAdder tempoRecuperacaoNs = new LongAdder();
+    private final LongAdder trabalhoPerdidoMs = new LongAdder();
+    private final LongAdder instanciasDesfeitas = new LongAdder();
+
+    public RecuperadorDeadlock(Acao acao) {
+        this(acao, 1.0, 0.1, 5.0);
+    }
+
+    public RecuperadorDeadlock(Acao acao, double pesoUnidades, double pesoTempo, double pesoReinicios) {
+        this.acao = acao;
+        this.pesoUnidades = pesoUnidades;
+        this.pesoTempo = pesoTempo;
+        this.pesoReinicios = pesoReinicios;
+    }
+
+    public Acao getAcao() {
+        return acao;
+    }
+
+    public double custo(SistemaOperacional sistema, Processo p, long agora) {
+        return pesoUnidades * sistema.getAlocados(p).size()
+                + pesoTempo * Math.max(0, agora - p.getInicio()) / 1000.0
+                + pesoReinicios * p.getReinicios();
+    }
+
+    // Chamado pelo SistemaOperacional logo após detectar o conjunto; devolve o que sobrar em deadlock
+    List<Processo> recuperar(SistemaOperacional sistema, List<Processo> deadlocked) {
+        long inicio = System.nanoTime();
+        recuperacoes.increment();
+        // Cada ação devolve ao menos uma instância ou tira um processo do conjunto, então isso basta
+        int limite = deadlocked.size();
+        for (Processo p : deadlocked)
+            limite += sistema.getAlocados(p).size();
+        List<Processo> atual = deadlocked;
+        while (!atual.isEmpty() && limite-- > 0) {
+            long agora = sistema.agoraMs();
+            Processo vitima = atual.get(0);
+            double menor = Double.MAX_VALUE;
+            for (Processo p : atual) {
+                double c = custo(sistema, p, agora);
+                if (c < menor) {
+                    menor = c;
+                    vitima = p;
+                }
+            }
+            vitimas.increment();
+            RecursoInstance preemptada = acao == Acao.PREEMPTAR ? escolherInstancia(sistema, vitima, atual) : null;
+            if (preemptada != null) {
+                preempcoes.increment();
+                registrarPerda(preemptada, agora);
+                sistema.preemptarInstancia(vitima, preemptada);
+            } else {
+                for (RecursoInstance ri : sistema.getAlocados(vitima))
+                    registrarPerda(ri, agora);
+                sistema.reiniciarProcesso(vitima);
+            }
+            // O conjunto anterior inteiro volta à região: a ação pode ter desfeito o deadlock de quem
+            // não foi tocado por ela
+            sistema.reavaliar(deadlocked);
+            atual = sistema.detectarDeadlock();
+        }
+        tempoRecuperacaoNs.add(System.nanoTime() - inicio);
+        return atual;
+    }
+
+    // Instância da vítima de um recurso que outro processo do conjunto aguarda
+    private static RecursoInstance escolherInstancia(SistemaOperacional sistema, Processo vitima,
+            List<Processo> deadlocked) {
+        List<Recurso> aguardados = new ArrayList<>();
+        for (Processo p : deadlocked) {
+            Recurso r = sistema.getRecursoAguardado(p);
+            if (p != vitima && r != null)
+                aguardados.add(r);
+        }
+        for (RecursoInstance ri : sistema.getAlocados(vitima)) {
+            if (aguardados.contains(ri.getRecurso()))
+                return ri;
+        }
+        return null;
+    }
+
+    private void registrarPerda(RecursoInstance ri, long agora) {
+        instanciasDesfeitas.increment();
+        trabalhoPerdidoMs.add(Math.max(0, agora - ri.getConcedidoEm()));
+    }
+
+    public long getRecuperacoes() {
+        return recuperacoes.sum();
+    }
+
+    public long getVitimas() {
+        return vitimas.sum();
+    }
+
+    public long getPreempcoes() {
+        return preempcoes.sum();
+    }
+
+    public long getTempoRecuperacaoNs() {
+        return tempoRecuperacaoNs.sum();
+    }
+
+    // Tempo desde a concessão das instâncias desfeitas: vazão perdida com a recuperação
+    public long getTrabalhoPerdidoMs() {
+        return trabalhoPerdidoMs.sum();
+    }
+
+    public long getInstanciasDesfeitas() {
+        return instanciasDesfeitas.sum();
+    }
+}
@@ -1,37 +1,46 @@
+import java.util.concurrent.atomic.AtomicInteger;
+
 public class Recurso {
     private int id;
     private String nome;
     private int total;
-    private int disponivel;
+    private final AtomicInteger disponivel; // alterado por CAS, sem lock
+    private int indice = -1; // posição estável nas matrizes do SistemaOperacional
 
     public Recurso(int id, String nome, int total) {
         this.id = id;
         this.nome = nome;
         this.total = total;
-        this.disponivel = total;
+        this.disponivel = new AtomicInteger(total);
     }
 
     public boolean alocar() {
-        if (disponivel > 0) {
-            disponivel--;
-            return true;
+        while (true) {
+            int atual = disponivel.get();
+            if (atual <= 0)
+                return false;
+            if (disponivel.compareAndSet(atual, atual - 1))
+                return true;
         }
-        return false;
     }
 
     public void liberar() {
-        if (disponivel < total) {
-            disponivel++;
+        while (true) {
+            int atual = disponivel.get();
+            if (atual >= total || disponivel.compareAndSet(atual, atual + 1))
+                return;
         }
     }
 
     public int getId() { return id; }
     public String getNome() { return nome; }
-    public int getDisponivel() { return disponivel; }
+    public int getDisponivel() { return disponivel.get(); }
     public int getTotal() { return total; }
+    public int getIndice() { return indice; }
+    void setIndice(int indice) { this.indice = indice; }
 
     @Override
     public String toString() {
-        return nome + " (ID: " + id + ", " + disponivel + "/" + total + ")";
+        return nome + " (ID: " + id + ", " + disponivel.get() + "/" + total + ")";
     }
 }
\ No newline at end of file
@@ -3,6 +3,7 @@ import java.util.Objects;
 public class RecursoInstance {
     private Recurso recurso;
     private int instanceId;
+    private volatile long concedidoEm; // instante da concessão no relógio do sistema, para medir trabalho perdido
 
     public RecursoInstance(Recurso recurso, int instanceId) {
         this.recurso = recurso;
@@ -17,6 +18,18 @@ public class RecursoInstance {
         return recurso;
     }
 
+    public int getInstanceId() {
+        return instanceId;
+    }
+
+    public long getConcedidoEm() {
+        return concedidoEm;
+    }
+
+    void setConcedidoEm(long instante) {
+        this.concedidoEm = instante;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o)
@@ -0,0 +1,584 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Leitor e escritor mínimo de class files para o TransformadorLocks, sem biblioteca de bytecode: acrescenta
+ * constantes ao pool e insere trechos de bytecode na entrada de um método e antes ou depois de instruções,
+ * realocando desvios, switches, tabela de exceções, StackMapTable e tabelas de linhas e variáveis. Os
+ * trechos não desviam e devolvem a pilha como a encontraram, usando no máximo PILHA_EXTRA posições a mais.
+ * Campos, atributos e métodos sem trechos são copiados byte a byte. Um método com anotações de tipo no
+ * código, atributo de código desconhecido ou desvio que deixaria de caber em 16 bits fica como está.
+ * Também reescreve métodos synchronized com monitorenter e monitorexit explícitos (explicitarSincronizados).
+ */
+final class ReescritorClasse {
+    static final int PILHA_EXTRA = 4;
+    private static final int ACC_STATIC = 0x0008, ACC_SYNCHRONIZED = 0x0020;
+    private static final int ALOAD_0 = 0x2a, ASTORE = 0x3a, ASTORE_0 = 0x4b, LDC_W = 0x13, ATHROW = 0xbf;
+    private static final int MONITORENTER = 0xc2, MONITOREXIT = 0xc3, WIDE = 0xc4;
+
+    private static final byte[] TAMANHO = new byte[256]; // instruções de tamanho fixo
+    static {
+        Arrays.fill(TAMANHO, (byte) 1);
+        for (int op : new int[] { 0x10, 0x12, 0xa9, 0xbc }) // bipush, ldc, ret, newarray
+            TAMANHO[op] = 2;
+        for (int op = 0x15; op <= 0x19; op++) // iload..aload
+            TAMANHO[op] = 2;
+        for (int op = 0x36; op <= 0x3a; op++) // istore..astore
+            TAMANHO[op] = 2;
+        for (int op = 0x99; op <= 0xa8; op++) // desvios de 16 bits, goto e jsr
+            TAMANHO[op] = 3;
+        for (int op = 0xb2; op <= 0xb8; op++) // campos, invokevirtual..invokestatic
+            TAMANHO[op] = 3;
+        for (int op : new int[] { 0x11, 0x13, 0x14, 0x84, 0xbb, 0xbd, 0xc0, 0xc1, 0xc6, 0xc7 })
+            TAMANHO[op] = 3;
+        TAMANHO[0xc5] = 4; // multianewarray
+        for (int op : new int[] { 0xb9, 0xba, 0xc8, 0xc9 }) // invokeinterface, invokedynamic, goto_w, jsr_w
+            TAMANHO[op] = 5;
+    }
+
+    /** Trechos a inserir num método, pelos offsets do bytecode original. */
+    static final class Trechos {
+        byte[] entrada; // antes da primeira instrução; um desvio para o offset 0 não o repete
+        final Map<Integer, byte[]> antes = new HashMap<>(); // todo caminho que chega à instrução passa por ele
+        final Map<Integer, byte[]> depois = new HashMap<>();
+        byte[] tratador; // depois da última instrução: trata qualquer exceção lançada no código original
+        byte[] quadroTratador; // locais e pilha do quadro da StackMapTable na entrada do tratador
+
+        boolean vazio() {
+            return entrada == null && antes.isEmpty() && depois.isEmpty();
+        }
+    }
+
+    interface Politica {
+        /** Preenche os trechos do método; codigo é o bytecode original, percorrido com proxima. */
+        void instrumentar(String nome, String descritor, byte[] codigo, Trechos trechos);
+    }
+
+    private final byte[] original;
+    private final int numConstantes;
+    private final String[] utf8; // por índice do pool; null nas outras constantes
+    private final int fimPool;
+    private final String nome;
+    private final ByteArrayOutputStream acrescentadas = new ByteArrayOutputStream();
+    private final Map<String, Integer> indices = new HashMap<>();
+    private int proximaConstante;
+
+    ReescritorClasse(byte[] classe) {
+        original = classe;
+        numConstantes = u2(8);
+        utf8 = new String[numConstantes];
+        int[] nomeClasse = new int[numConstantes];
+        int p = 10;
+        for (int i = 1; i < numConstantes; i++) {
+            int tag = classe[p++] & 0xFF;
+            switch (tag) {
+                case 1 -> {
+                    int n = u2(p);
+                    utf8[i] = decodificar(p, n + 2);
+                    p += n + 2;
+                }
+                case 7 -> {
+                    nomeClasse[i] = u2(p);
+                    p += 2;
+                }
+                case 8, 16, 19, 20 -> p += 2;
+                case 15 -> p += 3;
+                case 3, 4, 9, 10, 11, 12, 17, 18 -> p += 4;
+                case 5, 6 -> {
+                    p += 8;
+                    i++; // long e double ocupam duas entradas
+                }
+                default -> throw new IllegalArgumentException("Constante desconhecida no pool: " + tag);
+            }
+        }
+        fimPool = p;
+        nome = utf8[nomeClasse[u2(p + 2)]];
+        proximaConstante = numConstantes;
+    }
+
+    String getNome() {
+        return nome;
+    }
+
+    /** Índice de um Methodref acrescentado ao pool (reaproveitado entre chamadas). */
+    int metodo(String classe, String nomeMetodo, String descritor) {
+        String chave = "M" + classe + "." + nomeMetodo + descritor;
+        Integer i = indices.get(chave);
+        if (i != null)
+            return i;
+        int c = constante("C" + classe, 7, utf8(classe));
+        int nt = constante("T" + nomeMetodo + descritor, 12, utf8(nomeMetodo), utf8(descritor));
+        return constante(chave, 10, c, nt);
+    }
+
+    private int utf8(String s) {
+        Integer i = indices.get("U" + s);
+        if (i != null)
+            return i;
+        try {
+            DataOutputStream out = new DataOutputStream(acrescentadas);
+            out.writeByte(1);
+            out.writeUTF(s);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return registrar("U" + s);
+    }
+
+    private int constante(String chave, int tag, int... referencias) {
+        Integer i = indices.get(chave);
+        if (i != null)
+            return i;
+        acrescentadas.write(tag);
+        for (int r : referencias) {
+            acrescentadas.write(r >>> 8);
+            acrescentadas.write(r);
+        }
+        return registrar(chave);
+    }
+
+    private int registrar(String chave) {
+        if (proximaConstante >= 0xFFFF)
+            throw new IllegalStateException("Pool de constantes cheio em " + nome);
+        indices.put(chave, proximaConstante);
+        return proximaConstante++;
+    }
+
+    /** A classe com os trechos que a política pediu, ou null se nenhum método mudou. */
+    byte[] reescrever(Politica politica) throws IOException {
+        return reescreverMetodos(politica);
+    }
+
+    /**
+     * A classe com cada método synchronized compilado como javac compila um bloco synchronized, ou null se
+     * não há nenhum: sem a flag, com monitorenter na entrada, monitorexit antes de cada retorno e um tratador
+     * de qualquer exceção que solta o monitor e relança. O monitor é recarregado de this (ou da constante da
+     * classe) em cada ponto, então fica como está o método que reatribui o local 0 ou usa jsr.
+     */
+    byte[] explicitarSincronizados() throws IOException {
+        return reescreverMetodos(null);
+    }
+
+    // Sem política, só os métodos synchronized mudam
+    private byte[] reescreverMetodos(Politica politica) throws IOException {
+        int p = fimPool + 6; // acesso, esta classe, superclasse
+        p += 2 + 2 * u2(p); // interfaces
+        int numCampos = u2(p);
+        p += 2;
+        for (int i = 0; i < numCampos; i++)
+            p = pularAtributos(p + 6);
+        int inicioMetodos = p;
+        ByteArrayOutputStream metodos = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(metodos);
+        boolean alterada = false;
+        int numMetodos = u2(p);
+        p += 2;
+        out.writeShort(numMetodos);
+        for (int i = 0; i < numMetodos; i++) {
+            int acesso = u2(p);
+            String nomeMetodo = utf8[u2(p + 2)], descritor = utf8[u2(p + 4)];
+            int numAtributos = u2(p + 6);
+            int cabecalho = p;
+            p += 8;
+            ByteArrayOutputStream atributos = new ByteArrayOutputStream();
+            DataOutputStream a = new DataOutputStream(atributos);
+            boolean explicitado = false;
+            for (int k = 0; k < numAtributos; k++) {
+                int nomeAtributo = u2(p), tamanho = u4(p + 2);
+                byte[] novo = null;
+                if ("Code".equals(utf8[nomeAtributo])) {
+                    if (politica != null)
+                        novo = reescreverCodigo(p + 6, nomeMetodo, descritor, politica);
+                    else if ((acesso & ACC_SYNCHRONIZED) != 0)
+                        explicitado = (novo = explicitarMonitor(p + 6, (acesso & ACC_STATIC) != 0)) != null;
+                }
+                if (novo == null) {
+                    a.write(original, p, 6 + tamanho);
+                } else {
+                    a.writeShort(nomeAtributo);
+                    a.writeInt(novo.length);
+                    a.write(novo);
+                    alterada = true;
+                }
+                p += 6 + tamanho;
+            }
+            out.writeShort(explicitado ? acesso & ~ACC_SYNCHRONIZED : acesso);
+            out.write(original, cabecalho + 2, 6);
+            atributos.writeTo(out);
+        }
+        if (!alterada)
+            return null;
+        ByteArrayOutputStream classe = new ByteArrayOutputStream(original.length + acrescentadas.size() + 256);
+        classe.write(original, 0, 8);
+        classe.write(proximaConstante >>> 8);
+        classe.write(proximaConstante);
+        classe.write(original, 10, fimPool - 10);
+        acrescentadas.writeTo(classe);
+        classe.write(original, fimPool, inicioMetodos - fimPool);
+        metodos.writeTo(classe);
+        classe.write(original, p, original.length - p);
+        return classe.toByteArray();
+    }
+
+    private int pularAtributos(int p) {
+        int n = u2(p);
+        p += 2;
+        for (int i = 0; i < n; i++)
+            p += 6 + u4(p + 2);
+        return p;
+    }
+
+    /** Offset da instrução seguinte à de offset o. */
+    static int proxima(byte[] codigo, int o) {
+        int op = codigo[o] & 0xFF;
+        if (op == 0xc4) // wide
+            return o + ((codigo[o + 1] & 0xFF) == 0x84 ? 6 : 4);
+        if (op == 0xaa || op == 0xab) {
+            int q = o + 1 + preenchimento(o);
+            return op == 0xaa ? q + 12 + 4 * (s4(codigo, q + 8) - s4(codigo, q + 4) + 1) : q + 8 + 8 * s4(codigo, q + 4);
+        }
+        return o + TAMANHO[op];
+    }
+
+    // Bytes de alinhamento depois do opcode de um switch na posição o
+    private static int preenchimento(int o) {
+        return 3 - (o & 3);
+    }
+
+    private static boolean desvio16(int op) {
+        return op >= 0x99 && op <= 0xa8 || op == 0xc6 || op == 0xc7;
+    }
+
+    private byte[] reescreverCodigo(int inicio, String nomeMetodo, String descritor, Politica politica)
+            throws IOException {
+        int comprimento = u4(inicio + 4);
+        byte[] codigo = Arrays.copyOfRange(original, inicio + 8, inicio + 8 + comprimento);
+        Trechos trechos = new Trechos();
+        politica.instrumentar(nomeMetodo, descritor, codigo, trechos);
+        if (trechos.vazio())
+            return null;
+        return montarCodigo(inicio, codigo, trechos);
+    }
+
+    private byte[] explicitarMonitor(int inicio, boolean estatico) throws IOException {
+        int versao = u2(6);
+        if (estatico && versao < 49) // ldc de uma classe
+            return null;
+        int comprimento = u4(inicio + 4);
+        byte[] codigo = Arrays.copyOfRange(original, inicio + 8, inicio + 8 + comprimento);
+        for (int o = 0; o < comprimento; o = proxima(codigo, o)) {
+            int op = codigo[o] & 0xFF;
+            if (op == 0xa8 || op == 0xc9) // jsr, jsr_w
+                return null;
+            if (!estatico && (op == ASTORE_0 || op == ASTORE && codigo[o + 1] == 0
+                    || op == WIDE && (codigo[o + 1] & 0xFF) == ASTORE && u2(codigo, o + 2) == 0))
+                return null;
+        }
+        int estaClasse = u2(fimPool + 2);
+        byte[] carregar = estatico ? new byte[] { (byte) LDC_W, (byte) (estaClasse >>> 8), (byte) estaClasse }
+                : new byte[] { (byte) ALOAD_0 };
+        Trechos trechos = new Trechos();
+        trechos.entrada = comOpcodes(carregar, MONITORENTER);
+        byte[] sair = comOpcodes(carregar, MONITOREXIT);
+        for (int o = 0; o < comprimento; o = proxima(codigo, o)) {
+            int op = codigo[o] & 0xFF;
+            if (op >= 0xac && op <= 0xb1) // ireturn..return
+                trechos.antes.put(o, sair);
+        }
+        trechos.tratador = comOpcodes(carregar, MONITOREXIT, ATHROW);
+        if (versao >= 50) {
+            ByteArrayOutputStream quadro = new ByteArrayOutputStream();
+            DataOutputStream q = new DataOutputStream(quadro);
+            q.writeShort(estatico ? 0 : 1);
+            if (!estatico) {
+                q.writeByte(7);
+                q.writeShort(estaClasse);
+            }
+            q.writeShort(1);
+            q.writeByte(7);
+            q.writeShort(constante("Cjava/lang/Throwable", 7, utf8("java/lang/Throwable")));
+            trechos.quadroTratador = quadro.toByteArray();
+        }
+        return montarCodigo(inicio, codigo, trechos);
+    }
+
+    private static byte[] comOpcodes(byte[] inicio, int... opcodes) {
+        byte[] b = Arrays.copyOf(inicio, inicio.length + opcodes.length);
+        for (int k = 0; k < opcodes.length; k++)
+            b[inicio.length + k] = (byte) opcodes[k];
+        return b;
+    }
+
+    private byte[] montarCodigo(int inicio, byte[] codigo, Trechos trechos) throws IOException {
+        int maxPilha = u2(inicio), maxLocais = u2(inicio + 2), comprimento = codigo.length;
+        int p = inicio + 8 + comprimento;
+        int tabelaExcecoes = p + 2, numExcecoes = u2(p);
+        p = tabelaExcecoes + 8 * numExcecoes;
+        int numAtributos = u2(p);
+        int atributos = p + 2;
+        boolean temQuadros = false;
+        for (int k = 0, a = atributos; k < numAtributos; k++, a += 6 + u4(a + 2)) {
+            switch (String.valueOf(utf8[u2(a)])) {
+                case "StackMapTable" -> temQuadros = true;
+                case "LineNumberTable", "LocalVariableTable", "LocalVariableTypeTable" -> {
+                }
+                default -> {
+                    return null;
+                }
+            }
+        }
+
+        // Leiaute novo: alvo[o] é para onde vão os desvios à instrução o (o começo do trecho antes dela) e
+        // posicao[o] onde ela mesma fica. Uma faixa de exceções que começa em o começa em faixa[o] e cobre
+        // também o trecho depois da instrução anterior: a sonda depois de um monitorenter fica dentro do
+        // tratador que solta o monitor, como exige a verificação de monitores do JIT
+        int[] alvo = new int[comprimento + 1];
+        int[] posicao = new int[comprimento + 1];
+        int[] faixa = new int[comprimento + 1];
+        int n = trechos.entrada != null ? trechos.entrada.length : 0;
+        int fimAnterior = n;
+        for (int o = 0; o < comprimento; o = proxima(codigo, o)) {
+            faixa[o] = fimAnterior;
+            alvo[o] = n;
+            byte[] antes = trechos.antes.get(o);
+            if (antes != null)
+                n += antes.length;
+            posicao[o] = n;
+            int op = codigo[o] & 0xFF;
+            n += proxima(codigo, o) - o;
+            if (op == 0xaa || op == 0xab)
+                n += preenchimento(posicao[o]) - preenchimento(o);
+            fimAnterior = n;
+            byte[] depois = trechos.depois.get(o);
+            if (depois != null)
+                n += depois.length;
+        }
+        int fim = n;
+        alvo[comprimento] = posicao[comprimento] = fim;
+        if (trechos.tratador != null)
+            n += trechos.tratador.length;
+        if (n > 0xFFFF || maxPilha + PILHA_EXTRA > 0xFFFF)
+            return null;
+
+        ByteArrayOutputStream novoCodigo = new ByteArrayOutputStream(n);
+        DataOutputStream c = new DataOutputStream(novoCodigo);
+        if (trechos.entrada != null)
+            c.write(trechos.entrada);
+        for (int o = 0; o < comprimento; o = proxima(codigo, o)) {
+            byte[] antes = trechos.antes.get(o);
+            if (antes != null)
+                c.write(antes);
+            int op = codigo[o] & 0xFF;
+            if (desvio16(op)) {
+                int deslocamento = alvo[o + (short) u2(codigo, o + 1)] - posicao[o];
+                if (deslocamento != (short) deslocamento)
+                    return null;
+                c.writeByte(op);
+                c.writeShort(deslocamento);
+            } else if (op == 0xc8 || op == 0xc9) {
+                c.writeByte(op);
+                c.writeInt(alvo[o + s4(codigo, o + 1)] - posicao[o]);
+            } else if (op == 0xaa || op == 0xab) {
+                c.writeByte(op);
+                for (int k = preenchimento(posicao[o]); k > 0; k--)
+                    c.writeByte(0);
+                int q = o + 1 + preenchimento(o);
+                c.writeInt(alvo[o + s4(codigo, q)] - posicao[o]);
+                if (op == 0xaa) {
+                    int baixo = s4(codigo, q + 4), alto = s4(codigo, q + 8);
+                    c.writeInt(baixo);
+                    c.writeInt(alto);
+                    for (int k = 0, e = q + 12; k <= alto - baixo; k++, e += 4)
+                        c.writeInt(alvo[o + s4(codigo, e)] - posicao[o]);
+                } else {
+                    int pares = s4(codigo, q + 4);
+                    c.writeInt(pares);
+                    for (int k = 0, e = q + 8; k < pares; k++, e += 8) {
+                        c.writeInt(s4(codigo, e));
+                        c.writeInt(alvo[o + s4(codigo, e + 4)] - posicao[o]);
+                    }
+                }
+            } else {
+                c.write(codigo, o, proxima(codigo, o) - o);
+            }
+            byte[] depois = trechos.depois.get(o);
+            if (depois != null)
+                c.write(depois);
+        }
+        if (trechos.tratador != null)
+            c.write(trechos.tratador);
+
+        ByteArrayOutputStream atributo = new ByteArrayOutputStream(n + 64);
+        DataOutputStream out = new DataOutputStream(atributo);
+        out.writeShort(maxPilha + PILHA_EXTRA);
+        out.writeShort(maxLocais);
+        out.writeInt(n);
+        novoCodigo.writeTo(out);
+        out.writeShort(numExcecoes + (trechos.tratador != null ? 1 : 0));
+        for (int k = 0, e = tabelaExcecoes; k < numExcecoes; k++, e += 8) {
+            out.writeShort(faixa[u2(e)]);
+            out.writeShort(alvo[u2(e + 2)]);
+            out.writeShort(alvo[u2(e + 4)]);
+            out.writeShort(u2(e + 6));
+        }
+        if (trechos.tratador != null) { // por último: envolve os tratadores do próprio método
+            out.writeShort(alvo[0]);
+            out.writeShort(fim);
+            out.writeShort(fim);
+            out.writeShort(0);
+        }
+        byte[] quadro = trechos.tratador != null ? trechos.quadroTratador : null;
+        out.writeShort(numAtributos + (quadro != null && !temQuadros ? 1 : 0));
+        for (int k = 0, a = atributos; k < numAtributos; k++, a += 6 + u4(a + 2)) {
+            byte[] corpo = realocar(utf8[u2(a)], a + 6, alvo, posicao, fim, quadro);
+            out.writeShort(u2(a));
+            out.writeInt(corpo.length);
+            out.write(corpo);
+        }
+        if (quadro != null && !temQuadros) {
+            out.writeShort(indiceUtf8("StackMapTable"));
+            out.writeInt(5 + quadro.length);
+            out.writeShort(1);
+            out.writeByte(255);
+            out.writeShort(fim); // primeiro quadro: o delta é o offset
+            out.write(quadro);
+        }
+        return atributo.toByteArray();
+    }
+
+    private int indiceUtf8(String s) {
+        for (int i = 1; i < numConstantes; i++) {
+            if (s.equals(utf8[i]))
+                return i;
+        }
+        return utf8(s);
+    }
+
+    // quadroFinal: locais e pilha de um quadro completo a acrescentar à StackMapTable no offset novo fim
+    private byte[] realocar(String atributo, int p, int[] alvo, int[] posicao, int fim, byte[] quadroFinal)
+            throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        int n = u2(p);
+        boolean quadros = !atributo.equals("LineNumberTable") && !atributo.startsWith("LocalVariable");
+        out.writeShort(quadros && quadroFinal != null ? n + 1 : n);
+        p += 2;
+        switch (atributo) {
+            case "LineNumberTable" -> {
+                for (int k = 0; k < n; k++, p += 4) {
+                    out.writeShort(alvo[u2(p)]);
+                    out.writeShort(u2(p + 2));
+                }
+            }
+            case "LocalVariableTable", "LocalVariableTypeTable" -> {
+                for (int k = 0; k < n; k++, p += 10) {
+                    int de = u2(p), ate = de + u2(p + 2);
+                    int novoDe = de == 0 ? 0 : alvo[de]; // parâmetros valem também na entrada
+                    out.writeShort(novoDe);
+                    out.writeShort(alvo[ate] - novoDe);
+                    out.write(original, p + 4, 6);
+                }
+            }
+            default -> { // StackMapTable: cada quadro vai para o alvo da instrução; forma estendida para o delta caber
+                int anterior = -1, anteriorNovo = -1;
+                for (int k = 0; k < n; k++) {
+                    int tipo = original[p++] & 0xFF;
+                    int delta;
+                    if (tipo < 64) {
+                        delta = tipo;
+                    } else if (tipo < 128) {
+                        delta = tipo - 64;
+                    } else if (tipo >= 247) {
+                        delta = u2(p);
+                        p += 2;
+                    } else {
+                        throw new IllegalArgumentException("Quadro reservado na StackMapTable: " + tipo);
+                    }
+                    int offset = anterior + delta + 1;
+                    int novo = alvo[offset];
+                    int novoDelta = novo - anteriorNovo - 1;
+                    anterior = offset;
+                    anteriorNovo = novo;
+                    if (tipo < 64 || tipo == 251) {
+                        out.writeByte(251);
+                        out.writeShort(novoDelta);
+                    } else if (tipo < 128 || tipo == 247) {
+                        out.writeByte(247);
+                        out.writeShort(novoDelta);
+                        p = copiarTipo(p, out, posicao);
+                    } else if (tipo < 251) {
+                        out.writeByte(tipo);
+                        out.writeShort(novoDelta);
+                    } else if (tipo < 255) {
+                        out.writeByte(tipo);
+                        out.writeShort(novoDelta);
+                        for (int t = 0; t < tipo - 251; t++)
+                            p = copiarTipo(p, out, posicao);
+                    } else {
+                        out.writeByte(tipo);
+                        out.writeShort(novoDelta);
+                        for (int lista = 0; lista < 2; lista++) { // locais e pilha
+                            int m = u2(p);
+                            out.writeShort(m);
+                            p += 2;
+                            for (int t = 0; t < m; t++)
+                                p = copiarTipo(p, out, posicao);
+                        }
+                    }
+                }
+                if (quadroFinal != null) {
+                    out.writeByte(255);
+                    out.writeShort(fim - anteriorNovo - 1);
+                    out.write(quadroFinal);
+                }
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    // Tipo de verificação: Object leva um índice do pool, Uninitialized o offset do new correspondente
+    private int copiarTipo(int p, DataOutputStream out, int[] posicao) throws IOException {
+        int tag = original[p] & 0xFF;
+        out.writeByte(tag);
+        if (tag == 7) {
+            out.writeShort(u2(p + 1));
+            return p + 3;
+        }
+        if (tag == 8) {
+            out.writeShort(posicao[u2(p + 1)]);
+            return p + 3;
+        }
+        return p + 1;
+    }
+
+    private String decodificar(int p, int n) {
+        try {
+            return new DataInputStream(new ByteArrayInputStream(original, p, n)).readUTF();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private int u2(int p) {
+        return u2(original, p);
+    }
+
+    private int u4(int p) {
+        return s4(original, p);
+    }
+
+    private static int u2(byte[] b, int p) {
+        return (b[p] & 0xFF) << 8 | b[p + 1] & 0xFF;
+    }
+
+    private static int s4(byte[] b, int p) {
+        return (b[p] & 0xFF) << 24 | (b[p + 1] & 0xFF) << 16 | (b[p + 2] & 0xFF) << 8 | b[p + 3] & 0xFF;
+    }
+}
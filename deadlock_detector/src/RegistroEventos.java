@@ -0,0 +1,254 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+/**
+ * Log estruturado e assíncrono do SistemaOperacional. Quem concede, libera ou espera só grava o tipo
+ * do evento, o instante e dois IDs num anel pré-alocado (vetores paralelos, sem objeto por evento);
+ * uma thread consumidora monta as mensagens e as entrega em lotes à saída configurada (interface,
+ * arquivo, stderr), uma chamada por lote em vez de uma por linha. Cada entrada do lote mantém os
+ * campos do evento junto do texto, para quem precisa filtrar por processo, recurso ou tipo.
+ *
+ * Produtores nunca bloqueiam: a vaga é reservada com CAS e, com o anel cheio, o evento é descartado
+ * e contado; o consumidor avisa na saída quantos foram perdidos. A thread consumidora é criada no
+ * primeiro evento e termina depois de um tempo ociosa, então sistemas sem atividade não prendem threads.
+ */
+public class RegistroEventos {
+    /** Evento já formatado, como chega à saída. Tipo null para avisos que não são eventos (descarte). */
+    public static final class Entrada {
+        private final long tempoMs;
+        private final TipoEvento tipo;
+        private final int processo;
+        private final int recurso;
+        private final String texto;
+
+        public Entrada(long tempoMs, TipoEvento tipo, int processo, int recurso, String texto) {
+            this.tempoMs = tempoMs;
+            this.tipo = tipo;
+            this.processo = processo;
+            this.recurso = recurso;
+            this.texto = texto;
+        }
+
+        public long getTempoMs() {
+            return tempoMs;
+        }
+
+        public TipoEvento getTipo() {
+            return tipo;
+        }
+
+        // ID do processo, ou -1
+        public int getProcesso() {
+            return processo;
+        }
+
+        // ID do recurso, ou -1
+        public int getRecurso() {
+            return recurso;
+        }
+
+        public String getTexto() {
+            return texto;
+        }
+
+        @Override
+        public String toString() {
+            return texto;
+        }
+    }
+
+    private static final TipoEvento[] TIPOS = TipoEvento.values();
+    private static final int TAMANHO_LOTE = 512;
+    // Sem eventos, o consumidor dorme pausas que dobram de PAUSA_MINIMA_NS até PAUSA_MAXIMA_NS
+    private static final long PAUSA_MINIMA_NS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final long PAUSA_MAXIMA_NS = TimeUnit.MILLISECONDS.toNanos(2);
+    private static final long OCIOSIDADE_MAXIMA_NS = TimeUnit.SECONDS.toNanos(1);
+
+    private final int mascara;
+    private final long[] tempos;
+    private final int[] tipos;
+    private final int[] processos;
+    private final int[] recursos;
+    private final Object[] anexos;
+    private final AtomicLongArray publicados; // seq + 1 quando a vaga seq já foi escrita
+    private final AtomicLong cabeca = new AtomicLong(); // próxima vaga a reservar
+    private volatile long cauda = 0; // próxima vaga a consumir; só o consumidor escreve
+    private volatile long entregues = 0; // eventos já passados à saída
+    private final AtomicBoolean consumidorAtivo = new AtomicBoolean();
+    private final LongAdder produzidos = new LongAdder();
+    private final LongAdder descartados = new LongAdder();
+    private long descartadosAvisados = 0; // só o consumidor lê e escreve
+    private volatile Consumer<List<Entrada>> saida;
+    private volatile IntFunction<String> nomeRecurso = id -> "R" + id;
+    private volatile boolean prefixoTempo = false;
+
+    public RegistroEventos(int capacidade) {
+        int tamanho = Integer.highestOneBit(Math.max(2, capacidade - 1)) << 1;
+        mascara = tamanho - 1;
+        tempos = new long[tamanho];
+        tipos = new int[tamanho];
+        processos = new int[tamanho];
+        recursos = new int[tamanho];
+        anexos = new Object[tamanho];
+        publicados = new AtomicLongArray(tamanho);
+    }
+
+    /** Destino dos lotes de entradas; null desliga o log (os eventos só são contados). */
+    public void setSaida(Consumer<List<Entrada>> saida) {
+        this.saida = saida;
+    }
+
+    public void setNomeRecurso(IntFunction<String> nomeRecurso) {
+        this.nomeRecurso = nomeRecurso;
+    }
+
+    // Prefixa cada mensagem com o instante do evento, em segundos
+    public void setPrefixoTempo(boolean prefixoTempo) {
+        this.prefixoTempo = prefixoTempo;
+    }
+
+    public long getProduzidos() {
+        return produzidos.sum();
+    }
+
+    public long getDescartados() {
+        return descartados.sum();
+    }
+
+    public void registrar(TipoEvento tipo, long tempoMs, int processo, int recurso) {
+        registrar(tipo, tempoMs, processo, recurso, null);
+    }
+
+    public void registrar(TipoEvento tipo, long tempoMs, int processo, int recurso, Object anexo) {
+        produzidos.increment();
+        if (saida == null)
+            return;
+        long seq;
+        do {
+            seq = cabeca.get();
+            if (seq - cauda >= tempos.length) {
+                descartados.increment();
+                return;
+            }
+        } while (!cabeca.compareAndSet(seq, seq + 1));
+        int k = (int) seq & mascara;
+        tempos[k] = tempoMs;
+        tipos[k] = tipo.ordinal();
+        processos[k] = processo;
+        recursos[k] = recurso;
+        anexos[k] = anexo;
+        publicados.setRelease(k, seq + 1);
+        if (!consumidorAtivo.get() && consumidorAtivo.compareAndSet(false, true))
+            iniciarConsumidor();
+    }
+
+    /** Espera a thread consumidora entregar à saída tudo o que já foi registrado. */
+    public void descarregar() {
+        long alvo = cabeca.get();
+        while (entregues < alvo && consumidorAtivo.get())
+            LockSupport.parkNanos(PAUSA_MINIMA_NS);
+    }
+
+    private void iniciarConsumidor() {
+        Thread t = new Thread(this::consumir, "registro-eventos");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    private void consumir() {
+        StringBuilder sb = new StringBuilder(128);
+        long ocioso = 0;
+        long pausa = PAUSA_MINIMA_NS;
+        while (true) {
+            List<Entrada> lote = drenar(sb);
+            if (lote != null) {
+                Consumer<List<Entrada>> destino = saida;
+                if (destino != null)
+                    destino.accept(lote);
+                entregues = cauda;
+                ocioso = 0;
+                pausa = PAUSA_MINIMA_NS;
+                continue;
+            }
+            if (ocioso >= OCIOSIDADE_MAXIMA_NS) {
+                consumidorAtivo.set(false);
+                // Um evento publicado depois da última drenagem viu o consumidor ainda ativo: retoma,
+                // a não ser que o produtor já tenha iniciado outro
+                if (cabeca.get() == cauda || !consumidorAtivo.compareAndSet(false, true))
+                    return;
+                ocioso = 0;
+                continue;
+            }
+            LockSupport.parkNanos(pausa);
+            ocioso += pausa;
+            pausa = Math.min(pausa * 2, PAUSA_MAXIMA_NS);
+        }
+    }
+
+    // Até TAMANHO_LOTE entradas já publicadas, em ordem de reserva; null se não houver nenhuma
+    private List<Entrada> drenar(StringBuilder sb) {
+        List<Entrada> lote = null;
+        long c = cauda;
+        int lidos = 0;
+        while (lidos < TAMANHO_LOTE) {
+            int k = (int) c & mascara;
+            if (publicados.getAcquire(k) != c + 1)
+                break; // vaga reservada mas ainda não escrita, ou anel vazio
+            if (lote == null)
+                lote = new ArrayList<>();
+            sb.setLength(0);
+            TipoEvento tipo = TIPOS[tipos[k]];
+            formatar(sb, tipo, tempos[k], processos[k], recursos[k], anexos[k]);
+            anexos[k] = null;
+            lote.add(new Entrada(tempos[k], tipo, processos[k], recursos[k], sb.toString()));
+            cauda = ++c;
+            lidos++;
+        }
+        long perdidos = descartados.sum() - descartadosAvisados;
+        if (perdidos > 0) {
+            descartadosAvisados += perdidos;
+            if (lote == null)
+                lote = new ArrayList<>();
+            lote.add(new Entrada(-1, null, -1, -1, "... " + perdidos + " eventos descartados: log cheio"));
+        }
+        return lote;
+    }
+
+    private void formatar(StringBuilder sb, TipoEvento tipo, long tempo, int p, int r, Object anexo) {
+        if (prefixoTempo)
+            sb.append('[').append(tempo / 1000.0).append("s] ");
+        switch (tipo) {
+            case SOLICITACAO -> sb.append("Processo ").append(p).append(" solicitando recurso às ")
+                    .append(tempo / 1000).append("s...");
+            case SEM_RECURSO -> sb.append("Processo ").append(p)
+                    .append(" não obteve recurso, tentando novamente no próximo ciclo às ").append(tempo / 1000)
+                    .append('s');
+            case CONCESSAO -> sb.append("Processo ").append(p).append(" obteve recurso ")
+                    .append(nomeRecurso.apply(r));
+            case ENTREGA -> sb.append("Processo ").append(p).append(" recebeu recurso ")
+                    .append(nomeRecurso.apply(r)).append(" da fila de espera");
+            case ESPERA -> sb.append("Processo ").append(p).append(" aguarda ").append(nomeRecurso.apply(r));
+            case ESPERA_INSEGURA -> sb.append("Processo ").append(p).append(" aguarda ").append(nomeRecurso.apply(r))
+                    .append(": a concessão deixaria o sistema em estado inseguro ou sem instância livre");
+            case SAIDA_ESPERA -> sb.append("Processo ").append(p).append(" removido de processosAguardando para ")
+                    .append(nomeRecurso.apply(r));
+            case LIBERACAO -> sb.append("Processo ").append(p).append(" liberou recurso ")
+                    .append(nomeRecurso.apply(r));
+            case FALHA_LIBERACAO -> sb.append("Falha ao remover ").append(nomeRecurso.apply(r))
+                    .append(" de recursosAlocados para ").append(p);
+            case REINICIO -> sb.append("Processo ").append(p).append(" reiniciado para recuperação de deadlock");
+            case PREEMPCAO -> sb.append("Recurso ").append(nomeRecurso.apply(r)).append(" preemptado do processo ")
+                    .append(p);
+            case DEADLOCK -> sb.append("⚠ DEADLOCK DETECTADO entre processos: ").append(anexo);
+            case ESTADO_SEGURO -> sb.append("Sistema está em estado seguro.");
+        }
+    }
+}
@@ -0,0 +1,335 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reproduz um trace gravado pelo GravadorTrace o mais rápido possível: as transições são aplicadas a
+ * um SistemaOperacional sem threads de Processo nem detector, com o relógio do sistema no instante
+ * gravado, e a detecção roda nos mesmos pontos em que rodou na gravação (ou a cada N transições, ou
+ * só no fim). Serve para reabrir offline um deadlock visto em produção e para comparar mudanças no
+ * detector sobre cargas reais.
+ *
+ * Uso: java ReproducaoTrace trace.bin [-cada N | -fim] [-completa | -conferir]
+ *   -cada N    detecta a cada N transições em vez de nos pontos gravados
+ *   -fim       detecta só depois da última transição
+ *   -completa  cada detecção reexamina o grafo inteiro, sem o resultado incremental anterior
+ *   -conferir  depois de cada detecção incremental, reexamina o grafo inteiro e conta onde os dois
+ *              resultados diferem (o código de saída é 3 se algum diferir)
+ */
+public class ReproducaoTrace {
+    private final Path arquivo;
+    private int detectarACada = 0; // 0: nos pontos gravados
+    private boolean soNoFim = false;
+    private boolean completa = false;
+    private boolean conferir = false;
+
+    private final SistemaOperacional sistema = new SistemaOperacional(1);
+    private final Map<Integer, Recurso> recursos = new HashMap<>();
+    private final Map<Integer, Processo> processos = new HashMap<>();
+    private long instante = 0;
+    private int proximaInstancia = 0;
+
+    private long registros = 0;
+    private long transicoes = 0;
+    private long solicitacoes = 0, concessoes = 0, entregas = 0, esperas = 0, fimEsperas = 0, liberacoes = 0,
+            remocoes = 0;
+    private long inconsistencias = 0; // concessão sem instância livre, liberação sem instância retida etc.
+    private long deteccoes = 0, deteccoesComDeadlock = 0, divergencias = 0, divergenciasCompleta = 0;
+    private long tempoDeteccaoNs = 0, maiorDeteccaoNs = 0;
+    private String primeiroDeadlock = null;
+    private List<Processo> deadlockFinal = List.of();
+
+    public static void main(String[] args) throws Exception {
+        String arquivo = null;
+        int cada = 0;
+        boolean fim = false, completa = false, conferir = false;
+        try {
+            for (int k = 0; k < args.length; k++) {
+                switch (args[k]) {
+                    case "-cada" -> cada = Integer.parseInt(args[++k]);
+                    case "-fim" -> fim = true;
+                    case "-completa" -> completa = true;
+                    case "-conferir" -> conferir = true;
+                    default -> {
+                        if (arquivo != null)
+                            throw new IllegalArgumentException();
+                        arquivo = args[k];
+                    }
+                }
+            }
+            if (arquivo == null || cada < 0 || completa && conferir)
+                throw new IllegalArgumentException();
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            System.err.println("Uso: java ReproducaoTrace trace.bin [-cada N | -fim] [-completa | -conferir]");
+            System.exit(2);
+        }
+        ReproducaoTrace reproducao = new ReproducaoTrace(Path.of(arquivo));
+        reproducao.setDetectarACada(cada);
+        reproducao.setSoNoFim(fim);
+        reproducao.setCompleta(completa);
+        reproducao.setConferir(conferir);
+        try {
+            reproducao.executar(System.out);
+        } catch (IOException e) {
+            System.err.println("Erro ao ler o trace: " + e.getMessage());
+            System.exit(1);
+        }
+        if (reproducao.getDivergenciasCompleta() > 0)
+            System.exit(3);
+    }
+
+    public ReproducaoTrace(Path arquivo) {
+        this.arquivo = arquivo;
+        sistema.setLogger(null);
+        sistema.setRelogio(() -> instante);
+    }
+
+    /** Detecta a cada n transições em vez de nos pontos gravados; 0 volta aos pontos gravados. */
+    public void setDetectarACada(int n) {
+        this.detectarACada = n;
+    }
+
+    public void setSoNoFim(boolean soNoFim) {
+        this.soNoFim = soNoFim;
+    }
+
+    public void setCompleta(boolean completa) {
+        this.completa = completa;
+    }
+
+    /** Confere cada detecção incremental contra o grafo inteiro (ver getDivergenciasCompleta). */
+    public void setConferir(boolean conferir) {
+        this.conferir = conferir;
+    }
+
+    public long getDivergenciasCompleta() {
+        return divergenciasCompleta;
+    }
+
+    public long getTransicoes() {
+        return transicoes;
+    }
+
+    public long getDeteccoes() {
+        return deteccoes;
+    }
+
+    public long getTempoDeteccaoNs() {
+        return tempoDeteccaoNs;
+    }
+
+    public long getInconsistencias() {
+        return inconsistencias;
+    }
+
+    public void executar(PrintStream out) throws IOException {
+        long inicio = System.nanoTime();
+        long tamanho = ler();
+        if (soNoFim || detectarACada > 0)
+            detectar(-1);
+        double segundos = (System.nanoTime() - inicio) / 1e9;
+        // Transições depois do último ponto de detecção mudam o estado final: ele é examinado por inteiro, fora
+        // das contagens e do tempo da reprodução
+        sistema.invalidarVerificacao();
+        deadlockFinal = sistema.detectarDeadlock();
+
+        out.println("=== Reprodução do trace ===");
+        out.println("Trace: " + arquivo + " (" + registros + " registros, " + tamanho + " bytes)");
+        out.println("Recursos: " + recursos.size() + ", processos: " + processos.size());
+        out.println("Transições: " + transicoes + " (" + solicitacoes + " solicitações, " + concessoes + " concessões, "
+                + entregas + " por entrega direta, " + esperas + " esperas, " + fimEsperas + " fins de espera, "
+                + liberacoes + " liberações, " + remocoes + " remoções)");
+        out.println("Reprodução: " + String.format("%.3f", segundos) + "s reais, "
+                + String.format("%.0f", transicoes / Math.max(segundos, 1e-9)) + " transições/s");
+        out.println("Detecções: " + deteccoes + " ("
+                + (soNoFim ? "só no fim" : detectarACada > 0 ? "a cada " + detectarACada + " transições" : "nos pontos gravados")
+                + (completa ? ", grafo completo" : ", incrementais") + "), "
+                + String.format("%.3f", tempoDeteccaoNs / 1e6) + " ms no total, média "
+                + String.format("%.1f", deteccoes > 0 ? tempoDeteccaoNs / 1e3 / deteccoes : 0.0) + " µs, máximo "
+                + String.format("%.1f", maiorDeteccaoNs / 1e3) + " µs");
+        out.println("Detecções com deadlock: " + deteccoesComDeadlock
+                + (detectarACada == 0 && !soNoFim ? ", divergentes do veredito gravado: " + divergencias : ""));
+        if (conferir)
+            out.println("Detecções incrementais que diferem do grafo completo: " + divergenciasCompleta);
+        out.println("Inconsistências no trace: " + inconsistencias);
+        out.println("Primeiro deadlock: " + (primeiroDeadlock != null ? primeiroDeadlock : "nenhum"));
+        out.println("Em deadlock ao final: " + (deadlockFinal.isEmpty() ? "nenhum"
+                : deadlockFinal.stream().map(Processo::getProcessoName).toList()));
+        out.println("Recursos disponíveis ao final:");
+        sistema.statusRecursos().forEach(out::println);
+        out.println("Processos ao final:");
+        sistema.statusProcessos().forEach(out::println);
+    }
+
+    // Lê o arquivo região por região, aplicando cada registro; devolve o tamanho do arquivo
+    private long ler() throws IOException {
+        try (FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.READ)) {
+            long tamanho = canal.size();
+            ByteBuffer cabecalho = ByteBuffer.allocate(GravadorTrace.CABECALHO);
+            while (cabecalho.hasRemaining() && canal.read(cabecalho, cabecalho.position()) > 0) {
+            }
+            if (cabecalho.hasRemaining())
+                throw new IOException("arquivo curto demais para um trace");
+            int magico = cabecalho.getInt(0);
+            if (magico != GravadorTrace.MAGICO && magico != 0) // 0: gravação não fechada
+                throw new IOException("não é um trace do simulador");
+            if (magico != 0 && cabecalho.getInt(4) != GravadorTrace.VERSAO)
+                throw new IOException("versão de trace não suportada: " + cabecalho.getInt(4));
+            long total = cabecalho.getLong(8);
+            if (total == 0)
+                total = (tamanho - GravadorTrace.CABECALHO) / GravadorTrace.TAMANHO_REGISTRO;
+
+            MappedByteBuffer regiao = null;
+            long inicioRegiao = -1;
+            int recursoId = 0, recursoTotal = 0;
+            ByteArrayOutputStream nome = null; // recurso lido, à espera dos trechos do nome
+            for (long k = 0; k < total; k++) {
+                long pos = GravadorTrace.posicao(k);
+                long base = pos & ~(GravadorTrace.TAMANHO_REGIAO - 1);
+                if (base != inicioRegiao) {
+                    regiao = canal.map(FileChannel.MapMode.READ_ONLY, base,
+                            Math.min(GravadorTrace.TAMANHO_REGIAO, tamanho - base));
+                    inicioRegiao = base;
+                }
+                int i = (int) (pos - base);
+                byte tipo = regiao.get(i);
+                if (tipo == 0)
+                    break; // fim de um trace não fechado
+                registros++;
+                if (tipo == GravadorTrace.NOME && nome != null) {
+                    int usados = regiao.get(i + 1);
+                    for (int c = 0; c < usados; c++)
+                        nome.write(regiao.get(i + 2 + c));
+                    continue;
+                }
+                if (nome != null) {
+                    criarRecurso(recursoId, nome.toString(StandardCharsets.UTF_8), recursoTotal);
+                    nome = null;
+                }
+                instante = regiao.getInt(i + 4);
+                int a = regiao.getInt(i + 8);
+                int b = regiao.getInt(i + 12);
+                if (tipo == GravadorTrace.RECURSO) {
+                    recursoId = a;
+                    recursoTotal = b;
+                    nome = new ByteArrayOutputStream();
+                } else {
+                    aplicar(tipo, regiao.get(i + 1), a, b);
+                }
+            }
+            if (nome != null)
+                criarRecurso(recursoId, nome.toString(StandardCharsets.UTF_8), recursoTotal);
+            return tamanho;
+        }
+    }
+
+    private void criarRecurso(int id, String nome, int total) {
+        Recurso r = new Recurso(id, nome, total);
+        if (sistema.adicionarRecurso(r))
+            recursos.put(id, r);
+        else
+            inconsistencias++;
+    }
+
+    private void aplicar(byte tipo, int flags, int a, int b) {
+        if (tipo == GravadorTrace.PROCESSO) {
+            Processo p = new Processo(a, b >>> 16, b & 0xFFFF, sistema);
+            if (processos.putIfAbsent(a, p) == null)
+                sistema.adicionarProcesso(p);
+            else
+                inconsistencias++;
+            return;
+        }
+        if (tipo == GravadorTrace.DETECCAO) {
+            if (!soNoFim && detectarACada == 0)
+                detectar(b);
+            return;
+        }
+        Processo p = processos.get(a);
+        Recurso r = recursos.get(b);
+        if (p == null || (r == null && tipo != GravadorTrace.SOLICITACAO && tipo != GravadorTrace.REMOCAO)) {
+            inconsistencias++;
+            return;
+        }
+        transicoes++;
+        switch (tipo) {
+            case GravadorTrace.SOLICITACAO -> solicitacoes++;
+            case GravadorTrace.CONCESSAO -> {
+                concessoes++;
+                if ((flags & 1) != 0)
+                    entregas++;
+                RecursoInstance instance = new RecursoInstance(null, proximaInstancia++);
+                if (sistema.concederRecurso(p, instance, r))
+                    p.registrarUso(instance);
+                else
+                    inconsistencias++;
+            }
+            case GravadorTrace.ESPERA -> {
+                esperas++;
+                sistema.reproduzirEspera(p, r);
+            }
+            case GravadorTrace.FIM_ESPERA -> {
+                fimEsperas++;
+                sistema.limparAguardando(p);
+            }
+            case GravadorTrace.LIBERACAO -> {
+                liberacoes++;
+                RecursoInstance instance = sistema.reproduzirLiberacao(p, r);
+                if (instance != null)
+                    p.encerrarUso(instance);
+                else
+                    inconsistencias++;
+            }
+            case GravadorTrace.REMOCAO -> {
+                remocoes++;
+                sistema.removerProcesso(p);
+                processos.remove(a);
+            }
+            default -> {
+                transicoes--;
+                inconsistencias++;
+            }
+        }
+        if (detectarACada > 0 && transicoes % detectarACada == 0)
+            detectar(-1);
+    }
+
+    // gravado: quantos estavam em deadlock na verificação original, ou -1 se não há com o que comparar
+    private void detectar(int gravado) {
+        if (completa)
+            sistema.invalidarVerificacao();
+        long inicio = System.nanoTime();
+        List<Processo> deadlocked = sistema.detectarDeadlock();
+        long duracao = System.nanoTime() - inicio;
+        deteccoes++;
+        tempoDeteccaoNs += duracao;
+        maiorDeteccaoNs = Math.max(maiorDeteccaoNs, duracao);
+        if (!deadlocked.isEmpty()) {
+            deteccoesComDeadlock++;
+            if (primeiroDeadlock == null)
+                primeiroDeadlock = instante / 1000.0 + "s entre processos "
+                        + deadlocked.stream().map(Processo::getProcessoName).toList();
+        }
+        if (gravado >= 0 && gravado != deadlocked.size())
+            divergencias++;
+        if (conferir) {
+            sistema.invalidarVerificacao();
+            List<Processo> completo = sistema.detectarDeadlock();
+            if (!completo.equals(deadlocked)) {
+                if (divergenciasCompleta++ == 0)
+                    System.err.println("Primeira divergência em " + instante / 1000.0 + "s: incremental "
+                            + deadlocked.stream().map(Processo::getProcessoName).toList() + ", completo "
+                            + completo.stream().map(Processo::getProcessoName).toList());
+            }
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/**
+ * Instantâneo de um Histograma, como é publicado pelo MXBean de métricas (vira CompositeData).
+ * Percentis são o limite superior do balde, limitados ao máximo observado.
+ */
+public class ResumoHistograma {
+    private final long contagem;
+    private final double media;
+    private final long p50;
+    private final long p95;
+    private final long p99;
+    private final long maximo;
+
+    public ResumoHistograma(long contagem, double media, long p50, long p95, long p99, long maximo) {
+        this.contagem = contagem;
+        this.media = media;
+        this.p50 = p50;
+        this.p95 = p95;
+        this.p99 = p99;
+        this.maximo = maximo;
+    }
+
+    public long getContagem() {
+        return contagem;
+    }
+
+    public double getMedia() {
+        return media;
+    }
+
+    public long getP50() {
+        return p50;
+    }
+
+    public long getP95() {
+        return p95;
+    }
+
+    public long getP99() {
+        return p99;
+    }
+
+    public long getMaximo() {
+        return maximo;
+    }
+
+    @Override
+    public String toString() {
+        return "n=" + contagem + " média=" + String.format("%.1f", media) + " p50=" + p50 + " p95=" + p95 + " p99="
+                + p99 + " máx=" + maximo;
+    }
+}
@@ -0,0 +1,157 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Roda de temporização (hashed timing wheel) compartilhada por todos os processos de um
+ * SistemaOperacional. Uma única thread avança a roda a cada tick e dispara as expirações de ΔTu,
+ * no lugar de uma thread por recurso retido consultando o relógio a cada 100 ms.
+ *
+ * Cada temporizador guarda o tick absoluto de expiração e fica no balde (prazo & máscara);
+ * prazos além de uma volta permanecem no balde até a volta certa. Um temporizador pausado
+ * (processo bloqueado) não dispara: se o prazo vencer durante a pausa, ele sai da roda e é
+ * disparado no próximo tick depois de retomado, como fazia o laço de polling antigo.
+ */
+public class RodaTemporizacao implements Runnable {
+
+    public static final class Temporizador {
+        private final Runnable acao;
+        private long prazoTick;
+        private Temporizador anterior;
+        private Temporizador proximo;
+        private boolean naRoda;
+        private boolean pausado;
+        private boolean vencido;
+        private boolean encerrado;
+
+        private Temporizador(Runnable acao) {
+            this.acao = acao;
+        }
+    }
+
+    private final long tickMs;
+    private final Temporizador[] baldes;
+    private final int mascara;
+    private final long inicio = System.nanoTime();
+    private long tickAtual = 0;
+    private Thread thread;
+
+    public RodaTemporizacao(long tickMs, int numBaldes) {
+        int tamanho = Integer.highestOneBit(Math.max(2, numBaldes - 1)) << 1;
+        this.tickMs = tickMs;
+        this.baldes = new Temporizador[tamanho];
+        this.mascara = tamanho - 1;
+    }
+
+    public synchronized Temporizador agendar(long atrasoMs, Runnable acao) {
+        iniciarSeNecessario();
+        Temporizador t = new Temporizador(acao);
+        long ticks = Math.max(1, (atrasoMs + tickMs - 1) / tickMs);
+        long agora = Math.max(tickAtual, (System.nanoTime() - inicio) / (tickMs * 1_000_000L));
+        t.prazoTick = agora + ticks;
+        inserir(t);
+        return t;
+    }
+
+    public synchronized void pausar(Temporizador t) {
+        if (!t.encerrado)
+            t.pausado = true;
+    }
+
+    public synchronized void retomar(Temporizador t) {
+        if (t.encerrado || !t.pausado)
+            return;
+        t.pausado = false;
+        if (t.vencido) {
+            // Venceu durante a pausa: volta para a roda e dispara no próximo tick
+            t.vencido = false;
+            t.prazoTick = tickAtual + 1;
+            inserir(t);
+        }
+    }
+
+    public synchronized void cancelar(Temporizador t) {
+        t.encerrado = true;
+        remover(t);
+    }
+
+    private void iniciarSeNecessario() {
+        if (thread == null) {
+            thread = new Thread(this, "roda-temporizacao");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    private void inserir(Temporizador t) {
+        int b = (int) (t.prazoTick & mascara);
+        t.anterior = null;
+        t.proximo = baldes[b];
+        if (baldes[b] != null)
+            baldes[b].anterior = t;
+        baldes[b] = t;
+        t.naRoda = true;
+    }
+
+    private void remover(Temporizador t) {
+        if (!t.naRoda)
+            return;
+        if (t.anterior != null)
+            t.anterior.proximo = t.proximo;
+        else
+            baldes[(int) (t.prazoTick & mascara)] = t.proximo;
+        if (t.proximo != null)
+            t.proximo.anterior = t.anterior;
+        t.anterior = t.proximo = null;
+        t.naRoda = false;
+    }
+
+    // Avança a roda até o tick informado e devolve as ações vencidas, que rodam fora do lock
+    private synchronized List<Runnable> avancar(long ate) {
+        List<Runnable> vencidas = new ArrayList<>();
+        while (tickAtual < ate) {
+            tickAtual++;
+            Temporizador t = baldes[(int) (tickAtual & mascara)];
+            while (t != null) {
+                Temporizador proximo = t.proximo;
+                if (t.prazoTick <= tickAtual) {
+                    remover(t);
+                    if (t.pausado) {
+                        t.vencido = true;
+                    } else {
+                        t.encerrado = true;
+                        vencidas.add(t.acao);
+                    }
+                }
+                t = proximo;
+            }
+        }
+        return vencidas;
+    }
+
+    @Override
+    public void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            long proximoTick;
+            synchronized (this) {
+                proximoTick = tickAtual + 1;
+            }
+            long esperaNanos = inicio + proximoTick * tickMs * 1_000_000L - System.nanoTime();
+            try {
+                if (esperaNanos > 0)
+                    Thread.sleep(esperaNanos / 1_000_000L, (int) (esperaNanos % 1_000_000L));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            long ate = (System.nanoTime() - inicio) / (tickMs * 1_000_000L);
+            for (Runnable acao : avancar(ate)) {
+                // Uma expiração que falha não pode parar a roda: os ΔTu dos outros processos venceriam sem disparo
+                try {
+                    acao.run();
+                } catch (RuntimeException e) {
+                    System.err.println("Roda de temporização: expiração falhou: " + e);
+                }
+            }
+        }
+    }
+}
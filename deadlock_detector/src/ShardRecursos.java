@@ -0,0 +1,302 @@
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Um gerenciador de recursos do SistemaDistribuido. Tem os recursos cujo ID cai nele (concessões,
+ * filas de espera e quem retém cada instância) e é a casa dos processos cujo ID cai nele: sabe o que
+ * eles retêm e em que shard esperam. Uma única thread trata as mensagens, então nada aqui é travado.
+ *
+ * A detecção é a de Chandy-Misra-Haas para o modelo OU: um processo na fila de um recurso depende de
+ * qualquer um que retenha uma instância dele. Ao entrar na fila, o processo inicia uma computação que
+ * consulta quem retém o recurso; a consulta passa pela casa do processo consultado e segue para o shard
+ * onde ele espera, ou morre ali se ele não espera nada. Um processo engajado só responde quando todas
+ * as suas consultas foram respondidas, e o iniciador que recebe todas as respostas está em deadlock. Com
+ * um pedido pendente por processo, isso é exatamente o que a redução das matrizes concluiria. Sair da
+ * fila apaga os engajamentos, e as respostas atrasadas são ignoradas. Mensagens para o próprio shard não
+ * passam pelo transporte: um ciclo todo dentro de um shard é achado sem nenhuma mensagem.
+ */
+public class ShardRecursos {
+    private static final long PAUSA_MAXIMA_NS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private static final class EstadoRecurso {
+        final int id;
+        int disponivel;
+        final Map<Integer, Integer> retencoes = new HashMap<>(); // processo -> instâncias
+        final ArrayDeque<Espera> fila = new ArrayDeque<>();
+
+        EstadoRecurso(int id, int total) {
+            this.id = id;
+            this.disponivel = total;
+        }
+    }
+
+    private static final class Espera {
+        final int processo;
+        final EstadoRecurso recurso;
+        long iniciarEmNs;
+        final Map<Long, Engajamento> engajamentos = new HashMap<>(); // (iniciador, sequência)
+
+        Espera(int processo, EstadoRecurso recurso) {
+            this.processo = processo;
+            this.recurso = recurso;
+        }
+    }
+
+    // Engajamento de um processo numa computação: a quem responder e quantas respostas faltam
+    private static final class Engajamento {
+        final int pai;
+        final int shardPai;
+        int pendentes;
+
+        Engajamento(int pai, int shardPai) {
+            this.pai = pai;
+            this.shardPai = shardPai;
+        }
+    }
+
+    // Processo com casa neste shard
+    private static final class Cliente {
+        int shardEspera = -1;
+        int recursoEspera;
+        final Map<Integer, Integer> retidos = new HashMap<>();
+    }
+
+    private final SistemaDistribuido sistema;
+    private final int indice;
+    private final TransporteShards transporte;
+    private final ConcurrentLinkedQueue<MensagemShard> entrada = new ConcurrentLinkedQueue<>();
+    private final ArrayDeque<MensagemShard> locais = new ArrayDeque<>();
+    private final Map<Integer, EstadoRecurso> recursos = new HashMap<>();
+    private final Map<Integer, Espera> esperas = new HashMap<>();
+    private final Map<Integer, Cliente> clientes = new HashMap<>();
+    private final ArrayDeque<Espera> agendadas = new ArrayDeque<>(); // atraso fixo: em ordem de início
+    private int sequencias;
+    private volatile Thread thread;
+
+    ShardRecursos(SistemaDistribuido sistema, int indice, TransporteShards transporte) {
+        this.sistema = sistema;
+        this.indice = indice;
+        this.transporte = transporte;
+    }
+
+    public int getIndice() {
+        return indice;
+    }
+
+    void adicionarRecurso(int id, int total) {
+        recursos.put(id, new EstadoRecurso(id, total));
+    }
+
+    void iniciar() {
+        Thread t = new Thread(this::executar, "shard-" + indice);
+        t.setDaemon(true);
+        thread = t;
+        t.start();
+    }
+
+    void parar() {
+        Thread t = thread;
+        thread = null;
+        if (t != null)
+            LockSupport.unpark(t);
+    }
+
+    /** Chamado por qualquer thread: transporte ou cliente. */
+    void receber(MensagemShard m) {
+        entrada.add(m);
+        Thread t = thread;
+        if (t != null)
+            LockSupport.unpark(t);
+    }
+
+    private void executar() {
+        while (thread == Thread.currentThread()) {
+            MensagemShard m;
+            while ((m = locais.poll()) != null || (m = entrada.poll()) != null)
+                tratar(m);
+            long agora = System.nanoTime();
+            while (!agendadas.isEmpty() && agendadas.peekFirst().iniciarEmNs <= agora) {
+                Espera w = agendadas.pollFirst();
+                if (esperas.get(w.processo) == w)
+                    iniciarComputacao(w);
+            }
+            if (!locais.isEmpty())
+                continue;
+            transporte.descarregar(indice);
+            if (entrada.isEmpty()) {
+                long pausa = agendadas.isEmpty() ? PAUSA_MAXIMA_NS
+                        : Math.min(PAUSA_MAXIMA_NS, agendadas.peekFirst().iniciarEmNs - agora);
+                LockSupport.parkNanos(pausa);
+            }
+        }
+    }
+
+    private void enviar(int destino, MensagemShard m) {
+        if (destino == indice) {
+            locais.add(m);
+            return;
+        }
+        transporte.enviar(indice, destino, m);
+        sistema.contar(m);
+    }
+
+    private void tratar(MensagemShard m) {
+        switch (m.tipo) {
+            case MensagemShard.PEDIR -> {
+                Cliente c = clientes.computeIfAbsent(m.processo, p -> new Cliente());
+                if (c.shardEspera >= 0)
+                    return; // um pedido pendente por processo
+                c.shardEspera = sistema.dono(m.recurso);
+                c.recursoEspera = m.recurso;
+                enviar(c.shardEspera, new MensagemShard(MensagemShard.SOLICITAR, m.processo, m.recurso));
+            }
+            case MensagemShard.SOLICITAR -> {
+                EstadoRecurso e = recursos.get(m.recurso);
+                if (e == null)
+                    return;
+                if (e.disponivel > 0 && e.fila.isEmpty()) {
+                    conceder(e, m.processo);
+                    return;
+                }
+                Espera w = new Espera(m.processo, e);
+                e.fila.add(w);
+                esperas.put(m.processo, w);
+                long atraso = sistema.getAtrasoSondaNs();
+                if (atraso == 0) {
+                    iniciarComputacao(w);
+                } else {
+                    w.iniciarEmNs = System.nanoTime() + atraso;
+                    agendadas.add(w);
+                }
+            }
+            case MensagemShard.CONCEDER -> {
+                Cliente c = clientes.get(m.processo);
+                if (c == null || c.shardEspera != sistema.dono(m.recurso) || c.recursoEspera != m.recurso) {
+                    // abortado com a concessão a caminho: devolve
+                    enviar(sistema.dono(m.recurso), new MensagemShard(MensagemShard.LIBERAR, m.processo, m.recurso));
+                    return;
+                }
+                c.shardEspera = -1;
+                c.retidos.merge(m.recurso, 1, Integer::sum);
+                sistema.concedido();
+            }
+            case MensagemShard.DEVOLVER -> {
+                Cliente c = clientes.get(m.processo);
+                if (c == null || !c.retidos.containsKey(m.recurso))
+                    return;
+                c.retidos.computeIfPresent(m.recurso, (r, n) -> n > 1 ? n - 1 : null);
+                enviar(sistema.dono(m.recurso), new MensagemShard(MensagemShard.LIBERAR, m.processo, m.recurso));
+            }
+            case MensagemShard.LIBERAR -> {
+                EstadoRecurso e = recursos.get(m.recurso);
+                if (e == null || !e.retencoes.containsKey(m.processo))
+                    return;
+                e.retencoes.computeIfPresent(m.processo, (p, n) -> n > 1 ? n - 1 : null);
+                e.disponivel++;
+                atender(e);
+            }
+            case MensagemShard.ABORTAR -> {
+                Cliente c = clientes.remove(m.processo);
+                if (c == null)
+                    return;
+                if (c.shardEspera >= 0)
+                    enviar(c.shardEspera, new MensagemShard(MensagemShard.CANCELAR, m.processo, c.recursoEspera));
+                for (Map.Entry<Integer, Integer> r : c.retidos.entrySet()) {
+                    for (int k = 0; k < r.getValue(); k++)
+                        enviar(sistema.dono(r.getKey()), new MensagemShard(MensagemShard.LIBERAR, m.processo, r.getKey()));
+                }
+            }
+            case MensagemShard.CANCELAR -> {
+                Espera w = esperas.get(m.processo);
+                if (w != null && w.recurso.id == m.recurso) {
+                    esperas.remove(m.processo);
+                    w.recurso.fila.remove(w);
+                }
+            }
+            case MensagemShard.CONSULTA -> consultado(m);
+            case MensagemShard.RESPOSTA -> respondido(m);
+            default -> {
+            }
+        }
+    }
+
+    private void conceder(EstadoRecurso e, int processo) {
+        e.disponivel--;
+        e.retencoes.merge(processo, 1, Integer::sum);
+        enviar(sistema.casa(processo), new MensagemShard(MensagemShard.CONCEDER, processo, e.id));
+    }
+
+    // Quem sai da fila deixa de estar bloqueado: os engajamentos dele vão junto com a Espera
+    private void atender(EstadoRecurso e) {
+        while (e.disponivel > 0 && !e.fila.isEmpty()) {
+            Espera w = e.fila.poll();
+            esperas.remove(w.processo);
+            conceder(e, w.processo);
+        }
+    }
+
+    private static long chave(int iniciador, int sequencia) {
+        return (long) iniciador << 32 | (sequencia & 0xFFFFFFFFL);
+    }
+
+    private void iniciarComputacao(Espera w) {
+        int sequencia = ++sequencias * sistema.getNumShards() + indice; // única entre shards
+        Engajamento g = new Engajamento(-1, -1);
+        w.engajamentos.put(chave(w.processo, sequencia), g);
+        sistema.computacaoIniciada();
+        g.pendentes = consultar(w, w.processo, sequencia);
+        if (g.pendentes == 0) // só ele mesmo retém o que espera
+            sistema.relatarDeadlock(w.processo);
+    }
+
+    // Uma consulta por processo que retém o recurso aguardado, endereçada à casa dele
+    private int consultar(Espera w, int iniciador, int sequencia) {
+        int n = 0;
+        for (int h : w.recurso.retencoes.keySet()) {
+            if (h == w.processo)
+                continue;
+            enviar(sistema.casa(h), MensagemShard.consulta(iniciador, sequencia, h, w.processo, indice));
+            n++;
+        }
+        return n;
+    }
+
+    private void consultado(MensagemShard m) {
+        Espera w = esperas.get(m.processo);
+        if (w == null) {
+            // Casa do processo: encaminha para onde ele espera; sem pedido pendente ele está ativo e a consulta morre
+            Cliente c = clientes.get(m.processo);
+            if (c != null && c.shardEspera >= 0 && c.shardEspera != indice)
+                enviar(c.shardEspera, m);
+            return;
+        }
+        long chave = chave(m.iniciador, m.recurso);
+        Engajamento g = w.engajamentos.get(chave);
+        if (g != null) { // já engajado e bloqueado desde então: responde na hora
+            enviar(m.shardResposta, MensagemShard.resposta(m.iniciador, m.recurso, m.remetente));
+            return;
+        }
+        if (m.processo == m.iniciador)
+            return; // computação de uma espera anterior do iniciador
+        g = new Engajamento(m.remetente, m.shardResposta);
+        w.engajamentos.put(chave, g);
+        g.pendentes = consultar(w, m.iniciador, m.recurso);
+        if (g.pendentes == 0)
+            enviar(g.shardPai, MensagemShard.resposta(m.iniciador, m.recurso, g.pai));
+    }
+
+    private void respondido(MensagemShard m) {
+        Espera w = esperas.get(m.processo);
+        Engajamento g = w != null ? w.engajamentos.get(chave(m.iniciador, m.recurso)) : null;
+        if (g == null || g.pendentes == 0 || --g.pendentes > 0)
+            return;
+        if (m.processo == m.iniciador)
+            sistema.relatarDeadlock(m.iniciador);
+        else
+            enviar(g.shardPai, MensagemShard.resposta(m.iniciador, m.recurso, g.pai));
+    }
+}
@@ -0,0 +1,236 @@
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Motor de simulação por eventos discretos com relógio virtual. Reproduz a semântica de
+ * Processo.run (ΔTs entre solicitações, ΔTu de uso pausado enquanto o processo está bloqueado)
+ * e a verificação a cada Δt do SistemaOperacional, mas sem threads nem esperas reais: os eventos
+ * de solicitação, despertar, expiração e detecção (periódica ou por evento) saem de uma fila de prioridade ordenada pelo
+ * instante virtual, então um cenário de minutos roda tão rápido quanto a CPU permitir.
+ *
+ * Os processos são registrados no SistemaOperacional normalmente, mas não devem ser iniciados
+ * com start(), e o sistema também não: este motor chama diretamente as mesmas operações.
+ */
+public class SimulacaoDiscreta {
+    private static final int SOLICITACAO = 0;
+    private static final int DESPERTAR = 1;
+    private static final int EXPIRACAO = 2;
+    private static final int DETECCAO = 3;
+    private static final int DETECCAO_EVENTO = 4;
+
+    private static final class Evento implements Comparable<Evento> {
+        final long tempo;
+        final long seq; // desempate FIFO para eventos no mesmo instante
+        final int tipo;
+        final EstadoProcesso alvo;
+        final RecursoInstance instancia;
+
+        Evento(long tempo, long seq, int tipo, EstadoProcesso alvo, RecursoInstance instancia) {
+            this.tempo = tempo;
+            this.seq = seq;
+            this.tipo = tipo;
+            this.alvo = alvo;
+            this.instancia = instancia;
+        }
+
+        @Override
+        public int compareTo(Evento o) {
+            int c = Long.compare(tempo, o.tempo);
+            return c != 0 ? c : Long.compare(seq, o.seq);
+        }
+    }
+
+    private static final class EstadoProcesso {
+        final Processo processo;
+        final long deltaS;
+        final long deltaU;
+        long ultimaSolicitacao;
+        long antesDoBloqueio;
+        boolean bloqueado;
+        boolean solicitarAoAcordar;
+        boolean despertarAgendado;
+        final Set<RecursoInstance> emUso = new HashSet<>();
+        final Set<RecursoInstance> vencidos = new HashSet<>(); // ΔTu vencido durante o bloqueio
+
+        EstadoProcesso(Processo processo) {
+            this.processo = processo;
+            this.deltaS = processo.getDeltaS() * 1000L;
+            this.deltaU = processo.getDeltaU() * 1000L;
+        }
+    }
+
+    private final SistemaOperacional sistema;
+    private final long intervaloMs;
+    private final PriorityQueue<Evento> fila = new PriorityQueue<>();
+    private final Map<Processo, EstadoProcesso> estados = new HashMap<>();
+    private long agora = 0;
+    private long seq = 0;
+    private long eventosProcessados = 0;
+
+    public SimulacaoDiscreta(SistemaOperacional sistema, int intervaloVerificacao) {
+        this.sistema = sistema;
+        this.intervaloMs = intervaloVerificacao * 1000L;
+        sistema.setDespertador(this::despertar);
+        sistema.setRelogio(() -> agora);
+        sistema.setAgendadorDeteccao(
+                () -> agendar(agora + sistema.getJanelaCoalescenciaMs(), DETECCAO_EVENTO, null, null));
+        // Modo de detecção lido aqui: configure o sistema antes de criar a simulação
+        if (sistema.getModoDeteccao() == ModoDeteccao.PERIODICA || sistema.isVerificacaoPeriodica())
+            agendar(intervaloMs, DETECCAO, null, null);
+    }
+
+    /** Instante virtual atual, em ms desde o início da simulação. */
+    public long getTempoAtual() {
+        return agora;
+    }
+
+    public long getEventosProcessados() {
+        return eventosProcessados;
+    }
+
+    /** Passa a simular um processo já adicionado ao sistema, a partir do instante atual. */
+    public void adicionarProcesso(Processo p) {
+        EstadoProcesso e = new EstadoProcesso(p);
+        e.ultimaSolicitacao = agora;
+        p.setInicio(agora);
+        estados.put(p, e);
+        agendar(agora + e.deltaS, SOLICITACAO, e, null);
+    }
+
+    /**
+     * Como adicionarProcesso, para um processo restaurado de um ponto de controle (depois de criar esta
+     * simulação, para as idades do ponto de controle valerem no relógio virtual): as instâncias retidas
+     * expiram quando o ΔTu contado desde a concessão vencer, uma entrega ainda não retirada entra em uso,
+     * e um processo que aguardava fica bloqueado até ser acordado.
+     */
+    public void retomarProcesso(Processo p) {
+        EstadoProcesso e = new EstadoProcesso(p);
+        e.ultimaSolicitacao = agora;
+        estados.put(p, e);
+        sistema.retirarEntrega(p);
+        for (RecursoInstance ri : sistema.getAlocados(p)) {
+            p.registrarUso(ri);
+            e.emUso.add(ri);
+            agendar(agora + Math.max(0, e.deltaU - (agora - ri.getConcedidoEm())), EXPIRACAO, e, ri);
+        }
+        if (sistema.getRecursoAguardado(p) != null)
+            bloquear(e, true);
+        else
+            agendar(agora + e.deltaS, SOLICITACAO, e, null);
+    }
+
+    /** Processa eventos até esvaziar a fila ou o relógio virtual passar de duracaoMs. */
+    public void executar(long duracaoMs) {
+        while (!fila.isEmpty() && fila.peek().tempo <= duracaoMs) {
+            Evento ev = fila.poll();
+            agora = ev.tempo;
+            eventosProcessados++;
+            switch (ev.tipo) {
+                case SOLICITACAO -> solicitar(ev.alvo);
+                case DESPERTAR -> acordar(ev.alvo);
+                case EXPIRACAO -> expirar(ev.alvo, ev.instancia);
+                case DETECCAO -> {
+                    sistema.executarDeteccaoPendente();
+                    agendar(agora + intervaloMs, DETECCAO, null, null);
+                }
+                case DETECCAO_EVENTO -> sistema.executarDeteccaoPendente();
+                default -> throw new IllegalStateException("Evento desconhecido: " + ev.tipo);
+            }
+        }
+        agora = Math.max(agora, duracaoMs);
+    }
+
+    private void agendar(long tempo, int tipo, EstadoProcesso alvo, RecursoInstance instancia) {
+        fila.add(new Evento(tempo, seq++, tipo, alvo, instancia));
+    }
+
+    // Uma volta do laço de Processo.run quando ΔTs já passou desde a última solicitação
+    private void solicitar(EstadoProcesso e) {
+        if (e.bloqueado || !estados.containsKey(e.processo))
+            return;
+        Processo p = e.processo;
+        if (sistema.getRecursoAguardado(p) == null) {
+            sistema.registrarEvento(TipoEvento.SOLICITACAO, p, null);
+            RecursoInstance instance = new RecursoInstance(null, SistemaOperacional.getNextGlobalInstanceId());
+            if (sistema.solicitarRecurso(p, instance) != null) {
+                usar(e, instance);
+            } else if (sistema.getRecursoAguardado(p) != null) {
+                bloquear(e, true);
+                return;
+            } else {
+                sistema.registrarEvento(TipoEvento.SEM_RECURSO, p, null);
+            }
+            e.ultimaSolicitacao = agora;
+            agendar(agora + e.deltaS, SOLICITACAO, e, null);
+        } else {
+            bloquear(e, false);
+        }
+    }
+
+    private void bloquear(EstadoProcesso e, boolean solicitarAoAcordar) {
+        e.bloqueado = true;
+        e.solicitarAoAcordar = solicitarAoAcordar;
+        e.antesDoBloqueio = agora;
+    }
+
+    private void despertar(Processo p) {
+        EstadoProcesso e = estados.get(p);
+        if (e != null && e.bloqueado && !e.despertarAgendado) {
+            e.despertarAgendado = true;
+            agendar(agora, DESPERTAR, e, null);
+        }
+    }
+
+    private void acordar(EstadoProcesso e) {
+        e.despertarAgendado = false;
+        if (!e.bloqueado)
+            return;
+        e.bloqueado = false;
+        if (e.processo.consumirReinicio()) {
+            // Vítima da recuperação: o uso em andamento foi desfeito e o ciclo recomeça agora
+            e.emUso.clear();
+            e.vencidos.clear();
+            e.ultimaSolicitacao = agora;
+            agendar(agora + e.deltaS, SOLICITACAO, e, null);
+            return;
+        }
+        // Temporizadores que venceram durante o bloqueio expiram assim que o processo retoma
+        for (RecursoInstance ri : e.vencidos)
+            agendar(agora, EXPIRACAO, e, ri);
+        e.vencidos.clear();
+        RecursoInstance entregue = sistema.retirarEntrega(e.processo);
+        if (entregue != null) {
+            usar(e, entregue);
+        } else if (e.solicitarAoAcordar) {
+            RecursoInstance instance = new RecursoInstance(null, SistemaOperacional.getNextGlobalInstanceId());
+            if (sistema.solicitarRecurso(e.processo, instance) != null)
+                usar(e, instance);
+        }
+        // Como em Processo.run, o ΔTs seguinte conta a partir de antes do bloqueio
+        e.ultimaSolicitacao = e.antesDoBloqueio;
+        agendar(Math.max(agora, e.ultimaSolicitacao + e.deltaS), SOLICITACAO, e, null);
+    }
+
+    private void usar(EstadoProcesso e, RecursoInstance instance) {
+        e.processo.registrarUso(instance);
+        e.emUso.add(instance);
+        agendar(agora + e.deltaU, EXPIRACAO, e, instance);
+    }
+
+    private void expirar(EstadoProcesso e, RecursoInstance instance) {
+        if (!e.emUso.contains(instance))
+            return;
+        if (e.bloqueado) {
+            e.vencidos.add(instance);
+            return;
+        }
+        e.emUso.remove(instance);
+        if (e.processo.encerrarUso(instance)) {
+            Processo.emitirExpiracao(e.processo, instance);
+            sistema.liberarRecurso(e.processo, instance);
+        }
+    }
+}
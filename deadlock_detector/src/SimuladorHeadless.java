@@ -0,0 +1,415 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Ponto de entrada sem interface gráfica: carrega um cenário de arquivo, roda a simulação
+ * e o detector pela duração pedida e escreve um resumo. Não depende do JavaFX.
+ *
+ * Uso: java SimuladorHeadless cenario.txt [resumo.txt] [-v] [-d] [-jmx] [-trace arquivo]
+ *                                [-salvar arquivo] [-restaurar arquivo]
+ *   -v          imprime o log da simulação na saída de erro
+ *   -d          simulação por eventos discretos (relógio virtual, roda o cenário sem esperas reais)
+ *   -jmx        publica as métricas do sistema como MXBean enquanto a simulação roda
+ *   -trace      grava as transições de estado num trace binário, para o ReproducaoTrace
+ *   -salvar     grava um ponto de controle do estado ao final da simulação
+ *   -restaurar  começa do estado de um ponto de controle; os recursos e processos do cenário são
+ *               ignorados, e o restante da configuração vale como de costume
+ *
+ * Formato do cenário (uma diretiva por linha, '#' inicia comentário):
+ *   dt 5                       intervalo Δt de verificação (s)
+ *   duracao 60                 tempo de simulação (s)
+ *   recurso <id> <nome> <qtd>  tipo de recurso e número de instâncias
+ *   processo <id> <ΔTs> <ΔTu> [prioridade]
+ *                              processo com intervalos de solicitação e uso (s)
+ *   modo virtual               executa os processos em threads virtuais (padrão: plataforma)
+ *   relogio virtual            o mesmo que -d
+ *   semente <n>                fixa a semente da escolha de recursos
+ *   despertar fifo             política ao liberar: fifo (padrão), prioridade ou todos
+ *   evitacao                   modo de evitação: só concede se o estado continuar seguro (banqueiro)
+ *   maximo <proc> <rec> <qtd>  reivindicação máxima do processo sobre o recurso (padrão: o total)
+ *   recuperacao reiniciar [pu pt pr]
+ *                              recuperação automática (reiniciar ou preemptar) com pesos opcionais
+ *                              de custo: unidades retidas, segundos rodando, reinícios anteriores
+ *   deteccao evento [ms] [sem-timer]
+ *                              verifica quando um processo bloqueia, coalescendo bloqueios dentro
+ *                              da janela (padrão 50 ms); sem-timer desliga a verificação a cada Δt
+ */
+public class SimuladorHeadless {
+    private int intervalo = 5;
+    private int duracao = 30;
+    private ModoExecucao modo = ModoExecucao.PLATAFORMA;
+    private boolean discreto = false;
+    private boolean publicarJmx = false;
+    private Path arquivoTrace = null;
+    private Path arquivoSalvar = null;
+    private Path arquivoRestaurar = null;
+    private Long semente = null;
+    private PoliticaDespertar politica = PoliticaDespertar.FIFO;
+    private ModoDeteccao deteccao = ModoDeteccao.PERIODICA;
+    private long janelaMs = 50;
+    private boolean verificacaoPeriodica = true;
+    private boolean evitacao = false;
+    private final List<int[]> maximos = new ArrayList<>(); // processo, recurso, quantidade
+    private RecuperadorDeadlock recuperador = null;
+    private final List<Recurso> recursos = new ArrayList<>();
+    private final List<int[]> processos = new ArrayList<>(); // id, ΔTs, ΔTu, prioridade
+
+    public static void main(String[] args) throws Exception {
+        String cenario = null;
+        String saida = null;
+        boolean verboso = false;
+        boolean discreto = false;
+        boolean jmx = false;
+        String trace = null;
+        String salvar = null;
+        String restaurar = null;
+        for (int k = 0; k < args.length; k++) {
+            String arg = args[k];
+            if (arg.equals("-trace") && k + 1 < args.length)
+                trace = args[++k];
+            else if (arg.equals("-salvar") && k + 1 < args.length)
+                salvar = args[++k];
+            else if (arg.equals("-restaurar") && k + 1 < args.length)
+                restaurar = args[++k];
+            else if (arg.equals("-v"))
+                verboso = true;
+            else if (arg.equals("-d"))
+                discreto = true;
+            else if (arg.equals("-jmx"))
+                jmx = true;
+            else if (cenario == null)
+                cenario = arg;
+            else
+                saida = arg;
+        }
+        if (cenario == null) {
+            System.err.println("Uso: java SimuladorHeadless cenario.txt [resumo.txt] [-v] [-d] [-jmx] [-trace arquivo]"
+                    + " [-salvar arquivo] [-restaurar arquivo]");
+            System.exit(2);
+        }
+
+        SimuladorHeadless simulador = new SimuladorHeadless();
+        try {
+            simulador.carregar(Path.of(cenario));
+            simulador.discreto |= discreto;
+            simulador.publicarJmx = jmx;
+            simulador.arquivoTrace = trace != null ? Path.of(trace) : null;
+            simulador.arquivoSalvar = salvar != null ? Path.of(salvar) : null;
+            simulador.arquivoRestaurar = restaurar != null ? Path.of(restaurar) : null;
+        } catch (IllegalArgumentException e) {
+            System.err.println("Erro no cenário: " + e.getMessage());
+            System.exit(1);
+        }
+
+        try {
+            if (saida == null) {
+                simulador.executar(cenario, verboso, System.out);
+            } else {
+                try (PrintStream out = new PrintStream(Files.newOutputStream(Path.of(saida)), true,
+                        StandardCharsets.UTF_8)) {
+                    simulador.executar(cenario, verboso, out);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Erro: " + e);
+            System.exit(1);
+        }
+    }
+
+    public void carregar(Path arquivo) throws IOException {
+        List<String> linhas = Files.readAllLines(arquivo, StandardCharsets.UTF_8);
+        for (int n = 0; n < linhas.size(); n++) {
+            String linha = linhas.get(n);
+            int comentario = linha.indexOf('#');
+            if (comentario >= 0)
+                linha = linha.substring(0, comentario);
+            linha = linha.trim();
+            if (linha.isEmpty())
+                continue;
+            String[] campos = linha.split("\\s+");
+            try {
+                switch (campos[0]) {
+                    case "dt" -> intervalo = positivo(campos[1]);
+                    case "duracao" -> duracao = positivo(campos[1]);
+                    case "modo" -> modo = ModoExecucao.valueOf(campos[1].toUpperCase());
+                    case "relogio" -> discreto = campos[1].equals("virtual");
+                    case "semente" -> semente = Long.parseLong(campos[1]);
+                    case "despertar" -> politica = PoliticaDespertar.valueOf(campos[1].toUpperCase());
+                    case "deteccao" -> lerDeteccao(campos);
+                    case "evitacao" -> evitacao = true;
+                    case "recuperacao" -> recuperador = lerRecuperacao(campos);
+                    case "maximo" -> maximos.add(new int[] { Integer.parseInt(campos[1]), Integer.parseInt(campos[2]),
+                            Integer.parseInt(campos[3]) });
+                    case "recurso" -> recursos.add(new Recurso(Integer.parseInt(campos[1]), campos[2],
+                            positivo(campos[3])));
+                    case "processo" -> processos.add(new int[] { Integer.parseInt(campos[1]),
+                            positivo(campos[2]), positivo(campos[3]),
+                            campos.length > 4 ? Integer.parseInt(campos[4]) : 0 });
+                    default -> throw new IllegalArgumentException("diretiva desconhecida '" + campos[0] + "'");
+                }
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                throw new IllegalArgumentException("linha " + (n + 1) + ": valores inválidos em '" + linha + "'");
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("linha " + (n + 1) + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private void lerDeteccao(String[] campos) {
+        switch (campos[1]) {
+            case "periodica" -> deteccao = ModoDeteccao.PERIODICA;
+            case "evento" -> {
+                deteccao = ModoDeteccao.POR_EVENTO;
+                for (int k = 2; k < campos.length; k++) {
+                    if (campos[k].equals("sem-timer"))
+                        verificacaoPeriodica = false;
+                    else
+                        janelaMs = Integer.parseInt(campos[k]);
+                }
+            }
+            default -> throw new IllegalArgumentException("modo de detecção desconhecido '" + campos[1] + "'");
+        }
+    }
+
+    private static RecuperadorDeadlock lerRecuperacao(String[] campos) {
+        RecuperadorDeadlock.Acao acao = RecuperadorDeadlock.Acao.valueOf(campos[1].toUpperCase());
+        if (campos.length < 5)
+            return new RecuperadorDeadlock(acao);
+        return new RecuperadorDeadlock(acao, Double.parseDouble(campos[2]), Double.parseDouble(campos[3]),
+                Double.parseDouble(campos[4]));
+    }
+
+    private static int positivo(String valor) {
+        int v = Integer.parseInt(valor);
+        if (v <= 0)
+            throw new NumberFormatException();
+        return v;
+    }
+
+    public void executar(String nomeCenario, boolean verboso, PrintStream out)
+            throws InterruptedException, IOException {
+        long inicio = System.currentTimeMillis();
+        SimulacaoDiscreta[] simulacao = { null };
+        java.util.function.LongSupplier relogioMs = () -> simulacao[0] != null
+                ? simulacao[0].getTempoAtual()
+                : System.currentTimeMillis() - inicio;
+        java.util.function.Consumer<String> logger = verboso
+                ? msg -> System.err.println("[" + relogioMs.getAsLong() / 1000.0 + "s] " + msg)
+                : msg -> {
+                };
+
+        SistemaOperacional sistema = new SistemaOperacional(intervalo);
+        // O log da simulação sai em lotes pela thread do registro, com o instante de cada evento
+        sistema.setLogger(verboso ? System.err::println : null);
+        sistema.getRegistroEventos().setPrefixoTempo(true);
+        if (publicarJmx) {
+            try {
+                sistema.getMetricas().publicar(nomeCenario);
+            } catch (javax.management.JMException e) {
+                System.err.println("Métricas não publicadas por JMX: " + e.getMessage());
+            }
+        }
+        sistema.setModoExecucao(modo);
+        sistema.setPoliticaDespertar(politica);
+        sistema.setModoDeteccao(deteccao);
+        sistema.setJanelaCoalescenciaMs(janelaMs);
+        sistema.setVerificacaoPeriodica(verificacaoPeriodica);
+        sistema.setEvitarDeadlock(evitacao);
+        sistema.setRecuperador(recuperador);
+        if (semente != null)
+            sistema.setRandom(new java.util.Random(semente));
+        AtomicInteger verificacoes = new AtomicInteger();
+        AtomicInteger comDeadlock = new AtomicInteger();
+        String[] primeiroDeadlock = { null };
+        String[] ultimoVeredito = { "nenhuma verificação executada" };
+        sistema.setOnVerificacao(deadlocked -> {
+            verificacoes.incrementAndGet();
+            List<String> nomes = deadlocked.stream().map(Processo::getProcessoName).toList();
+            if (deadlocked.isEmpty()) {
+                ultimoVeredito[0] = "estado seguro";
+            } else {
+                comDeadlock.incrementAndGet();
+                ultimoVeredito[0] = "deadlock entre processos " + nomes;
+                if (primeiroDeadlock[0] == null)
+                    primeiroDeadlock[0] = relogioMs.getAsLong() / 1000.0 + "s entre processos "
+                            + nomes;
+            }
+        });
+
+        List<Processo> criados = new ArrayList<>();
+        String restauracao = null;
+        if (arquivoRestaurar != null) {
+            // Na simulação discreta o relógio virtual vem antes, para as idades do ponto de controle valerem nele
+            if (discreto)
+                simulacao[0] = new SimulacaoDiscreta(sistema, intervalo);
+            long inicioRestauracao = System.nanoTime();
+            PontoDeControle pc = PontoDeControle.ler(arquivoRestaurar);
+            try {
+                criados = pc.restaurar(sistema);
+            } catch (IllegalStateException e) {
+                throw new IOException("ponto de controle inconsistente: " + e.getMessage(), e);
+            }
+            restauracao = arquivoRestaurar + " (" + pc.getRecursos() + " recursos, " + pc.getProcessos()
+                    + " processos, " + pc.getInstancias() + " instâncias retidas, gravado em "
+                    + pc.getInstanteMs() / 1000.0 + "s) em "
+                    + String.format("%.3f", (System.nanoTime() - inicioRestauracao) / 1e6) + " ms";
+            if (pc.getDisponiveisCorrigidos() > 0)
+                restauracao += ", " + pc.getDisponiveisCorrigidos() + " disponíveis recalculados";
+        } else {
+            for (Recurso r : recursos) {
+                if (!sistema.adicionarRecurso(r))
+                    logger.accept("Recurso com ID repetido ignorado: " + r.getId());
+            }
+            for (int[] def : processos) {
+                Processo p = new Processo(def[0], def[1], def[2], sistema);
+                p.setPrioridade(def[3]);
+                for (int[] max : maximos) {
+                    if (max[0] == def[0])
+                        p.declararMaximo(max[1], max[2]);
+                }
+                sistema.adicionarProcesso(p);
+                criados.add(p);
+            }
+        }
+        // Depois de povoar o sistema: o trace começa com o estado atual, inclusive o restaurado
+        GravadorTrace trace = null;
+        if (arquivoTrace != null) {
+            try {
+                trace = new GravadorTrace(arquivoTrace);
+                sistema.setTrace(trace);
+            } catch (IOException e) {
+                System.err.println("Trace não gravado: " + e.getMessage());
+            }
+        }
+
+        List<String> statusRecursos;
+        List<String> statusProcessos;
+        long inicioExecucao = System.nanoTime();
+        String salvamento = null;
+        if (discreto) {
+            if (arquivoRestaurar != null) {
+                criados.forEach(simulacao[0]::retomarProcesso);
+            } else {
+                simulacao[0] = new SimulacaoDiscreta(sistema, intervalo);
+                criados.forEach(simulacao[0]::adicionarProcesso);
+            }
+            simulacao[0].executar(duracao * 1000L);
+            statusRecursos = sistema.statusRecursos();
+            statusProcessos = sistema.statusProcessos();
+            salvamento = salvar(sistema);
+        } else {
+            if (arquivoRestaurar != null)
+                criados.forEach(Processo::retomarDoPontoDeControle);
+            sistema.start();
+            criados.forEach(Processo::start);
+            Thread.sleep(duracao * 1000L);
+
+            // Estado capturado antes de encerrar, pois os processos liberam tudo ao serem interrompidos;
+            // pelo mesmo motivo o trace e o ponto de controle param aqui, no estado que o resumo mostra
+            statusRecursos = sistema.statusRecursos();
+            statusProcessos = sistema.statusProcessos();
+            sistema.setTrace(null);
+            salvamento = salvar(sistema);
+            for (Processo p : criados)
+                p.interrupt();
+            sistema.interrupt();
+            for (Processo p : criados)
+                p.join(1000);
+            sistema.join(1000);
+        }
+        double segundosReais = (System.nanoTime() - inicioExecucao) / 1e9;
+        sistema.getRegistroEventos().descarregar();
+        sistema.setTrace(null);
+        long registrosTrace = -1;
+        if (trace != null) {
+            try {
+                trace.close();
+                registrosTrace = trace.getRegistros();
+            } catch (IOException e) {
+                System.err.println("Trace incompleto: " + e.getMessage());
+            }
+        }
+
+        out.println("=== Resumo da simulação ===");
+        out.println("Cenário: " + nomeCenario);
+        out.println("Δt: " + intervalo + "s, duração: " + duracao + "s");
+        out.println("Recursos: " + sistema.getRecursos().size() + ", processos: " + criados.size());
+        if (restauracao != null)
+            out.println("Restaurado de " + restauracao);
+        if (discreto) {
+            out.println("Modo de execução: eventos discretos (" + simulacao[0].getEventosProcessados()
+                    + " eventos em " + String.format("%.3f", segundosReais) + "s reais)");
+        } else {
+            out.println("Modo de execução: " + modo.name().toLowerCase()
+                    + (modo == ModoExecucao.VIRTUAL && !ModoExecucao.virtualDisponivel()
+                            ? " (indisponível nesta JVM, usando threads de plataforma)"
+                            : ""));
+        }
+        long concessoes = sistema.getConcessoes();
+        out.println("Política de despertar: " + politica.name().toLowerCase() + " (" + sistema.getDespertares()
+                + " despertares, " + concessoes + " concessões, "
+                + (concessoes > 0 ? String.format("%.2f", (double) sistema.getDespertares() / concessoes) : "-")
+                + " despertares por concessão)");
+        if (evitacao)
+            out.println("Evitação de deadlock: ligada (algoritmo do banqueiro)");
+        out.println("Detecção: " + (deteccao == ModoDeteccao.PERIODICA
+                ? "periódica (a cada Δt)"
+                : "por evento (janela " + janelaMs + " ms"
+                        + (verificacaoPeriodica ? ", com verificação a cada Δt)" : ", sem verificação periódica)")));
+        out.println("Verificações executadas: " + verificacoes.get());
+        out.println("Verificações com deadlock: " + comDeadlock.get());
+        out.println("Primeiro deadlock: " + (primeiroDeadlock[0] != null ? primeiroDeadlock[0] : "nenhum"));
+        out.println("Último veredito: " + ultimoVeredito[0]);
+        if (recuperador != null) {
+            long episodios = recuperador.getRecuperacoes();
+            out.println("Recuperação: " + recuperador.getAcao().name().toLowerCase() + " (" + episodios
+                    + " recuperações, " + recuperador.getVitimas() + " vítimas, " + recuperador.getPreempcoes()
+                    + " preempções, tempo médio " + String.format("%.3f", episodios > 0
+                            ? recuperador.getTempoRecuperacaoNs() / 1e6 / episodios
+                            : 0.0)
+                    + " ms, " + recuperador.getInstanciasDesfeitas() + " instâncias desfeitas, trabalho perdido "
+                    + recuperador.getTrabalhoPerdidoMs() / 1000.0 + "s)");
+        }
+        Metricas metricas = sistema.getMetricas();
+        out.println("Métricas: " + metricas.getSolicitacoes() + " solicitações, " + metricas.getEsperas()
+                + " esperas, " + metricas.getLiberacoes() + " liberações");
+        metricas.getTempoEsperaMsPorRecurso()
+                .forEach((recurso, resumo) -> out.println("Espera em " + recurso + " (ms): " + resumo));
+        out.println("Retenção (ms): " + metricas.getTempoRetencaoMs());
+        out.println("Formação até relato do deadlock (ms): " + metricas.getLatenciaDeadlockMs());
+        out.println("Duração da detecção (µs): " + metricas.getDuracaoDeteccaoUs());
+        if (verboso) {
+            RegistroEventos registro = sistema.getRegistroEventos();
+            out.println("Log: " + registro.getProduzidos() + " eventos, " + registro.getDescartados()
+                    + " descartados");
+        }
+        if (registrosTrace >= 0)
+            out.println("Trace: " + registrosTrace + " registros em " + arquivoTrace);
+        if (salvamento != null)
+            out.println("Ponto de controle: " + salvamento);
+        out.println("Recursos disponíveis ao final:");
+        statusRecursos.forEach(out::println);
+        out.println("Processos ao final:");
+        statusProcessos.forEach(out::println);
+    }
+
+    // Com threads rodando o ponto de controle é feito sem parar os processos (ver PontoDeControle)
+    private String salvar(SistemaOperacional sistema) {
+        if (arquivoSalvar == null)
+            return null;
+        long inicio = System.nanoTime();
+        try {
+            PontoDeControle.gravar(sistema, arquivoSalvar);
+        } catch (IOException e) {
+            System.err.println("Ponto de controle não gravado: " + e.getMessage());
+            return null;
+        }
+        return arquivoSalvar + " gravado em " + String.format("%.3f", (System.nanoTime() - inicio) / 1e6) + " ms";
+    }
+}
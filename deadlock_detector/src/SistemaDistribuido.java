@@ -0,0 +1,141 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntConsumer;
+
+/**
+ * Recursos repartidos entre vários ShardRecursos que só conversam por mensagens (TransporteShards).
+ * O recurso r pertence ao shard r mod n e o processo p tem casa no shard p mod n; os clientes pedem,
+ * devolvem e abortam pela casa do processo, de forma assíncrona. Cada shard acha sozinho os ciclos
+ * que ficam dentro dele e, por sondas, os que atravessam shards (ver ShardRecursos).
+ *
+ * As sondas são contadas só quando passam pelo transporte, que é o custo que cresce com o número
+ * de shards. Um atraso antes de iniciar a computação evita sondas para esperas curtas, à custa da
+ * latência de detecção.
+ */
+public class SistemaDistribuido implements Closeable {
+    private final ShardRecursos[] shards;
+    private final TransporteShards transporte;
+    private final LongAdder mensagens = new LongAdder();
+    private final LongAdder sondas = new LongAdder();
+    private final LongAdder computacoes = new LongAdder();
+    private final LongAdder concessoes = new LongAdder();
+    private final LongAdder deadlocks = new LongAdder();
+    private volatile IntConsumer onDeadlock = p -> {
+    };
+    private volatile long atrasoSondaNs;
+    private boolean iniciado;
+
+    public SistemaDistribuido(int numShards, TransporteShards transporte) {
+        if (numShards < 1)
+            throw new IllegalArgumentException("Número de shards inválido: " + numShards);
+        this.transporte = transporte;
+        shards = new ShardRecursos[numShards];
+        for (int i = 0; i < numShards; i++)
+            shards[i] = new ShardRecursos(this, i, transporte);
+    }
+
+    /** Antes de iniciar: o recurso vai para o shard id mod n. */
+    public synchronized void adicionarRecurso(int id, int total) {
+        if (iniciado)
+            throw new IllegalStateException("Recursos só podem ser adicionados antes de iniciar");
+        shards[dono(id)].adicionarRecurso(id, total);
+    }
+
+    public synchronized void iniciar() throws IOException {
+        if (iniciado)
+            return;
+        transporte.conectar(shards);
+        for (ShardRecursos s : shards)
+            s.iniciar();
+        iniciado = true;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        for (ShardRecursos s : shards)
+            s.parar();
+        transporte.close();
+    }
+
+    public int getNumShards() {
+        return shards.length;
+    }
+
+    int casa(int processo) {
+        return Math.floorMod(processo, shards.length);
+    }
+
+    int dono(int recurso) {
+        return Math.floorMod(recurso, shards.length);
+    }
+
+    /** Pede uma instância; com um pedido ainda pendente, o novo é ignorado. */
+    public void solicitar(int processo, int recurso) {
+        shards[casa(processo)].receber(new MensagemShard(MensagemShard.PEDIR, processo, recurso));
+    }
+
+    public void liberar(int processo, int recurso) {
+        shards[casa(processo)].receber(new MensagemShard(MensagemShard.DEVOLVER, processo, recurso));
+    }
+
+    /** Desiste do pedido pendente e devolve tudo o que o processo retém (recuperação por vítima). */
+    public void abortar(int processo) {
+        shards[casa(processo)].receber(new MensagemShard(MensagemShard.ABORTAR, processo, -1));
+    }
+
+    /** Chamado na thread de um shard com o processo que iniciou a computação e está em deadlock. */
+    public void setOnDeadlock(IntConsumer c) {
+        this.onDeadlock = c;
+    }
+
+    public void setAtrasoSondaUs(long atrasoUs) {
+        this.atrasoSondaNs = TimeUnit.MICROSECONDS.toNanos(atrasoUs);
+    }
+
+    long getAtrasoSondaNs() {
+        return atrasoSondaNs;
+    }
+
+    void contar(MensagemShard m) {
+        mensagens.increment();
+        if (m.isSonda())
+            sondas.increment();
+    }
+
+    void computacaoIniciada() {
+        computacoes.increment();
+    }
+
+    void concedido() {
+        concessoes.increment();
+    }
+
+    void relatarDeadlock(int processo) {
+        deadlocks.increment();
+        onDeadlock.accept(processo);
+    }
+
+    /** Mensagens que passaram pelo transporte, de todos os tipos. */
+    public long getMensagens() {
+        return mensagens.sum();
+    }
+
+    /** Consultas e respostas que passaram pelo transporte. */
+    public long getSondas() {
+        return sondas.sum();
+    }
+
+    public long getComputacoes() {
+        return computacoes.sum();
+    }
+
+    public long getConcessoes() {
+        return concessoes.sum();
+    }
+
+    public long getDeadlocks() {
+        return deadlocks.sum();
+    }
+}
@@ -1,94 +1,396 @@
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class SistemaOperacional extends Thread {
-    private List<Recurso> recursos = new ArrayList<>();
+    private List<Recurso> recursos = new CopyOnWriteArrayList<>();
+    private Map<Integer, Recurso> recursosPorId = new ConcurrentHashMap<>();
     private List<Processo> processos = new CopyOnWriteArrayList<>();
-    private Map<Processo, List<RecursoInstance>> alocados = new HashMap<>(); // Alterado para RecursoInstance
+    // Conjuntos concorrentes por processo: concessões e liberações de processos diferentes não se cruzam
+    private Map<Processo, Set<RecursoInstance>> alocados = new ConcurrentHashMap<>();
     private Map<Processo, Recurso> aguardando = new ConcurrentHashMap<>();
-    private Map<Recurso, CopyOnWriteArrayList<Processo>> processosAguardando = new ConcurrentHashMap<>();
-    private java.util.function.Consumer<String> logger = System.out::println;
+    private Map<Recurso, FilaEspera> processosAguardando = new ConcurrentHashMap<>();
+    // Log assíncrono: o caminho quente só grava eventos tipados; as mensagens são montadas por outra thread
+    private final RegistroEventos registroEventos = new RegistroEventos(8192);
+    private volatile long origemMs = System.currentTimeMillis(); // instante zero dos eventos do log
     private static final AtomicInteger globalInstanceCounter = new AtomicInteger(0);
     private Runnable onUpdate = () -> {
     };
+    // Como um processo em espera é acordado; a simulação discreta troca por um evento no relógio virtual
+    private java.util.function.Consumer<Processo> despertador = Processo::notifyProcess;
+    private java.util.function.Consumer<List<Processo>> onVerificacao = deadlocked -> {
+    };
     private int intervaloVerificacao;
-    private int[][] allocationMatrix;
-    private int[][] requestMatrix;
-    private int[] availableVector;
+    private Random random = new Random();
+    // Todas as expirações de ΔTu dos processos deste sistema, em uma única thread
+    private final RodaTemporizacao rodaTemporizacao = new RodaTemporizacao(100, 512);
+    private volatile ModoExecucao modoExecucao = ModoExecucao.PLATAFORMA;
+    private volatile PoliticaDespertar politicaDespertar = PoliticaDespertar.FIFO;
+    // Instâncias entregues diretamente a um processo em espera, retiradas por ele ao acordar
+    private final Map<Processo, RecursoInstance> entregas = new ConcurrentHashMap<>();
+    private final Metricas metricas = new Metricas(this);
+    // Detecção por evento: o primeiro bloqueio depois de uma verificação arma deteccaoPendente e acorda
+    // o detector; os seguintes só encontram a flag armada e não custam nada até a próxima verificação
+    private volatile ModoDeteccao modoDeteccao = ModoDeteccao.PERIODICA;
+    private volatile boolean verificacaoPeriodica = true;
+    private volatile long janelaCoalescenciaMs = 50;
+    private final AtomicBoolean deteccaoPendente = new AtomicBoolean();
+    private final ReentrantLock travaDeteccao = new ReentrantLock();
+    private final Condition pedidoDeteccao = travaDeteccao.newCondition();
+    private Runnable agendadorDeteccao = this::acordarDetector;
+    // Modo de evitação: não nulo quando ligado; concessões e liberações passam pelo monitor dele
+    private volatile Banqueiro banqueiro;
+    private volatile RecuperadorDeadlock recuperador;
+    private boolean recuperando = false; // só a thread do detector lê e escreve
+    // Relógio em ms usado para medir tempos de uso; a simulação discreta troca pelo relógio virtual
+    private java.util.function.LongSupplier relogio = System::currentTimeMillis;
+    // Alocação/requisição esparsas mantidas por deltas, indexadas pelos índices estáveis de Processo e Recurso.
+    // O lock de registro só protege a atribuição de índices; o caminho quente não passa por ele.
+    private final Object travaRegistro = new Object();
+    private final EstadoEsparso estado = new EstadoEsparso();
+    private Processo[] processoPorIndice = new Processo[0];
+    private int proximoIndiceProcesso = 0;
+    private final Deque<Integer> indicesLivres = new ArrayDeque<>();
+    // Detecção incremental: só reexamina o que foi tocado desde a última verificação
+    private final Set<Processo> processosAlterados = ConcurrentHashMap.newKeySet();
+    private final Set<Recurso> recursosAlterados = ConcurrentHashMap.newKeySet();
+    private final Set<Processo> deadlockConhecido = new HashSet<>();
+    // Trace binário das transições, para reprodução offline; null quando não está gravando
+    private volatile GravadorTrace trace;
 
     public SistemaOperacional(int intervaloVerificacao) {
         this.intervaloVerificacao = intervaloVerificacao;
+        setLogger(System.out::println);
+        registroEventos.setNomeRecurso(id -> {
+            Recurso r = recursosPorId.get(id);
+            return r != null ? r.getNome() : "R" + id;
+        });
+    }
+
+    void setDespertador(java.util.function.Consumer<Processo> despertador) {
+        this.despertador = despertador;
+    }
+
+    public ModoExecucao getModoExecucao() {
+        return modoExecucao;
+    }
+
+    // Vale para os processos iniciados depois da chamada
+    public void setModoExecucao(ModoExecucao modo) {
+        this.modoExecucao = modo;
+    }
+
+    public PoliticaDespertar getPoliticaDespertar() {
+        return politicaDespertar;
+    }
+
+    public void setPoliticaDespertar(PoliticaDespertar politica) {
+        this.politicaDespertar = politica;
+    }
+
+    // Processos acordados por liberações, e concessões feitas (diretas ou por entrega): a razão
+    // entre os dois mostra quantos despertares cada concessão custa
+    public Metricas getMetricas() {
+        return metricas;
+    }
+
+    public int getProcessosAguardando() {
+        return aguardando.size();
+    }
+
+    public long getDespertares() {
+        return metricas.getDespertares();
+    }
+
+    public long getConcessoes() {
+        return metricas.getConcessoes();
+    }
+
+    public ModoDeteccao getModoDeteccao() {
+        return modoDeteccao;
+    }
+
+    public void setModoDeteccao(ModoDeteccao modo) {
+        this.modoDeteccao = modo;
+        acordarDetector(); // reavalia a espera atual com o novo modo
+    }
+
+    // No modo POR_EVENTO, mantém ou não a verificação a cada Δt como rede de segurança
+    public boolean isVerificacaoPeriodica() {
+        return verificacaoPeriodica;
+    }
+
+    public void setVerificacaoPeriodica(boolean ativa) {
+        this.verificacaoPeriodica = ativa;
+        acordarDetector();
+    }
+
+    public long getJanelaCoalescenciaMs() {
+        return janelaCoalescenciaMs;
+    }
+
+    public void setJanelaCoalescenciaMs(long janelaMs) {
+        this.janelaCoalescenciaMs = Math.max(0, janelaMs);
+    }
+
+    public int getIntervaloVerificacao() {
+        return intervaloVerificacao;
+    }
+
+    // Como um pedido de detecção chega ao detector; a simulação discreta troca por um evento no relógio virtual
+    void setAgendadorDeteccao(Runnable agendador) {
+        this.agendadorDeteccao = agendador;
+    }
+
+    public boolean isEvitarDeadlock() {
+        return banqueiro != null;
+    }
+
+    /**
+     * Liga o modo de evitação: cada concessão só acontece se o estado resultante for seguro pelo
+     * algoritmo do banqueiro, com as reivindicações declaradas em Processo.declararMaximo.
+     * Precisa ser ligado antes de adicionar processos.
+     */
+    public void setEvitarDeadlock(boolean evitar) {
+        synchronized (travaRegistro) {
+            if (!processos.isEmpty())
+                throw new IllegalStateException("O modo de evitação deve ser definido antes de adicionar processos");
+            if (!evitar) {
+                banqueiro = null;
+                return;
+            }
+            Banqueiro b = new Banqueiro();
+            for (Recurso r : recursos)
+                b.adicionarRecurso(r.getIndice(), r);
+            banqueiro = b;
+        }
+    }
+
+    public RecuperadorDeadlock getRecuperador() {
+        return recuperador;
+    }
+
+    // Recuperação automática a cada deadlock detectado; null desliga (só registra no log)
+    public void setRecuperador(RecuperadorDeadlock recuperador) {
+        this.recuperador = recuperador;
+    }
+
+    void setRelogio(java.util.function.LongSupplier relogio) {
+        this.relogio = relogio;
+        this.origemMs = relogio.getAsLong();
+    }
+
+    public long agoraMs() {
+        return relogio.getAsLong();
+    }
+
+    public RodaTemporizacao getRodaTemporizacao() {
+        return rodaTemporizacao;
     }
 
     public static int getNextGlobalInstanceId() {
         return globalInstanceCounter.getAndIncrement();
     }
 
+    static int peekNextGlobalInstanceId() {
+        return globalInstanceCounter.get();
+    }
+
+    // Restauração: IDs de instância novos não colidem com os das instâncias restauradas
+    static void garantirProximoInstanceId(int proximo) {
+        globalInstanceCounter.accumulateAndGet(proximo, Math::max);
+    }
+
+    // Cada linha do log passa por logFunc, na thread consumidora do registro; null desliga o log
     public void setLogger(java.util.function.Consumer<String> logFunc) {
-        this.logger = logFunc;
+        registroEventos.setSaida(logFunc == null ? null : lote -> {
+            for (RegistroEventos.Entrada e : lote)
+                logFunc.accept(e.getTexto());
+        });
+    }
+
+    public RegistroEventos getRegistroEventos() {
+        return registroEventos;
+    }
+
+    public GravadorTrace getTrace() {
+        return trace;
+    }
+
+    /**
+     * Passa a gravar as transições no trace (null para de gravar; fechar o gravador é de quem o criou).
+     * O trace começa com os recursos, processos, alocações e esperas atuais, então pode ser ligado com
+     * a simulação em andamento; o ideal é ligá-lo antes de iniciar os processos.
+     */
+    public void setTrace(GravadorTrace trace) {
+        if (trace != null) {
+            long agora = agoraMs() - origemMs;
+            for (Recurso r : recursos)
+                trace.gravarRecurso(agora, r);
+            for (Processo p : processos) {
+                gravarProcesso(trace, agora, p);
+                for (RecursoInstance ri : getAlocados(p))
+                    trace.gravar(GravadorTrace.CONCESSAO, 0, agora, p.getProcessoId(), ri.getRecurso().getId());
+                Recurso r = aguardando.get(p);
+                if (r != null)
+                    trace.gravar(GravadorTrace.ESPERA, 0, agora, p.getProcessoId(), r.getId());
+            }
+        }
+        this.trace = trace;
+    }
+
+    private static void gravarProcesso(GravadorTrace t, long instante, Processo p) {
+        t.gravar(GravadorTrace.PROCESSO, 0, instante, p.getProcessoId(), p.getDeltaS() << 16 | (p.getDeltaU() & 0xFFFF));
+    }
+
+    private void gravarTrace(byte tipo, int flags, Processo p, Recurso r) {
+        GravadorTrace t = trace;
+        if (t != null)
+            t.gravar(tipo, flags, agoraMs() - origemMs, p.getProcessoId(), r != null ? r.getId() : -1);
+    }
+
+    // Com o instante já lido por quem chama: o relógio de parede custa mais que o registro em si
+    private void gravarTrace(byte tipo, int flags, Processo p, Recurso r, long agora) {
+        GravadorTrace t = trace;
+        if (t != null)
+            t.gravar(tipo, flags, agora - origemMs, p.getProcessoId(), r.getId());
+    }
+
+    void registrarEvento(TipoEvento tipo, Processo p, Recurso r) {
+        registroEventos.registrar(tipo, agoraMs() - origemMs, p != null ? p.getProcessoId() : -1,
+                r != null ? r.getId() : -1);
     }
 
     public void setOnUpdate(Runnable r) {
         this.onUpdate = r;
     }
 
+    // Permite fixar a semente da escolha aleatória de recursos (cenários reproduzíveis)
+    public void setRandom(Random random) {
+        this.random = random;
+    }
+
+    // Chamado ao fim de cada verificação efetiva com os processos em deadlock (vazia se seguro)
+    public void setOnVerificacao(java.util.function.Consumer<List<Processo>> c) {
+        this.onVerificacao = c;
+    }
+
     public boolean adicionarRecurso(Recurso r) {
-        if (recursos.size() >= 10)
-            return false;
-        for (Recurso recurso : recursos) {
-            if (recurso.getId() == r.getId())
+        synchronized (travaRegistro) {
+            if (recursosPorId.putIfAbsent(r.getId(), r) != null)
                 return false;
+            int j = recursos.size();
+            r.setIndice(j);
+            estado.adicionarRecurso(j, r.getTotal());
+            processosAguardando.put(r, new FilaEspera());
+            metricas.adicionarRecurso(r);
+            GravadorTrace t = trace;
+            if (t != null)
+                t.gravarRecurso(agoraMs() - origemMs, r);
+            recursos.add(r);
+            Banqueiro b = banqueiro;
+            if (b != null) {
+                synchronized (b) {
+                    b.adicionarRecurso(j, r);
+                }
+            }
         }
-        recursos.add(r);
-        processosAguardando.put(r, new CopyOnWriteArrayList<>());
-        updateMatrices();
         return true;
     }
 
     public void adicionarProcesso(Processo p) {
-        if (processos.size() < 10) {
-            processos.add(p);
-            alocados.put(p, new ArrayList<>()); // Inicializa com lista de RecursoInstance
-            updateMatrices();
+        registrarProcesso(p);
+        processos.add(p);
+    }
+
+    // Em lote (restauração de ponto de controle): uma só cópia da lista de processos, em vez de uma por processo
+    void adicionarProcessos(List<Processo> novos) {
+        novos.forEach(this::registrarProcesso);
+        processos.addAll(novos);
+    }
+
+    private void registrarProcesso(Processo p) {
+        synchronized (travaRegistro) {
+            Integer livre = indicesLivres.poll();
+            int i = livre != null ? livre : proximoIndiceProcesso++;
+            p.setIndice(i);
+            estado.garantirProcessos(i + 1);
+            if (i >= processoPorIndice.length)
+                processoPorIndice = Arrays.copyOf(processoPorIndice, estado.getLinhas());
+            processoPorIndice[i] = p;
+            Banqueiro b = banqueiro;
+            if (b != null) {
+                synchronized (b) {
+                    b.adicionarProcesso(i, p, recursos);
+                }
+            }
         }
+        alocados.put(p, ConcurrentHashMap.newKeySet());
+        GravadorTrace t = trace;
+        if (t != null)
+            gravarProcesso(t, agoraMs() - origemMs, p);
     }
 
     public void removerProcesso(Processo p) {
         processos.remove(p);
-        List<RecursoInstance> recursosAlocados = alocados.get(p);
+        // Sai da fila antes de liberar: depois disso nenhuma entrega direta pode chegar a p
+        Recurso r = aguardando.remove(p);
+        if (r != null) {
+            processosAguardando.get(r).remover(p);
+            gravarTrace(GravadorTrace.FIM_ESPERA, 0, p, r);
+        }
+        Set<RecursoInstance> recursosAlocados = alocados.get(p);
         if (recursosAlocados != null) {
             for (RecursoInstance ri : new ArrayList<>(recursosAlocados)) {
-                liberarRecurso(p, ri); // Passa RecursoInstance
+                liberarRecurso(p, ri); // Passa RecursoInstance (inclui entrega ainda não retirada)
             }
             alocados.remove(p);
         }
-        Recurso r = aguardando.remove(p);
-        if (r != null) {
-            CopyOnWriteArrayList<Processo> list = processosAguardando.get(r);
-            if (list != null) {
-                list.remove(p);
+        entregas.remove(p);
+        marcarAlteracao(p, r);
+        gravarTrace(GravadorTrace.REMOCAO, 0, p, null);
+        synchronized (travaRegistro) {
+            int i = p.getIndice();
+            Banqueiro b = banqueiro;
+            if (b != null && i >= 0) {
+                synchronized (b) {
+                    b.removerProcesso(i);
+                }
+            }
+            if (i >= 0) {
+                estado.limparLinha(i);
+                processoPorIndice[i] = null;
+                indicesLivres.push(i);
+                p.setIndice(-1);
             }
         }
-        updateMatrices();
         onUpdate.run();
     }
 
     public void limparAguardando(Processo p) {
         Recurso r = aguardando.remove(p);
         if (r != null) {
-            CopyOnWriteArrayList<Processo> list = processosAguardando.get(r);
-            if (list != null) {
-                list.remove(p);
-                logger.accept(
-                        "Processo " + p.getProcessoName() + " removido de processosAguardando para " + r.getNome());
+            gravarTrace(GravadorTrace.FIM_ESPERA, 0, p, r);
+            if (processosAguardando.get(r).remover(p)) {
+                registrarEvento(TipoEvento.SAIDA_ESPERA, p, r);
             }
-            updateMatrices();
+            fimEspera(p, r);
+            definirRequisicao(p, r, 0);
+            marcarAlteracao(p, r);
             onUpdate.run();
         }
     }
 
+    // Instância recebida por entrega direta enquanto p aguardava, ou null; só pode ser retirada uma vez
+    public RecursoInstance retirarEntrega(Processo p) {
+        return entregas.remove(p);
+    }
+
     public Recurso getRecursoAguardado(Processo p) {
         return aguardando.get(p);
     }
@@ -102,7 +404,8 @@ public class SistemaOperacional extends Thread {
     }
 
     public List<RecursoInstance> getAlocados(Processo p) {
-        return new ArrayList<>(alocados.getOrDefault(p, new ArrayList<>()));
+        Set<RecursoInstance> recursosAlocados = alocados.get(p);
+        return recursosAlocados != null ? new ArrayList<>(recursosAlocados) : new ArrayList<>();
     }
 
     public int getTotalRecursosSistema() {
@@ -110,87 +413,399 @@ public class SistemaOperacional extends Thread {
     }
 
     public Recurso solicitarRecurso(Processo p, RecursoInstance instance) {
-        List<RecursoInstance> recursosAlocados = alocados.getOrDefault(p, new ArrayList<>());
-        Random random = new Random();
+        metricas.solicitacao();
+        gravarTrace(GravadorTrace.SOLICITACAO, 0, p, null);
+        EventosJfr.Solicitacao evento = new EventosJfr.Solicitacao();
+        evento.begin();
+        Recurso concedido = sortearEConceder(p, instance);
+        evento.end();
+        if (evento.shouldCommit()) {
+            Recurso r = concedido != null ? concedido : aguardando.get(p);
+            evento.processo = p.getProcessoId();
+            evento.resultado = concedido != null ? "concedido" : r != null ? "aguardando" : "sem recurso";
+            if (r != null) {
+                evento.recurso = r.getId();
+                evento.nomeRecurso = r.getNome();
+            }
+            evento.commit();
+        }
+        return concedido;
+    }
 
+    private Recurso sortearEConceder(Processo p, RecursoInstance instance) {
         while (true) {
-            List<Recurso> recursosExistentes = new ArrayList<>(recursos);
-            if (recursosExistentes.isEmpty()) {
+            int m = recursos.size();
+            if (m == 0) {
                 return null;
             }
-            Recurso r = recursosExistentes.get(random.nextInt(recursosExistentes.size()));
+            Recurso r = recursos.get(random.nextInt(m));
+            Banqueiro b = banqueiro;
+            if (b != null)
+                return solicitarComEvitacao(b, p, instance, r);
 
             if (r.getDisponivel() > 0) {
-                if (r.alocar()) {
-                    instance.setRecurso(r);
-                    alocados.computeIfAbsent(p, k -> new ArrayList<>()).add(instance);
-                    Recurso prev = aguardando.remove(p);
-                    if (prev != null) {
-                        processosAguardando.get(prev).remove(p);
-                    }
-                    logger.accept("Processo " + p.getProcessoName() + " obteve recurso " + r.getNome());
-                    updateMatrices();
-                    onUpdate.run();
+                if (concederRecurso(p, instance, r)) {
                     return r;
                 }
             } else {
-                long countAlocados = recursosAlocados.stream().filter(ri -> ri.getRecurso() == r).count();
-                if (countAlocados < r.getTotal()) {
-                    synchronized (processosAguardando) {
-                        if (aguardando.putIfAbsent(p, r) == null) { // Só adiciona se não estiver aguardando
-                            CopyOnWriteArrayList<Processo> waitingList = processosAguardando.computeIfAbsent(r,
-                                    k -> new CopyOnWriteArrayList<>());
-                            if (!waitingList.contains(p)) {
-                                waitingList.add(p);
-                                //logger.accept("Processo " + p.getProcessoName()
-                                   //     + " adicionado a processosAguardando para " + r.getNome());
-                            } else {
-                                //logger.accept("Processo " + p.getProcessoName()
-                                  //      + " já está em processosAguardando para " + r.getNome());
-                            }
-                            updateMatrices();
-                            onUpdate.run();
-                        }
-                    }
-                    return null;
-                } else {
-                    return null;
+                long countAlocados = quantidadeAlocada(p, r);
+                if (countAlocados < r.getTotal() && !registrarEspera(p, r)) {
+                    continue; // liberado entre a escolha e a espera: tenta de novo
+                }
+                return null;
+            }
+        }
+    }
+
+    // Modo de evitação: concede só se o banqueiro disser que o estado resultante é seguro; senão p
+    // aguarda r mesmo que haja instância livre, e é reavaliado a cada liberação
+    private Recurso solicitarComEvitacao(Banqueiro b, Processo p, RecursoInstance instance, Recurso r) {
+        boolean aguardar;
+        synchronized (b) {
+            int resultado = b.reservar(p.getIndice(), r.getIndice());
+            if (resultado == Banqueiro.CONCEDIDO) {
+                // A reserva garante a instância livre enquanto o banqueiro e o recurso concordam
+                if (!concederRecurso(p, instance, r)) {
+                    b.liberar(p.getIndice(), r.getIndice());
+                    throw new IllegalStateException("Banqueiro reservou " + r.getNome() + " para o processo "
+                            + p.getProcessoName() + " sem instância livre");
                 }
+                return r;
             }
+            aguardar = resultado == Banqueiro.INSEGURO && aguardando.putIfAbsent(p, r) == null;
+            if (aguardar) {
+                long agora = agoraMs();
+                p.setEsperandoDesde(agora);
+                processosAguardando.get(r).adicionar(p);
+                gravarTrace(GravadorTrace.ESPERA, 0, p, r, agora);
+                definirRequisicao(p, r, 1);
+                marcarAlteracao(p, r);
+            }
+        }
+        if (aguardar) {
+            metricas.espera();
+            registrarEvento(TipoEvento.ESPERA_INSEGURA, p, r);
+            solicitarDeteccao();
+            onUpdate.run();
         }
+        return null;
+    }
+
+    // Aloca uma instância de r para p, se houver; usado também por cenários determinísticos
+    boolean concederRecurso(Processo p, RecursoInstance instance, Recurso r) {
+        if (!r.alocar())
+            return false;
+        long agora = agoraMs();
+        gravarTrace(GravadorTrace.CONCESSAO, 0, p, r, agora);
+        instance.setRecurso(r);
+        instance.setConcedidoEm(agora);
+        alocados.computeIfAbsent(p, k -> ConcurrentHashMap.newKeySet()).add(instance);
+        Recurso prev = aguardando.remove(p);
+        if (prev != null) {
+            processosAguardando.get(prev).remover(p);
+            definirRequisicao(p, prev, 0);
+            marcarAlteracao(p, prev);
+            fimEspera(p, prev);
+        }
+        registrarAlocacao(p, r, 1);
+        marcarAlteracao(p, r);
+        metricas.concessao();
+        registrarEvento(TipoEvento.CONCESSAO, p, r);
+        emitirConcessao(p, r, instance, false);
+        onUpdate.run();
+        return true;
+    }
+
+    // Coloca p na fila de espera de r, se ainda não estiver aguardando algum recurso. Devolve false,
+    // sem enfileirar, se r tiver instância livre: como a liberação incrementa o disponível antes de
+    // drenar a fila sob o mesmo lock, conferir aqui garante que nenhum despertar se perde.
+    boolean registrarEspera(Processo p, Recurso r) {
+        FilaEspera fila = processosAguardando.get(r);
+        fila.trava().lock();
+        try {
+            if (r.getDisponivel() > 0)
+                return false;
+            if (aguardando.putIfAbsent(p, r) != null) // Só adiciona se não estiver aguardando
+                return true;
+            long agora = agoraMs();
+            p.setEsperandoDesde(agora);
+            fila.adicionar(p);
+            gravarTrace(GravadorTrace.ESPERA, 0, p, r, agora);
+            definirRequisicao(p, r, 1);
+            marcarAlteracao(p, r);
+        } finally {
+            fila.trava().unlock();
+        }
+        metricas.espera();
+        registrarEvento(TipoEvento.ESPERA, p, r);
+        solicitarDeteccao();
+        onUpdate.run();
+        return true;
+    }
+
+    // Uma nova aresta de espera pode fechar um ciclo: no modo POR_EVENTO, pede uma verificação
+    private void solicitarDeteccao() {
+        if (modoDeteccao == ModoDeteccao.POR_EVENTO && deteccaoPendente.compareAndSet(false, true))
+            agendadorDeteccao.run();
+    }
+
+    private void acordarDetector() {
+        travaDeteccao.lock();
+        try {
+            pedidoDeteccao.signalAll();
+        } finally {
+            travaDeteccao.unlock();
+        }
+    }
+
+    // Atende o pedido de detecção pendente; bloqueios durante a verificação armam um novo pedido
+    void executarDeteccaoPendente() {
+        deteccaoPendente.set(false);
+        detectarDeadlock();
     }
 
     public void liberarRecurso(Processo p, RecursoInstance instance) { // Alterado para RecursoInstance
-        List<RecursoInstance> recursosAlocados = alocados.get(p);
-        // logger.accept(recursosAlocados.toString());
+        Set<RecursoInstance> recursosAlocados = alocados.get(p);
         if (recursosAlocados != null) {
             Recurso r = instance.getRecurso();
             if (recursosAlocados.remove(instance)) {
-                r.liberar();
-                logger.accept("Processo " + p.getProcessoName() + " liberou recurso " + r.getNome());
-                notifyWaitingProcesses(r);
-                updateMatrices();
+                long agora = agoraMs();
+                gravarTrace(GravadorTrace.LIBERACAO, 0, p, r, agora); // antes de a instância voltar ou ser entregue
+                registrarAlocacao(p, r, -1);
+                marcarAlteracao(p, r);
+                long retencao = agora - instance.getConcedidoEm();
+                metricas.liberacao(retencao);
+                registrarEvento(TipoEvento.LIBERACAO, p, r);
+                EventosJfr.Liberacao evento = new EventosJfr.Liberacao();
+                if (evento.shouldCommit()) {
+                    evento.processo = p.getProcessoId();
+                    evento.recurso = r.getId();
+                    evento.nomeRecurso = r.getNome();
+                    evento.instancia = instance.getInstanceId();
+                    evento.retencao = retencao;
+                    evento.commit();
+                }
+                Banqueiro b = banqueiro;
+                if (b != null) {
+                    liberarComEvitacao(b, p, r);
+                } else if (politicaDespertar == PoliticaDespertar.TODOS) {
+                    r.liberar();
+                    notifyWaitingProcesses(r);
+                } else {
+                    entregarAoProximo(r);
+                }
                 onUpdate.run();
             } else {
-                logger.accept("Falha ao remover " + r.getNome() + " de recursosAlocados para " + p.getProcessoName());
+                registrarEvento(TipoEvento.FALHA_LIBERACAO, p, r);
+            }
+        }
+    }
+
+    // Devolve a instância e reavalia as esperas: qualquer liberação pode tornar segura a concessão
+    // adiada de um processo que aguarda outro recurso. Cada fila é atendida em ordem de chegada.
+    private void liberarComEvitacao(Banqueiro b, Processo p, Recurso r) {
+        List<Processo> atendidos = new ArrayList<>();
+        List<Recurso> recebidos = new ArrayList<>();
+        synchronized (b) {
+            if (p.getIndice() >= 0)
+                b.liberar(p.getIndice(), r.getIndice());
+            r.liberar();
+            for (Recurso aguardado : recursos) {
+                FilaEspera fila = processosAguardando.get(aguardado);
+                if (aguardado.getDisponivel() == 0 || fila.isEmpty())
+                    continue;
+                for (Processo w : fila.copia()) {
+                    if (aguardando.get(w) != aguardado || w.getIndice() < 0)
+                        continue;
+                    if (b.reservar(w.getIndice(), aguardado.getIndice()) != Banqueiro.CONCEDIDO)
+                        continue;
+                    aguardado.alocar();
+                    fila.remover(w);
+                    aguardando.remove(w, aguardado);
+                    registrarEntrega(w, aguardado);
+                    atendidos.add(w);
+                    recebidos.add(aguardado);
+                }
             }
         }
+        for (int k = 0; k < atendidos.size(); k++)
+            acordarComEntrega(atendidos.get(k), recebidos.get(k));
     }
 
-    private synchronized void notifyWaitingProcesses(Recurso r) {
-        CopyOnWriteArrayList<Processo> waiting = processosAguardando.getOrDefault(r, new CopyOnWriteArrayList<>());
-        //logger.accept("Verificando notificação para " + r.getNome() + ", lista: "
-        //        + waiting.stream().map(p -> p.getProcessoName()).collect(Collectors.joining(", ")));
-        if (!waiting.isEmpty()) {
-            for (Processo p : new ArrayList<>(waiting)) { // Cria uma cópia para evitar ConcurrentModificationException
-                aguardando.remove(p); // Remove da lista de aguardando
-                p.notifyProcess();
-                waiting.remove(p); // Remove da cópia
+    private void notifyWaitingProcesses(Recurso r) {
+        FilaEspera fila = processosAguardando.get(r);
+        List<Processo> waiting;
+        fila.trava().lock();
+        try {
+            waiting = fila.drenar(); // Limpa a fila na notificação
+            for (Processo p : waiting) {
+                if (aguardando.remove(p, r)) { // Remove da lista de aguardando
+                    gravarTrace(GravadorTrace.FIM_ESPERA, 0, p, r);
+                    definirRequisicao(p, r, 0);
+                    fimEspera(p, r);
+                }
+                marcarAlteracao(p, r);
             }
-            processosAguardando.remove(r); // Limpa a lista após notificação
+        } finally {
+            fila.trava().unlock();
+        }
+        // Acorda fora do lock da fila: despertar pode bloquear no lock do processo
+        metricas.despertares(waiting.size());
+        for (Processo p : waiting) {
+            despertador.accept(p);
         }
     }
 
+    // Entrega a instância liberada de r ao próximo processo elegível da fila, sem passar pelo contador
+    // de disponíveis, e acorda só ele. Sem ninguém na fila a instância volta ao contador; isso acontece
+    // sob o lock da fila, então um registrarEspera concorrente ou enfileira antes ou vê a instância livre.
+    private void entregarAoProximo(Recurso r) {
+        FilaEspera fila = processosAguardando.get(r);
+        Processo proximo;
+        fila.trava().lock();
+        try {
+            do {
+                proximo = fila.retirarProximo(politicaDespertar == PoliticaDespertar.PRIORIDADE);
+            } while (proximo != null && !aguardando.remove(proximo, r)); // desistiu da espera: pula
+            if (proximo != null)
+                registrarEntrega(proximo, r);
+            else
+                r.liberar();
+        } finally {
+            fila.trava().unlock();
+        }
+        if (proximo != null)
+            acordarComEntrega(proximo, r);
+    }
+
+    // Registra uma instância de r como alocada a p, que já saiu da fila, para p retirar ao acordar
+    private void registrarEntrega(Processo p, Recurso r) {
+        long agora = agoraMs();
+        gravarTrace(GravadorTrace.CONCESSAO, 1, p, r, agora);
+        fimEspera(p, r);
+        RecursoInstance entregue = new RecursoInstance(r, getNextGlobalInstanceId());
+        entregue.setConcedidoEm(agora);
+        alocados.computeIfAbsent(p, k -> ConcurrentHashMap.newKeySet()).add(entregue);
+        definirRequisicao(p, r, 0);
+        registrarAlocacao(p, r, 1);
+        marcarAlteracao(p, r);
+        entregas.put(p, entregue);
+        emitirConcessao(p, r, entregue, true);
+    }
+
+    private static void emitirConcessao(Processo p, Recurso r, RecursoInstance instance, boolean direta) {
+        EventosJfr.Concessao evento = new EventosJfr.Concessao();
+        if (evento.shouldCommit()) {
+            evento.processo = p.getProcessoId();
+            evento.recurso = r.getId();
+            evento.nomeRecurso = r.getNome();
+            evento.instancia = instance.getInstanceId();
+            evento.entregaDireta = direta;
+            evento.commit();
+        }
+    }
+
+    // p saiu da fila de r (atendido, acordado ou desistiu): registra quanto tempo ficou nela
+    private void fimEspera(Processo p, Recurso r) {
+        metricas.fimEspera(r, agoraMs() - p.getEsperandoDesde());
+    }
+
+    private void acordarComEntrega(Processo p, Recurso r) {
+        metricas.concessao();
+        metricas.despertares(1);
+        registrarEvento(TipoEvento.ENTREGA, p, r);
+        despertador.accept(p);
+    }
+
+    // Recuperação por reinício: desfaz o trabalho em andamento da vítima, devolve tudo o que ela retém
+    // (inclusive uma entrega ainda não retirada), tira-a da espera e a acorda para recomeçar o ciclo
+    void reiniciarProcesso(Processo vitima) {
+        vitima.prepararReinicio(agoraMs());
+        limparAguardando(vitima);
+        entregas.remove(vitima);
+        for (RecursoInstance ri : getAlocados(vitima))
+            liberarRecurso(vitima, ri);
+        registrarEvento(TipoEvento.REINICIO, vitima, null);
+        despertador.accept(vitima);
+    }
+
+    // Recuperação por preempção: retira da vítima a instância informada; ela continua aguardando o que pediu
+    void preemptarInstancia(Processo vitima, RecursoInstance instance) {
+        vitima.perderInstancia(instance);
+        entregas.remove(vitima, instance);
+        registrarEvento(TipoEvento.PREEMPCAO, vitima, instance.getRecurso());
+        liberarRecurso(vitima, instance);
+    }
+
+    // Entregas diretas ainda não retiradas pelo processo acordado; usado pelo ponto de controle
+    RecursoInstance getEntrega(Processo p) {
+        return entregas.get(p);
+    }
+
+    List<Processo> getFilaEspera(Recurso r) {
+        FilaEspera fila = processosAguardando.get(r);
+        return fila != null ? fila.copia() : new ArrayList<>();
+    }
+
+    long getOrigemMs() {
+        return origemMs;
+    }
+
+    // Restauração de ponto de controle: instância retida por p desde concedidoEm, sem evento nem métrica;
+    // entrega: recebida da fila, mas ainda não retirada pelo processo
+    void restaurarAlocacao(Processo p, RecursoInstance instance, long concedidoEm, boolean entrega) {
+        Recurso r = instance.getRecurso();
+        if (!r.alocar())
+            throw new IllegalStateException("Mais instâncias de " + r.getNome() + " retidas que o total");
+        instance.setConcedidoEm(concedidoEm);
+        alocados.computeIfAbsent(p, k -> ConcurrentHashMap.newKeySet()).add(instance);
+        registrarAlocacao(p, r, 1);
+        Banqueiro b = banqueiro;
+        if (b != null) {
+            synchronized (b) {
+                b.restaurarAlocacao(p.getIndice(), r.getIndice());
+            }
+        }
+        marcarAlteracao(p, r);
+        if (entrega)
+            entregas.put(p, instance);
+    }
+
+    // Reprodução de trace: a espera entra direto no fim da fila, sem conferir disponíveis nem pedir detecção
+    void reproduzirEspera(Processo p, Recurso r) {
+        if (restaurarEspera(p, r))
+            metricas.espera();
+    }
+
+    // Restauração de ponto de controle: como reproduzirEspera, sem métrica
+    boolean restaurarEspera(Processo p, Recurso r) {
+        if (aguardando.putIfAbsent(p, r) != null)
+            return false;
+        p.setEsperandoDesde(agoraMs());
+        processosAguardando.get(r).adicionar(p);
+        definirRequisicao(p, r, 1);
+        marcarAlteracao(p, r);
+        return true;
+    }
+
+    // Reprodução de trace: devolve ao contador uma instância de r retida por p, sem entrega nem despertar
+    // (o trace já traz a concessão que a liberação provocou); devolve a instância, ou null se p não retém r
+    RecursoInstance reproduzirLiberacao(Processo p, Recurso r) {
+        Set<RecursoInstance> recursosAlocados = alocados.get(p);
+        if (recursosAlocados == null)
+            return null;
+        for (RecursoInstance ri : recursosAlocados) {
+            if (ri.getRecurso() == r && recursosAlocados.remove(ri)) {
+                registrarAlocacao(p, r, -1);
+                marcarAlteracao(p, r);
+                metricas.liberacao(agoraMs() - ri.getConcedidoEm());
+                r.liberar();
+                return ri;
+            }
+        }
+        return null;
+    }
+
     public List<String> statusRecursos() {
         List<String> resultado = new ArrayList<>();
         if (recursos.isEmpty()) {
@@ -221,89 +836,140 @@ public class SistemaOperacional extends Thread {
     }
 
     public String getAllocationMatrixString() {
-        updateMatrices();
-        StringBuilder sb = new StringBuilder();
-        if (processos.isEmpty() || recursos.isEmpty()) {
-            sb.append("Nenhuma alocação disponível.");
-            return sb.toString();
-        }
-        sb.append(String.format("%-6s", ""));
-        for (Recurso r : recursos) {
-            sb.append(String.format("%-4s", r.getNome()));
-        }
-        sb.append("\n");
-        for (int i = 0; i < processos.size(); i++) {
-            sb.append(String.format("%-6s", "P" + processos.get(i).getProcessoName()));
-            for (int j = 0; j < recursos.size(); j++) {
-                sb.append(String.format("%-4d", allocationMatrix[i][j]));
-            }
-            sb.append("\n");
+        if (processos.isEmpty() || recursos.isEmpty())
+            return "Nenhuma alocação disponível.";
+        StringBuilder sb = new StringBuilder(cabecalhoMatriz()).append("\n");
+        int[] linha = new int[estado.getNumRecursos()];
+        for (Processo p : processos) {
+            if (p.getIndice() >= 0)
+                sb.append(linhaAlocacao(p, linha)).append("\n");
         }
         return sb.toString();
     }
 
     public String getRequestMatrixString() {
-        updateMatrices();
-        StringBuilder sb = new StringBuilder();
-        if (processos.isEmpty() || recursos.isEmpty()) {
-            sb.append("Nenhuma requisição disponível.");
-            return sb.toString();
-        }
-        sb.append(String.format("%-6s", ""));
-        for (Recurso r : recursos) {
-            sb.append(String.format("%-4s", r.getNome()));
-        }
-        sb.append("\n");
-        for (int i = 0; i < processos.size(); i++) {
-            sb.append(String.format("%-6s", "P" + processos.get(i).getProcessoName()));
-            for (int j = 0; j < recursos.size(); j++) {
-                sb.append(String.format("%-4d", requestMatrix[i][j]));
-            }
-            sb.append("\n");
+        if (processos.isEmpty() || recursos.isEmpty())
+            return "Nenhuma requisição disponível.";
+        StringBuilder sb = new StringBuilder(cabecalhoMatriz()).append("\n");
+        int[] linha = new int[estado.getNumRecursos()];
+        for (Processo p : processos) {
+            if (p.getIndice() >= 0)
+                sb.append(linhaRequisicao(p, linha)).append("\n");
         }
         return sb.toString();
     }
 
-    private void updateMatrices() {
-        int n = processos.size();
-        int m = recursos.size();
-        allocationMatrix = new int[n][m];
-        requestMatrix = new int[n][m];
-        availableVector = new int[m];
+    // Linhas das matrizes em texto, colunas de 4 caracteres; usadas também pela VisaoMatrizes
+    String cabecalhoMatriz() {
+        StringBuilder sb = new StringBuilder();
+        alinhar(sb, "", 6);
+        for (Recurso r : recursos)
+            alinhar(sb, r.getNome(), 4);
+        return sb.toString();
+    }
+
+    // Versão da linha de p no estado, que muda a cada alteração de alocação ou pedido; -1 se p saiu
+    int versaoLinha(Processo p) {
+        int i = p.getIndice();
+        return i >= 0 ? estado.versao(i) : -1;
+    }
 
-        for (int i = 0; i < n; i++) {
-            for (int j = 0; j < m; j++) {
-                allocationMatrix[i][j] = 0;
-                requestMatrix[i][j] = 0;
-            }
+    String linhaAlocacao(Processo p, int[] linha) {
+        int i = p.getIndice();
+        if (i >= 0)
+            estado.expandirLinha(i, linha);
+        else
+            Arrays.fill(linha, 0);
+        return formatarLinha(p, linha);
+    }
+
+    String linhaRequisicao(Processo p, int[] linha) {
+        Arrays.fill(linha, 0);
+        int i = p.getIndice();
+        int pedido = i >= 0 ? estado.pedido(i) : -1;
+        if (pedido >= 0 && pedido < linha.length)
+            linha[pedido] = 1;
+        return formatarLinha(p, linha);
+    }
+
+    private static String formatarLinha(Processo p, int[] linha) {
+        StringBuilder sb = new StringBuilder(6 + 4 * linha.length);
+        alinhar(sb, "P" + p.getProcessoName(), 6);
+        for (int valor : linha)
+            alinhar(sb, Integer.toString(valor), 4);
+        return sb.toString();
+    }
+
+    // Mesmo efeito de String.format("%-<largura>s"), sem o custo do parser de formato
+    private static void alinhar(StringBuilder sb, String texto, int largura) {
+        sb.append(texto);
+        for (int k = texto.length(); k < largura; k++)
+            sb.append(' ');
+    }
+
+    /**
+     * Instantâneo denso do estado atual para a AnaliseLote: linhas na ordem de getProcessos(),
+     * colunas na ordem de getRecursos().
+     */
+    public AnaliseLote.Instantaneo capturarInstantaneo() {
+        List<Processo> lista = new ArrayList<>(processos);
+        int m = estado.getNumRecursos();
+        int[][] alocacao = new int[lista.size()][m];
+        int[][] requisicao = new int[lista.size()][m];
+        for (int k = 0; k < lista.size(); k++) {
+            int i = lista.get(k).getIndice();
+            if (i < 0)
+                continue;
+            estado.expandirLinha(i, alocacao[k]);
+            int pedido = estado.pedido(i);
+            if (pedido >= 0 && pedido < m)
+                requisicao[k][pedido] = 1;
         }
-        for (int j = 0; j < m; j++) {
-            availableVector[j] = recursos.get(j).getDisponivel();
+        int[] disponivel = new int[m];
+        for (Recurso r : recursos) {
+            if (r.getIndice() < m)
+                disponivel[r.getIndice()] = r.getDisponivel();
         }
+        return new AnaliseLote.Instantaneo(alocacao, requisicao, disponivel);
+    }
 
-        for (int i = 0; i < n; i++) {
-            Processo p = processos.get(i);
-            List<RecursoInstance> recursosAlocados = alocados.getOrDefault(p, new ArrayList<>());
-            for (RecursoInstance ri : recursosAlocados) {
-                int j = recursos.indexOf(ri.getRecurso());
-                if (j >= 0)
-                    allocationMatrix[i][j]++;
-            }
-            Recurso r = aguardando.get(p);
-            if (r != null) {
-                int j = recursos.indexOf(r);
-                if (j >= 0)
-                    requestMatrix[i][j] = 1;
-            }
-        }
+    private void registrarAlocacao(Processo p, Recurso r, int delta) {
+        int i = p.getIndice();
+        int j = r.getIndice();
+        if (i >= 0 && j >= 0)
+            estado.alocar(i, j, delta);
+    }
+
+    private int quantidadeAlocada(Processo p, Recurso r) {
+        int i = p.getIndice();
+        int j = r.getIndice();
+        return i >= 0 && j >= 0 ? estado.quantidade(i, j) : 0;
+    }
+
+    private void definirRequisicao(Processo p, Recurso r, int valor) {
+        int i = p.getIndice();
+        int j = r.getIndice();
+        if (i < 0 || j < 0)
+            return;
+        if (valor > 0)
+            estado.definirPedido(i, j);
+        else
+            estado.limparPedido(i, j);
     }
 
     @Override
     public void run() {
+        long intervaloNs = TimeUnit.SECONDS.toNanos(intervaloVerificacao);
+        long proximaPeriodica = System.nanoTime() + intervaloNs;
         while (!isInterrupted()) {
             try {
-                Thread.sleep(intervaloVerificacao * 1000L);
-                detectarDeadlock();
+                if (aguardarDeteccao(proximaPeriodica)) {
+                    Thread.sleep(janelaCoalescenciaMs); // bloqueios da mesma rajada entram nesta verificação
+                    executarDeteccaoPendente();
+                } else {
+                    proximaPeriodica = System.nanoTime() + intervaloNs;
+                    executarDeteccaoPendente();
+                }
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
                 break;
@@ -311,55 +977,342 @@ public class SistemaOperacional extends Thread {
         }
     }
 
-    private void detectarDeadlock() {
+    // Espera um pedido de detecção (true) ou o prazo da verificação periódica (false)
+    private boolean aguardarDeteccao(long prazoPeriodica) throws InterruptedException {
+        travaDeteccao.lock();
+        try {
+            while (true) {
+                boolean porEvento = modoDeteccao == ModoDeteccao.POR_EVENTO;
+                if (porEvento && deteccaoPendente.get())
+                    return true;
+                if (!porEvento || verificacaoPeriodica) {
+                    long restante = prazoPeriodica - System.nanoTime();
+                    if (restante <= 0)
+                        return false;
+                    pedidoDeteccao.awaitNanos(restante);
+                } else {
+                    pedidoDeteccao.await();
+                }
+            }
+        } finally {
+            travaDeteccao.unlock();
+        }
+    }
+
+    private void marcarAlteracao(Processo p, Recurso r) {
+        if (p != null)
+            processosAlterados.add(p);
+        if (r != null)
+            recursosAlterados.add(r);
+    }
+
+    // Descarta o resultado incremental e força a próxima verificação a reexaminar todo o grafo
+    void invalidarVerificacao() {
+        for (Processo p : processos)
+            processosAlterados.add(p);
+        recursosAlterados.addAll(recursos);
+    }
+
+    // Força a próxima verificação a reexaminar esses processos, o que retêm e o que aguardam
+    void reavaliar(Collection<Processo> conjunto) {
+        for (Processo p : conjunto) {
+            marcarAlteracao(p, getRecursoAguardado(p));
+            for (RecursoInstance ri : getAlocados(p))
+                marcarAlteracao(null, ri.getRecurso());
+        }
+    }
+
+    // Devolve os processos em deadlock após a verificação (e a recuperação, se ligada)
+    List<Processo> detectarDeadlock() {
         if (recursos.isEmpty() || processos.size() <= 1)
-            return;
+            return new ArrayList<>();
+        // Nenhuma aresta mudou desde a última verificação: o resultado anterior continua válido
+        if (processosAlterados.isEmpty() && recursosAlterados.isEmpty())
+            return deadlockConhecidoEmOrdem();
+
+        long inicioNs = System.nanoTime();
+        EventosJfr.Deteccao evento = new EventosJfr.Deteccao();
+        evento.begin();
+        List<Processo> tocados = new ArrayList<>(processosAlterados);
+        processosAlterados.removeAll(tocados);
+        List<Recurso> recursosTocados = new ArrayList<>(recursosAlterados);
+        recursosAlterados.removeAll(recursosTocados);
+
+        List<Processo> regiao = new ArrayList<>();
+        List<Processo> pendentes = new ArrayList<>();
+        int n = estado.getLinhas();
+        int m = estado.getNumRecursos();
+
+        // Processos sem requisição sempre terminam na redução, então só os bloqueados entram no grafo.
+        // Cada linha é copiada sob o lock da própria linha; mudanças concorrentes marcam a região
+        // como alterada e são reavaliadas na próxima verificação.
+        int capacidade = Math.max(1, aguardando.size());
+        Processo[] bloqueados = new Processo[capacidade];
+        int[][] linhas = new int[capacidade][];
+        int[] posicao = new int[n]; // índice do processo -> posição + 1 em bloqueados
+        int b = 0;
+        for (Processo q : aguardando.keySet()) {
+            int i = q.getIndice();
+            if (i < 0 || i >= n || posicao[i] != 0)
+                continue;
+            int[] linha = estado.copiarLinha(i);
+            if (linha[0] < 0 || linha[0] >= m)
+                continue;
+            if (b == bloqueados.length) {
+                bloqueados = Arrays.copyOf(bloqueados, b * 2);
+                linhas = Arrays.copyOf(linhas, b * 2);
+            }
+            posicao[i] = b + 1;
+            bloqueados[b] = q;
+            linhas[b++] = linha;
+        }
 
-        updateMatrices();
-        int n = processos.size();
-        int m = recursos.size();
-        int[] work = availableVector.clone();
-        boolean[] finish = new boolean[n];
-        Arrays.fill(finish, false);
-
-        List<Integer> safeSequence = new ArrayList<>();
-        boolean progress;
-        do {
-            progress = false;
-            for (int i = 0; i < n; i++) {
-                if (!finish[i]) {
-                    boolean canRun = true;
-                    for (int j = 0; j < m; j++) {
-                        if (requestMatrix[i][j] > work[j]) {
-                            canRun = false;
-                            break;
-                        }
+        // Índices CSR por recurso: detentores bloqueados e requisitantes bloqueados
+        int[] inicioDetentores = new int[m + 1];
+        int[] inicioRequisitantes = new int[m + 1];
+        int[] retidos = new int[m];
+        for (int k = 0; k < b; k++) {
+            int[] linha = linhas[k];
+            for (int t = 1; t < linha.length; t += 2) {
+                inicioDetentores[linha[t] + 1]++;
+                retidos[linha[t]] += linha[t + 1];
+            }
+            inicioRequisitantes[linha[0] + 1]++;
+        }
+        for (int j = 0; j < m; j++) {
+            inicioDetentores[j + 1] += inicioDetentores[j];
+            inicioRequisitantes[j + 1] += inicioRequisitantes[j];
+        }
+        int[] detentores = new int[inicioDetentores[m]];
+        int[] requisitantes = new int[inicioRequisitantes[m]];
+        int[] cursorD = Arrays.copyOf(inicioDetentores, m);
+        int[] cursorR = Arrays.copyOf(inicioRequisitantes, m);
+        for (int k = 0; k < b; k++) {
+            int[] linha = linhas[k];
+            for (int t = 1; t < linha.length; t += 2) {
+                detentores[cursorD[linha[t]]++] = k;
+            }
+            requisitantes[cursorR[linha[0]]++] = k;
+        }
+
+        // Região afetada: componentes conexos (processo bloqueado - recurso) que contêm algo tocado
+        boolean[] naRegiao = new boolean[b];
+        boolean[] recursoVisto = new boolean[m];
+        int[] filaP = new int[b];
+        int[] filaR = new int[m];
+        int cabecaP = 0, fimP = 0, cabecaR = 0, fimR = 0;
+        for (Processo q : tocados) {
+            int i = q.getIndice();
+            if (i < 0 || i >= n)
+                continue;
+            if (posicao[i] != 0) {
+                if (!naRegiao[posicao[i] - 1]) {
+                    naRegiao[posicao[i] - 1] = true;
+                    filaP[fimP++] = posicao[i] - 1;
+                }
+                continue;
+            }
+            // Deixou de esperar (concessão, entrega direta, reinício): quem aguarda o que ele retém pode
+            // ter saído de um deadlock conhecido, e o percurso só passa por linhas de bloqueados
+            int[] linha = estado.copiarLinha(i);
+            for (int t = 1; t < linha.length; t += 2) {
+                int j = linha[t];
+                if (j >= 0 && j < m && !recursoVisto[j]) {
+                    recursoVisto[j] = true;
+                    filaR[fimR++] = j;
+                }
+            }
+        }
+        for (Recurso r : recursosTocados) {
+            int j = r.getIndice();
+            if (j >= 0 && j < m && !recursoVisto[j]) {
+                recursoVisto[j] = true;
+                filaR[fimR++] = j;
+            }
+        }
+        while (cabecaP < fimP || cabecaR < fimR) {
+            while (cabecaP < fimP) {
+                int[] linha = linhas[filaP[cabecaP++]];
+                if (!recursoVisto[linha[0]]) {
+                    recursoVisto[linha[0]] = true;
+                    filaR[fimR++] = linha[0];
+                }
+                for (int t = 1; t < linha.length; t += 2) {
+                    int j = linha[t];
+                    if (!recursoVisto[j]) {
+                        recursoVisto[j] = true;
+                        filaR[fimR++] = j;
+                    }
+                }
+            }
+            while (cabecaR < fimR) {
+                int j = filaR[cabecaR++];
+                for (int k = inicioRequisitantes[j]; k < inicioRequisitantes[j + 1]; k++) {
+                    if (!naRegiao[requisitantes[k]]) {
+                        naRegiao[requisitantes[k]] = true;
+                        filaP[fimP++] = requisitantes[k];
                     }
-                    if (canRun) {
-                        for (int j = 0; j < m; j++) {
-                            work[j] += allocationMatrix[i][j];
-                        }
-                        finish[i] = true;
-                        safeSequence.add(i);
-                        progress = true;
+                }
+                for (int k = inicioDetentores[j]; k < inicioDetentores[j + 1]; k++) {
+                    if (!naRegiao[detentores[k]]) {
+                        naRegiao[detentores[k]] = true;
+                        filaP[fimP++] = detentores[k];
                     }
                 }
             }
-        } while (progress && safeSequence.size() < n);
+        }
+
+        // Redução restrita à região: work = total - instâncias retidas por processos bloqueados
+        int[] work = new int[m];
+        boolean instanciaUnica = true;
+        for (int k = 0; k < fimR; k++) {
+            int j = filaR[k];
+            work[j] = estado.total(j) - retidos[j];
+            instanciaUnica &= estado.total(j) == 1;
+        }
+        boolean[] finish = instanciaUnica
+                ? reduzirCadeias(linhas, filaP, fimP, work, inicioDetentores, detentores, b)
+                : reduzirPorLista(linhas, fimP, work, filaR, fimR, inicioRequisitantes, requisitantes, b);
+
+        for (int k = 0; k < fimP; k++) {
+            regiao.add(bloqueados[filaP[k]]);
+            if (!finish[filaP[k]])
+                pendentes.add(bloqueados[filaP[k]]);
+        }
+
+        // Quem entra agora no conjunto: o deadlock se formou quando o último deles passou a aguardar
+        long formacao = -1;
+        for (Processo q : pendentes) {
+            if (!deadlockConhecido.contains(q))
+                formacao = Math.max(formacao, q.getEsperandoDesde());
+        }
+
+        // Atualiza o conjunto conhecido: a região é reavaliada, o resto mantém o veredito anterior
+        regiao.forEach(deadlockConhecido::remove); // removeAll com List seria O(n²) quando a região é grande
+        deadlockConhecido.removeIf(q -> !aguardando.containsKey(q) || q.getIndice() < 0);
+        deadlockConhecido.addAll(pendentes);
+        metricas.deteccao(System.nanoTime() - inicioNs);
+        evento.end();
+        if (evento.shouldCommit()) {
+            evento.processos = processos.size();
+            evento.recursos = recursos.size();
+            evento.regiao = regiao.size();
+            evento.emDeadlock = deadlockConhecido.size();
+            evento.commit();
+        }
+        GravadorTrace t = trace;
+        if (t != null)
+            t.gravar(GravadorTrace.DETECCAO, 0, agoraMs() - origemMs, processos.size(), deadlockConhecido.size());
+        if (formacao >= 0)
+            metricas.deadlockRelatado(agoraMs() - formacao);
+
+        List<Processo> deadlocked = deadlockConhecidoEmOrdem();
+        if (!deadlocked.isEmpty()) {
+            registroEventos.registrar(TipoEvento.DEADLOCK, agoraMs() - origemMs, -1, -1,
+                    deadlocked.stream().map(Processo::getProcessoName).toList());
+        } else {
+            registrarEvento(TipoEvento.ESTADO_SEGURO, null, null);
+        }
+        onVerificacao.accept(deadlocked);
+        onUpdate.run();
+
+        RecuperadorDeadlock rec = recuperador;
+        if (rec != null && !deadlocked.isEmpty() && !recuperando) {
+            recuperando = true; // as verificações feitas durante a recuperação não recuperam de novo
+            try {
+                deadlocked = rec.recuperar(this, deadlocked);
+            } finally {
+                recuperando = false;
+            }
+        }
+        return deadlocked;
+    }
+
+    private List<Processo> deadlockConhecidoEmOrdem() {
+        List<Processo> deadlocked = new ArrayList<>();
+        if (!deadlockConhecido.isEmpty()) {
+            for (Processo q : processos) {
+                if (deadlockConhecido.contains(q))
+                    deadlocked.add(q);
+            }
+        }
+        return deadlocked;
+    }
+
+    // Redução por lista de trabalho, O(n + m + arestas). Cada bloqueado pede uma única instância, então
+    // basta work[j] chegar a 1 para todos os requisitantes de j poderem terminar; como work só cresce,
+    // a lista de requisitantes de cada recurso é percorrida no máximo uma vez.
+    private static boolean[] reduzirPorLista(int[][] linhas, int fimP, int[] work, int[] filaR, int fimR,
+            int[] inicioRequisitantes, int[] requisitantes, int b) {
+        boolean[] finish = new boolean[b];
+        boolean[] liberado = new boolean[work.length];
+        int[] pronta = new int[Math.max(1, fimP)];
+        int cabeca = 0, fim = 0;
+        for (int k = 0; k < fimR; k++) {
+            int j = filaR[k];
+            if (work[j] >= 1)
+                fim = liberarRequisitantes(j, liberado, inicioRequisitantes, requisitantes, finish, pronta, fim);
+        }
+        while (cabeca < fim) {
+            int[] linha = linhas[pronta[cabeca++]];
+            for (int t = 1; t < linha.length; t += 2) {
+                int j = linha[t];
+                work[j] += linha[t + 1]; // processo termina e devolve o que retém
+                if (!liberado[j] && work[j] >= 1)
+                    fim = liberarRequisitantes(j, liberado, inicioRequisitantes, requisitantes, finish, pronta, fim);
+            }
+        }
+        return finish;
+    }
+
+    private static int liberarRequisitantes(int j, boolean[] liberado, int[] inicioRequisitantes,
+            int[] requisitantes, boolean[] finish, int[] pronta, int fim) {
+        liberado[j] = true;
+        for (int k = inicioRequisitantes[j]; k < inicioRequisitantes[j + 1]; k++) {
+            if (!finish[requisitantes[k]]) {
+                finish[requisitantes[k]] = true;
+                pronta[fim++] = requisitantes[k];
+            }
+        }
+        return fim;
+    }
 
-        if (safeSequence.size() < n) {
-            List<String> deadlocked = new ArrayList<>();
-            for (int i = 0; i < n; i++) {
-                if (!finish[i]) {
-                    deadlocked.add(processos.get(i).getProcessoName());
+    // Todos os recursos da região têm uma única instância: o grafo de espera é funcional (cada bloqueado
+    // espera o único detentor do recurso pedido), então basta seguir a cadeia de cada processo, O(n).
+    // A cadeia acaba num recurso livre ou retido por quem roda (todos nela terminam) ou num ciclo
+    // (todos nela ficam em deadlock, inclusive quem só espera por alguém do ciclo).
+    private static boolean[] reduzirCadeias(int[][] linhas, int[] filaP, int fimP, int[] work,
+            int[] inicioDetentores, int[] detentores, int b) {
+        boolean[] finish = new boolean[b];
+        byte[] visita = new byte[b]; // 0 não visitado, 1 na cadeia atual, 2 resolvido
+        int[] cadeia = new int[Math.max(1, fimP)];
+        for (int s = 0; s < fimP; s++) {
+            int k = filaP[s];
+            int tamanho = 0;
+            boolean termina;
+            while (true) {
+                if (visita[k] == 2) {
+                    termina = finish[k];
+                    break;
                 }
+                if (visita[k] == 1) {
+                    termina = false; // fechou um ciclo
+                    break;
+                }
+                visita[k] = 1;
+                cadeia[tamanho++] = k;
+                int j = linhas[k][0];
+                if (work[j] >= 1 || inicioDetentores[j] == inicioDetentores[j + 1]) {
+                    termina = true;
+                    break;
+                }
+                k = detentores[inicioDetentores[j]];
             }
-            if (!deadlocked.isEmpty()) {
-                logger.accept("⚠ DEADLOCK DETECTADO entre processos: " + deadlocked);
+            for (int c = 0; c < tamanho; c++) {
+                visita[cadeia[c]] = 2;
+                finish[cadeia[c]] = termina;
             }
-        } else {
-            logger.accept("Sistema está em estado seguro.");
         }
-        onUpdate.run();
+        return finish;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,114 @@
+import java.lang.instrument.Instrumentation;
+import java.lang.instrument.UnmodifiableClassException;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Sondas chamadas pelo código que o TransformadorLocks reescreve, inclusive de dentro de java.base. Por
+ * isso esta classe, o DetectorLocks e o transformador são carregados pelo carregador de bootstrap (o
+ * AgenteLocks acrescenta o próprio jar à busca dele) e java.base passa a ler o módulo sem nome desse
+ * carregador. Sem detector instalado, cada sonda só lê o campo detector; a thread consumidora do detector,
+ * que também passa por locks do JDK, nunca publica.
+ */
+public final class SondasLocks {
+    static volatile DetectorLocks detector;
+
+    private SondasLocks() {
+    }
+
+    /** O detector instalado pelo agente, ou null se a JVM roda sem ele. */
+    public static DetectorLocks getDetector() {
+        return detector;
+    }
+
+    public static synchronized void instalar(Instrumentation inst) throws UnmodifiableClassException,
+            ClassNotFoundException {
+        if (detector != null)
+            return;
+        inst.redefineModule(Object.class.getModule(), Set.of(SondasLocks.class.getModule()), Map.of(), Map.of(),
+                Set.of(), Map.of());
+        DetectorLocks d = new DetectorLocks();
+        d.setOnDeadlock(ciclo -> {
+            System.err.println("Deadlock entre " + ciclo.size() + " threads:");
+            ciclo.forEach(l -> System.err.println("  " + l));
+        });
+        d.iniciar();
+        // Liga o caminho de publicação fora de qualquer lock, antes que uma sonda o use de dentro de um
+        d.publicarEspera(DetectorLocks.DESISTENCIA, 0, null);
+        detector = d;
+
+        TransformadorLocks transformador = new TransformadorLocks();
+        inst.addTransformer(transformador, true);
+        ClassLoader jdk = Object.class.getClassLoader();
+        inst.retransformClasses(Class.forName(TransformadorLocks.DONO.replace('/', '.'), true, jdk),
+                Class.forName(TransformadorLocks.FILA.replace('/', '.'), true, jdk),
+                Class.forName(TransformadorLocks.LEITURA.replace('/', '.'), true, jdk));
+        // Anexado com agentmain: as classes da aplicação já carregadas também ganham as sondas de monitor
+        for (Class<?> c : inst.getAllLoadedClasses()) {
+            if (!inst.isModifiableClass(c) || !TransformadorLocks.aplicacao(c.getClassLoader()))
+                continue;
+            try {
+                inst.retransformClasses(c);
+            } catch (UnmodifiableClassException | LinkageError e) {
+                System.err.println("AgenteLocks: " + c.getName() + " não instrumentada: " + e);
+            }
+        }
+    }
+
+    // Sincronizadores (AbstractOwnableSynchronizer e AbstractQueuedSynchronizer): sem contagem de
+    // reentradas, o dono só é definido na primeira aquisição e apagado na liberação completa
+    public static void donoDefinido(Object sincronizador, Thread dono) {
+        DetectorLocks d = detector;
+        if (d == null || d.ehConsumidora())
+            return;
+        if (dono == null)
+            d.publicar(DetectorLocks.DONO, DetectorLocks.idSincronizador(sincronizador), 0);
+        else if (dono == Thread.currentThread())
+            d.publicar(DetectorLocks.DONO, DetectorLocks.idSincronizador(sincronizador), 1);
+    }
+
+    public static void esperaSincronizador(Object sincronizador, boolean compartilhado, Thread dono) {
+        DetectorLocks d = detector;
+        if (d != null && !d.ehConsumidora())
+            d.publicarEspera(compartilhado ? DetectorLocks.ESPERA_LEITURA : DetectorLocks.ESPERA,
+                    DetectorLocks.idSincronizador(sincronizador), dono);
+    }
+
+    // Saída da fila por qualquer motivo; depois de uma aquisição a espera já terminou e o evento não muda nada
+    public static void fimEsperaSincronizador(Object sincronizador) {
+        DetectorLocks d = detector;
+        if (d != null && !d.ehConsumidora())
+            d.publicar(DetectorLocks.DESISTENCIA, DetectorLocks.idSincronizador(sincronizador), 0);
+    }
+
+    public static void leituraAdquirida(int resultado, Object sincronizador) {
+        if (resultado >= 0)
+            leituraTentada(true, sincronizador);
+    }
+
+    public static void leituraTentada(boolean obtida, Object sincronizador) {
+        DetectorLocks d = detector;
+        if (obtida && d != null && !d.ehConsumidora())
+            d.publicar(DetectorLocks.AQUISICAO_LEITURA, DetectorLocks.idSincronizador(sincronizador), 0);
+    }
+
+    public static void leituraLiberada(Object sincronizador) {
+        DetectorLocks d = detector;
+        if (d != null && !d.ehConsumidora())
+            d.publicar(DetectorLocks.LIBERACAO_LEITURA, DetectorLocks.idSincronizador(sincronizador), 0);
+    }
+
+    // Antes e depois de um monitorenter: só a contagem de entradas no anel, que a varredura do consumidor
+    // transforma em espera se a thread continuar no meio de uma
+    public static void entrarMonitor() {
+        DetectorLocks d = detector;
+        if (d != null && !d.ehConsumidora())
+            d.contarEntradaMonitor();
+    }
+
+    public static void entrouMonitor() {
+        DetectorLocks d = detector;
+        if (d != null && !d.ehConsumidora())
+            d.contarEntradaMonitor();
+    }
+}
@@ -0,0 +1,20 @@
+/**
+ * Tipos de evento do RegistroEventos. Cada evento carrega só o instante, o ID do processo e o ID do
+ * recurso (-1 quando não se aplica); a mensagem de texto é montada depois, pela thread consumidora.
+ * DEADLOCK é o único com anexo: a lista de processos do conjunto.
+ */
+public enum TipoEvento {
+    SOLICITACAO,
+    SEM_RECURSO,
+    CONCESSAO,
+    ENTREGA,
+    ESPERA,
+    ESPERA_INSEGURA,
+    SAIDA_ESPERA,
+    LIBERACAO,
+    FALHA_LIBERACAO,
+    REINICIO,
+    PREEMPCAO,
+    DEADLOCK,
+    ESTADO_SEGURO
+}
@@ -0,0 +1,123 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.instrument.ClassFileTransformer;
+import java.security.ProtectionDomain;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Transformador instalado pelo AgenteLocks. Nas classes de locks do JDK, chama as sondas de SondasLocks
+ * quando um sincronizador muda de dono (setExclusiveOwnerThread, que cobre ReentrantLock, a escrita de
+ * ReentrantReadWriteLock e a volta de uma Condition), quando uma thread entra e sai da fila dele
+ * (AbstractQueuedSynchronizer.acquire, só chamado quando a tentativa rápida falha) e quando uma leitura
+ * de ReentrantReadWriteLock é obtida ou devolvida. Nas classes da aplicação, envolve cada monitorenter;
+ * antes, os métodos synchronized ganham monitorenter e monitorexit explícitos, como um bloco synchronized
+ * compilado por javac, na carga e nas retransformações de uma classe já carregada assim (a flag de um método
+ * não pode mudar depois da carga). Uma classe que não dá para reescrever é carregada como está.
+ */
+final class TransformadorLocks implements ClassFileTransformer {
+    static final String DONO = "java/util/concurrent/locks/AbstractOwnableSynchronizer";
+    static final String FILA = "java/util/concurrent/locks/AbstractQueuedSynchronizer";
+    static final String LEITURA = "java/util/concurrent/locks/ReentrantReadWriteLock$Sync";
+    private static final String SONDAS = "SondasLocks";
+    private static final String ACQUIRE = "(Ljava/util/concurrent/locks/AbstractQueuedSynchronizer$Node;IZZZJ)I";
+
+    private static final int ALOAD_0 = 0x2a, ALOAD_1 = 0x2b, ILOAD_3 = 0x1d, DUP = 0x59, IRETURN = 0xac;
+    private static final int INVOKEVIRTUAL = 0xb6, INVOKESTATIC = 0xb8, MONITORENTER = 0xc2;
+
+    // Classes cujos métodos synchronized foram explicitados na carga, por carregador
+    private final Map<ClassLoader, Set<String>> explicitadas = Collections.synchronizedMap(new WeakHashMap<>());
+
+    /** Classes da aplicação: nem do carregador de bootstrap (JDK e o próprio agente) nem do de plataforma. */
+    static boolean aplicacao(ClassLoader carregador) {
+        return carregador != null && carregador != ClassLoader.getPlatformClassLoader();
+    }
+
+    @Override
+    public byte[] transform(ClassLoader carregador, String nome, Class<?> redefinida, ProtectionDomain dominio,
+            byte[] classe) {
+        if (nome == null || !aplicacao(carregador) && !nome.startsWith("java/util/concurrent/locks/"))
+            return null;
+        try {
+            ReescritorClasse r = new ReescritorClasse(classe);
+            return switch (nome) {
+                case DONO -> r.reescrever((metodo, descritor, codigo, t) -> {
+                    if (metodo.equals("setExclusiveOwnerThread"))
+                        t.entrada = bytes(ALOAD_0, ALOAD_1,
+                                invocar(r, "donoDefinido", "(Ljava/lang/Object;Ljava/lang/Thread;)V"));
+                });
+                case FILA -> r.reescrever((metodo, descritor, codigo, t) -> {
+                    if (!metodo.equals("acquire") || !descritor.equals(ACQUIRE))
+                        return;
+                    int dono = r.metodo(DONO, "getExclusiveOwnerThread", "()Ljava/lang/Thread;");
+                    t.entrada = bytes(ALOAD_0, ILOAD_3, ALOAD_0, INVOKEVIRTUAL, dono >>> 8, dono & 0xFF,
+                            invocar(r, "esperaSincronizador", "(Ljava/lang/Object;ZLjava/lang/Thread;)V"));
+                    antesDeRetornar(codigo, t, bytes(ALOAD_0,
+                            invocar(r, "fimEsperaSincronizador", "(Ljava/lang/Object;)V")));
+                });
+                case LEITURA -> r.reescrever((metodo, descritor, codigo, t) -> {
+                    switch (metodo + descritor) {
+                        case "tryAcquireShared(I)I" -> antesDeRetornar(codigo, t, bytes(DUP, ALOAD_0,
+                                invocar(r, "leituraAdquirida", "(ILjava/lang/Object;)V")));
+                        case "tryReadLock()Z" -> antesDeRetornar(codigo, t, bytes(DUP, ALOAD_0,
+                                invocar(r, "leituraTentada", "(ZLjava/lang/Object;)V")));
+                        case "tryReleaseShared(I)Z" -> t.entrada = bytes(ALOAD_0,
+                                invocar(r, "leituraLiberada", "(Ljava/lang/Object;)V"));
+                        default -> {
+                        }
+                    }
+                });
+                default -> aplicacao(carregador) ? monitores(carregador, nome, redefinida, r, classe) : null;
+            };
+        } catch (Throwable e) { // nunca impede a carga da classe
+            System.err.println("AgenteLocks: " + nome + " não instrumentada: " + e);
+            return null;
+        }
+    }
+
+    private byte[] monitores(ClassLoader carregador, String nome, Class<?> redefinida, ReescritorClasse r,
+            byte[] classe) throws IOException {
+        byte[] explicita = null;
+        if (redefinida == null || explicitadas.getOrDefault(carregador, Set.of()).contains(nome))
+            explicita = r.explicitarSincronizados();
+        if (explicita != null && redefinida == null)
+            explicitadas.computeIfAbsent(carregador, k -> ConcurrentHashMap.newKeySet()).add(nome);
+        ReescritorClasse m = explicita != null ? new ReescritorClasse(explicita) : r;
+        byte[] instrumentada = m.reescrever((metodo, descritor, codigo, t) -> {
+            for (int o = 0; o < codigo.length; o = ReescritorClasse.proxima(codigo, o)) {
+                if ((codigo[o] & 0xFF) == MONITORENTER) {
+                    t.antes.put(o, invocar(m, "entrarMonitor", "()V"));
+                    t.depois.put(o, invocar(m, "entrouMonitor", "()V"));
+                }
+            }
+        });
+        return instrumentada != null ? instrumentada : explicita;
+    }
+
+    private static void antesDeRetornar(byte[] codigo, ReescritorClasse.Trechos t, byte[] trecho) {
+        for (int o = 0; o < codigo.length; o = ReescritorClasse.proxima(codigo, o)) {
+            if ((codigo[o] & 0xFF) == IRETURN)
+                t.antes.put(o, trecho);
+        }
+    }
+
+    private static byte[] invocar(ReescritorClasse r, String sonda, String descritor) {
+        int i = r.metodo(SONDAS, sonda, descritor);
+        return new byte[] { (byte) INVOKESTATIC, (byte) (i >>> 8), (byte) i };
+    }
+
+    // Opcodes e operandos, com trechos já montados no meio
+    private static byte[] bytes(Object... partes) {
+        ByteArrayOutputStream b = new ByteArrayOutputStream();
+        for (Object p : partes) {
+            if (p instanceof byte[] trecho)
+                b.writeBytes(trecho);
+            else
+                b.write((Integer) p);
+        }
+        return b.toByteArray();
+    }
+}
@@ -0,0 +1,18 @@
+/** Transporte na mesma JVM: a mensagem vai direto para a caixa de entrada do shard destino. */
+public class TransporteLocal implements TransporteShards {
+    private ShardRecursos[] shards;
+
+    @Override
+    public void conectar(ShardRecursos[] shards) {
+        this.shards = shards;
+    }
+
+    @Override
+    public void enviar(int origem, int destino, MensagemShard m) {
+        shards[destino].receber(m);
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,18 @@
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Entrega de mensagens entre shards do SistemaDistribuido. Cada shard só envia da própria thread e
+ * mensagens de um shard para ele mesmo não passam pelo transporte. A ordem entre um par de shards é
+ * preservada; entre pares diferentes, não.
+ */
+public interface TransporteShards extends Closeable {
+    /** Chamado uma vez, antes de qualquer envio, com os shards que recebem. */
+    void conectar(ShardRecursos[] shards) throws IOException;
+
+    void enviar(int origem, int destino, MensagemShard m);
+
+    /** Fim de um lote do shard origem: transportes com buffer entregam o que acumularam. */
+    default void descarregar(int origem) {
+    }
+}
@@ -0,0 +1,113 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Transporte por TCP na interface de loopback: cada shard escuta numa porta efêmera e cada par
+ * origem -> destino usa uma conexão própria, aberta no primeiro envio e escrita só pela thread do shard
+ * origem. As mensagens acumulam no buffer da conexão e vão para o fio no fim de cada lote do shard
+ * (descarregar), não uma a uma.
+ */
+public class TransporteSocket implements TransporteShards {
+    private final List<Socket> abertos = new CopyOnWriteArrayList<>();
+    private ServerSocket[] servidores;
+    private DataOutputStream[][] saidas; // [origem][destino]
+    private volatile boolean fechado;
+
+    @Override
+    public void conectar(ShardRecursos[] shards) throws IOException {
+        servidores = new ServerSocket[shards.length];
+        saidas = new DataOutputStream[shards.length][shards.length];
+        for (int i = 0; i < shards.length; i++) {
+            servidores[i] = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+            ServerSocket servidor = servidores[i];
+            ShardRecursos shard = shards[i];
+            iniciar("transporte-aceite-" + i, () -> aceitar(servidor, shard));
+        }
+    }
+
+    private void aceitar(ServerSocket servidor, ShardRecursos shard) {
+        try {
+            while (!fechado) {
+                Socket s = servidor.accept();
+                s.setTcpNoDelay(true);
+                abertos.add(s);
+                iniciar("transporte-leitura-" + shard.getIndice(), () -> ler(s, shard));
+            }
+        } catch (IOException e) {
+            if (!fechado)
+                System.err.println("Transporte: aceite encerrado no shard " + shard.getIndice() + ": " + e);
+        }
+    }
+
+    private void ler(Socket s, ShardRecursos shard) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream(), 8192))) {
+            while (true)
+                shard.receber(MensagemShard.ler(in));
+        } catch (EOFException e) {
+            // conexão fechada pela origem
+        } catch (IOException e) {
+            if (!fechado)
+                System.err.println("Transporte: leitura encerrada no shard " + shard.getIndice() + ": " + e);
+        }
+    }
+
+    @Override
+    public void enviar(int origem, int destino, MensagemShard m) {
+        try {
+            DataOutputStream out = saidas[origem][destino];
+            if (out == null) {
+                Socket s = new Socket(InetAddress.getLoopbackAddress(), servidores[destino].getLocalPort());
+                s.setTcpNoDelay(true);
+                abertos.add(s);
+                out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream(), 8192));
+                saidas[origem][destino] = out;
+            }
+            m.escrever(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Falha ao enviar do shard " + origem + " para " + destino, e);
+        }
+    }
+
+    @Override
+    public void descarregar(int origem) {
+        for (int d = 0; d < saidas[origem].length; d++) {
+            DataOutputStream out = saidas[origem][d];
+            if (out == null)
+                continue;
+            try {
+                out.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Falha ao enviar do shard " + origem + " para " + d, e);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        fechado = true;
+        if (servidores != null) {
+            for (ServerSocket s : servidores) {
+                if (s != null)
+                    s.close();
+            }
+        }
+        for (Socket s : abertos)
+            s.close();
+    }
+
+    private static void iniciar(String nome, Runnable corpo) {
+        Thread t = new Thread(corpo, nome);
+        t.setDaemon(true);
+        t.start();
+    }
+}
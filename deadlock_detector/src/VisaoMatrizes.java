@@ -0,0 +1,86 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Matrizes de alocação e requisição em linhas, mantidas entre atualizações da interface. Uma linha
+ * só é remontada quando a versão da linha do processo no estado muda (ou quando o conjunto de
+ * recursos muda); as demais continuam sendo o mesmo objeto String, então quem exibe pode comparar
+ * por referência e tocar só as linhas que mudaram. Não é thread-safe: usada só pela thread da interface.
+ */
+public class VisaoMatrizes {
+    private static final class Linhas {
+        final int versao;
+        final String alocacao;
+        final String requisicao;
+
+        Linhas(int versao, String alocacao, String requisicao) {
+            this.versao = versao;
+            this.alocacao = alocacao;
+            this.requisicao = requisicao;
+        }
+    }
+
+    private final SistemaOperacional sistema;
+    private final Map<Processo, Linhas> cache = new HashMap<>();
+    private final List<String> alocacao = new ArrayList<>();
+    private final List<String> requisicao = new ArrayList<>();
+    private String cabecalho;
+    private int recursosNoCabecalho = -1;
+    private int[] buffer = new int[0];
+    private long linhasRemontadas = 0;
+
+    public VisaoMatrizes(SistemaOperacional sistema) {
+        this.sistema = sistema;
+    }
+
+    public void atualizar() {
+        List<Recurso> recursos = sistema.getRecursos();
+        List<Processo> processos = sistema.getProcessos();
+        alocacao.clear();
+        requisicao.clear();
+        if (processos.isEmpty() || recursos.isEmpty()) {
+            alocacao.add("Nenhuma alocação disponível.");
+            requisicao.add("Nenhuma requisição disponível.");
+            return;
+        }
+        if (recursos.size() != recursosNoCabecalho) {
+            // Coluna nova: todas as linhas ganham uma posição
+            cabecalho = sistema.cabecalhoMatriz();
+            recursosNoCabecalho = recursos.size();
+            buffer = new int[recursos.size()];
+            cache.clear();
+        }
+        alocacao.add(cabecalho);
+        requisicao.add(cabecalho);
+        for (Processo p : processos) {
+            int versao = sistema.versaoLinha(p); // lida antes de montar: uma mudança no meio gera versão nova
+            if (versao < 0)
+                continue;
+            Linhas l = cache.get(p);
+            if (l == null || l.versao != versao) {
+                l = new Linhas(versao, sistema.linhaAlocacao(p, buffer), sistema.linhaRequisicao(p, buffer));
+                cache.put(p, l);
+                linhasRemontadas++;
+            }
+            alocacao.add(l.alocacao);
+            requisicao.add(l.requisicao);
+        }
+        if (cache.size() > processos.size())
+            cache.keySet().removeIf(p -> p.getIndice() < 0);
+    }
+
+    /** Cabeçalho seguido de uma linha por processo, na ordem de getProcessos(). */
+    public List<String> getAlocacao() {
+        return alocacao;
+    }
+
+    public List<String> getRequisicao() {
+        return requisicao;
+    }
+
+    public long getLinhasRemontadas() {
+        return linhasRemontadas;
+    }
+}